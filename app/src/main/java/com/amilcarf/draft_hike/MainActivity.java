@@ -60,7 +60,7 @@ public class MainActivity extends AppCompatActivity {
         recyclerViewTrails.setLayoutManager(layoutManager);
 
         // Create and set adapter
-        trailAdapter = new TrailAdapter(trailList,
+        trailAdapter = new TrailAdapter(this,
                 new TrailAdapter.OnItemClickListener() {
                     @Override
                     public void onItemClick(Trail trail) {
@@ -106,7 +106,9 @@ public class MainActivity extends AppCompatActivity {
                                 "Easy", "Open", "Short loop around the city park with accessible benches.", true));
 
                         // Update adapter
-                        trailAdapter.updateData(sampleTrails);
+                        trailList.clear();
+                        trailList.addAll(sampleTrails);
+                        trailAdapter.submitList(trailList);
 
                         // Hide loading indicator
                         loadingProgressBar.setVisibility(View.GONE);
@@ -187,11 +189,13 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void toggleFavorite(Trail trail, int position) {
-        // Toggle favorite status
+        // Toggle favorite status on a copy; the adapter's snapshot must not change
+        trail = new Trail(trail);
         trail.setFavorite(!trail.isFavorite());
 
         // Update the item in adapter
-        trailAdapter.updateItem(position, trail);
+        trailList.set(position, trail);
+        trailAdapter.submitList(trailList);
 
         // Show toast message
         String message = trail.isFavorite() ?
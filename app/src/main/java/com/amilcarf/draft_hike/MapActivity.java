@@ -3,14 +3,20 @@ package com.amilcarf.draft_hike;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.location.Location;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import com.amilcarf.draft_hike.map.BenchClusterLayer;
+import com.amilcarf.draft_hike.map.BenchItem;
+import com.amilcarf.draft_hike.map.ViewportLoader;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.osm.OSMDataFetcher;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
@@ -19,37 +25,36 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MapActivity extends AppCompatActivity implements OnMapReadyCallback {
 
     private static final String TAG = "MapActivity";
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
+    // Concurrent bench requests while panning, and the widest viewport still loaded
+    private static final int MAX_CONCURRENT_REQUESTS = 2;
+    private static final int MAX_VIEWPORT_TILES = 48;
+    // Loaded tiles kept around the viewport so panning back does not refetch them
+    private static final int KEEP_RING = 2;
 
     private GoogleMap mMap;
     private FusedLocationProviderClient fusedLocationClient;
     private Location currentLocation;
     private boolean showBenches;
-
-    // Overpass API URL template for benches
-    private static final String OVERPASS_API_URL =
-            "https://overpass-api.de/api/interpreter?data=[out:json];" +
-                    "node[\"amenity\"=\"bench\"]" +
-                    "(around:1000,%f,%f);" +
-                    "out body;";
+    private BenchClusterLayer benchLayer;
+    private Marker locationMarker;
+    private OSMDataFetcher osmDataFetcher;
+    private ExecutorService fetchExecutor;
+    private ViewportLoader benchLoader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -63,6 +68,10 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         // Initialize FusedLocationProviderClient
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
 
+        // Shares the HTTP client, its cache and the tile cache with the trails list
+        osmDataFetcher = new OSMDataFetcher(this);
+        fetchExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS);
+
         // Initialize map
         SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager()
                 .findFragmentById(R.id.map);
@@ -74,6 +83,11 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
     @Override
     public void onMapReady(GoogleMap googleMap) {
         mMap = googleMap;
+        benchLayer = new BenchClusterLayer(this, mMap);
+        if (showBenches) {
+            startBenchLoader();
+        }
+        mMap.setOnCameraIdleListener(this::onCameraIdle);
 
         // Check location permission
         if (checkLocationPermission()) {
@@ -142,15 +156,9 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
                     mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(currentLatLng, 15f));
 
                     // Add marker for current location
-                    mMap.addMarker(new MarkerOptions()
-                            .position(currentLatLng)
-                            .title("Your Location")
-                            .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_BLUE)));
+                    showLocationMarker(currentLatLng);
 
-                    // If we need to show benches, fetch them
-                    if (showBenches) {
-                        findNearbyBenches();
-                    }
+                    // Benches load for the new viewport once the camera settles
                 } else {
                     Toast.makeText(MapActivity.this, "Unable to get current location", Toast.LENGTH_SHORT).show();
                 }
@@ -158,144 +166,77 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         });
     }
 
-    private void findNearbyBenches() {
-        if (currentLocation == null) {
-            Toast.makeText(this, "Getting location...", Toast.LENGTH_SHORT).show();
-            getCurrentLocation();
-            return;
-        }
-
-        // Clear any existing markers (except current location)
-        mMap.clear();
+    private void startBenchLoader() {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        benchLoader = new ViewportLoader(osmDataFetcher::fetchBenchTiles, fetchExecutor, mainHandler::post,
+                new ViewportLoader.Listener() {
+                    @Override
+                    public void onBenches(List<OSMNode> benches) {
+                        showBenches(benches);
+                    }
 
-        // Re-add current location marker
-        LatLng currentLatLng = new LatLng(currentLocation.getLatitude(), currentLocation.getLongitude());
-        mMap.addMarker(new MarkerOptions()
-                .position(currentLatLng)
-                .title("Your Location")
-                .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_BLUE)));
+                    @Override
+                    public void onViewportTooLarge() {
+                        Toast.makeText(MapActivity.this, "Zoom in to see benches", Toast.LENGTH_SHORT).show();
+                    }
 
-        // Start async task to fetch benches
-        new FetchBenchesTask().execute(
-                currentLocation.getLatitude(),
-                currentLocation.getLongitude()
-        );
+                    @Override
+                    public void onLoadFailed(IOException e) {
+                        Log.e(TAG, "Error fetching benches: " + e.getMessage());
+                        Toast.makeText(MapActivity.this, "Could not load benches", Toast.LENGTH_SHORT).show();
+                    }
+                },
+                OSMDataFetcher.getTileZoom(), MAX_CONCURRENT_REQUESTS, MAX_VIEWPORT_TILES, KEEP_RING);
     }
 
-    private class FetchBenchesTask extends AsyncTask<Double, Void, List<Bench>> {
-
-        @Override
-        protected List<Bench> doInBackground(Double... params) {
-            double latitude = params[0];
-            double longitude = params[1];
-
-            List<Bench> benches = new ArrayList<>();
-
-            try {
-                String urlString = String.format(OVERPASS_API_URL, latitude, longitude);
-                URL url = new URL(urlString);
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(10000); // 10 seconds
-                connection.setReadTimeout(10000); // 10 seconds
-
-                InputStream inputStream = connection.getInputStream();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-                StringBuilder result = new StringBuilder();
-                String line;
-
-                while ((line = reader.readLine()) != null) {
-                    result.append(line);
-                }
-
-                // Parse JSON response
-                benches = parseBenchesFromJSON(result.toString());
-
-                reader.close();
-                inputStream.close();
-                connection.disconnect();
-
-            } catch (IOException | JSONException e) {
-                Log.e(TAG, "Error fetching benches: " + e.getMessage());
-                e.printStackTrace();
-            }
-
-            return benches;
+    private void onCameraIdle() {
+        benchLayer.onCameraIdle();
+        if (benchLoader != null) {
+            // Only tiles not already loaded or loading are fetched
+            LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+            benchLoader.onViewportChanged(bounds.southwest.latitude, bounds.southwest.longitude,
+                    bounds.northeast.latitude, bounds.northeast.longitude);
         }
+    }
 
-        @Override
-        protected void onPostExecute(List<Bench> benches) {
-            super.onPostExecute(benches);
-
-            if (benches.isEmpty()) {
-                Toast.makeText(MapActivity.this,
-                        "No benches found within 1km radius",
-                        Toast.LENGTH_LONG).show();
-                return;
-            }
-
-            // Markers for each bench
-            for (Bench bench : benches) {
-                LatLng benchLocation = new LatLng(bench.getLatitude(), bench.getLongitude());
-                mMap.addMarker(new MarkerOptions()
-                        .position(benchLocation)
-                        .title("Bench")
-                        .snippet(bench.getName())
-                        .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN)));
-            }
-
-            Toast.makeText(MapActivity.this,
-                    "Found " + benches.size() + " benches within 1km",
-                    Toast.LENGTH_SHORT).show();
+    private void showBenches(List<OSMNode> nodes) {
+        if (isFinishing()) {
+            return;
         }
 
-        private List<Bench> parseBenchesFromJSON(String jsonString) throws JSONException {
-            List<Bench> benches = new ArrayList<>();
-
-            JSONObject json = new JSONObject(jsonString);
-            JSONArray elements = json.getJSONArray("elements");
-
-            for (int i = 0; i < elements.length(); i++) {
-                JSONObject element = elements.getJSONObject(i);
-
-                // Only process nodes (type "node")
-                if ("node".equals(element.getString("type"))) {
-                    double lat = element.getDouble("lat");
-                    double lon = element.getDouble("lon");
-
-                    String benchName = "Bench";
-                    // Check if bench has additional information
-                    if (element.has("tags")) {
-                        JSONObject tags = element.getJSONObject("tags");
-                        if (tags.has("name") && !tags.getString("name").isEmpty()) {
-                            benchName = tags.getString("name");
-                        } else if (tags.has("backrest") && "yes".equals(tags.getString("backrest"))) {
-                            benchName = "Bench (with backrest)";
-                        }
-                    }
-
-                    benches.add(new Bench(lat, lon, benchName));
-                }
-            }
+        // Only benches that appeared, disappeared or changed touch the map
+        List<BenchItem> benches = new ArrayList<>(nodes.size());
+        for (OSMNode node : nodes) {
+            benches.add(BenchItem.fromNode(node));
+        }
+        benchLayer.setBenches(benches);
+    }
 
-            return benches;
+    // Moves the single location marker instead of adding a new one per fix
+    private void showLocationMarker(LatLng position) {
+        if (locationMarker != null) {
+            locationMarker.setPosition(position);
+            return;
         }
+        locationMarker = mMap.addMarker(new MarkerOptions()
+                .position(position)
+                .title("Your Location")
+                .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_BLUE)));
     }
 
-    // Helper class for bench data
-    private static class Bench {
-        private double latitude;
-        private double longitude;
-        private String name;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
 
-        public Bench(double latitude, double longitude, String name) {
-            this.latitude = latitude;
-            this.longitude = longitude;
-            this.name = name;
+        // Abort bench fetches still in flight
+        if (benchLoader != null) {
+            benchLoader.dispose();
+        }
+        if (osmDataFetcher != null) {
+            osmDataFetcher.cancel();
+        }
+        if (fetchExecutor != null) {
+            fetchExecutor.shutdownNow();
         }
-
-        public double getLatitude() { return latitude; }
-        public double getLongitude() { return longitude; }
-        public String getName() { return name; }
     }
 }
\ No newline at end of file
@@ -1,14 +1,45 @@
 package com.amilcarf.draft_hike;
 
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.location.Location;
 import android.os.Bundle;
+import android.util.Log;
 import android.widget.Button;
 import android.widget.RadioGroup;
 import android.widget.Switch;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import com.amilcarf.draft_hike.offline.OfflineRegion;
+import com.amilcarf.draft_hike.offline.OfflineRegionDownloader;
+import com.amilcarf.draft_hike.osm.CancellationToken;
+import com.amilcarf.draft_hike.osm.OSMDataFetcher;
+import com.amilcarf.draft_hike.tiles.Tile;
+import com.google.android.gms.location.LocationServices;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SettingsActivity extends AppCompatActivity {
 
+    private static final String TAG = "SettingsActivity";
+    // Region made available offline around the user
+    private static final double OFFLINE_RADIUS = 5000; // meters
+    // Overpass allows a couple of concurrent requests per client
+    private static final int DOWNLOAD_CONCURRENCY = 2;
+    // Tiles per request; a group spans up to one row of 16 tiles
+    private static final int DOWNLOAD_TILES_PER_REQUEST = 16;
+
+    private Button btnDownload;
+    private OSMDataFetcher osmDataFetcher;
+    private ExecutorService downloadExecutor;
+    private ExecutorService requestExecutor;
+    private CancellationToken downloadToken;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -18,7 +49,7 @@ public class SettingsActivity extends AppCompatActivity {
         Switch switchVoiceGuidance = findViewById(R.id.switchVoiceGuidance);
         RadioGroup radioGroupTextSize = findViewById(R.id.radioGroupTextSize);
         Switch switchContrastMode = findViewById(R.id.switchContrastMode);
-        Button btnDownload = findViewById(R.id.btnDownload);
+        btnDownload = findViewById(R.id.btnDownload);
         Button btnBack = findViewById(R.id.btnBack);
 
         // Set up listeners for views that exist
@@ -53,11 +84,7 @@ public class SettingsActivity extends AppCompatActivity {
         }
 
         if (btnDownload != null) {
-            btnDownload.setOnClickListener(v -> {
-                Toast.makeText(SettingsActivity.this,
-                        "Downloading offline data...",
-                        Toast.LENGTH_SHORT).show();
-            });
+            btnDownload.setOnClickListener(v -> downloadOfflineRegion());
         }
 
         // Skip emergency contact button for now
@@ -70,4 +97,108 @@ public class SettingsActivity extends AppCompatActivity {
             });
         }
     }
-}
\ No newline at end of file
+
+    private void downloadOfflineRegion() {
+        if (downloadToken != null) {
+            Toast.makeText(this, "Download already running", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            Toast.makeText(this, "Allow location access on the map first", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        LocationServices.getFusedLocationProviderClient(this).getLastLocation()
+                .addOnSuccessListener(this, location -> {
+                    if (location == null) {
+                        Toast.makeText(this, "Unable to get current location", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    startDownload(location);
+                });
+    }
+
+    private void startDownload(Location location) {
+        if (downloadToken != null || isFinishing()) {
+            return;
+        }
+        if (osmDataFetcher == null) {
+            osmDataFetcher = new OSMDataFetcher(this);
+            downloadExecutor = Executors.newSingleThreadExecutor();
+            requestExecutor = Executors.newFixedThreadPool(DOWNLOAD_CONCURRENCY);
+        }
+
+        final CancellationToken token = new CancellationToken();
+        downloadToken = token;
+        final List<Tile> tiles = OfflineRegion.around(location.getLatitude(), location.getLongitude(),
+                OFFLINE_RADIUS).tiles(OSMDataFetcher.getTileZoom());
+        final List<OfflineRegionDownloader.Layer> layers = Arrays.asList(
+                new OfflineRegionDownloader.Layer(osmDataFetcher.getOfflineTrailTiles(),
+                        osmDataFetcher::downloadTrailTiles),
+                new OfflineRegionDownloader.Layer(osmDataFetcher.getOfflineBenchTiles(),
+                        osmDataFetcher::downloadBenchTiles));
+        final OfflineRegionDownloader downloader = new OfflineRegionDownloader(requestExecutor,
+                DOWNLOAD_CONCURRENCY, DOWNLOAD_TILES_PER_REQUEST);
+
+        Toast.makeText(this, "Downloading offline data...", Toast.LENGTH_SHORT).show();
+        downloadExecutor.execute(() -> {
+            OfflineRegionDownloader.Progress result = null;
+            try {
+                result = downloader.download(tiles, layers,
+                        progress -> runOnUiThread(() -> showProgress(progress)), token);
+            } catch (IOException e) {
+                Log.d(TAG, "Offline download stopped: " + e.getMessage());
+            } finally {
+                // Also after an unexpected failure, so another download can start
+                final OfflineRegionDownloader.Progress finished = result;
+                runOnUiThread(() -> onDownloadFinished(finished));
+            }
+        });
+    }
+
+    private void showProgress(OfflineRegionDownloader.Progress progress) {
+        if (btnDownload != null) {
+            btnDownload.setText(String.format(Locale.US, "%d%%", Math.round(progress.getFraction() * 100)));
+        }
+    }
+
+    private void onDownloadFinished(OfflineRegionDownloader.Progress progress) {
+        downloadToken = null;
+        if (isFinishing()) {
+            return;
+        }
+        if (btnDownload != null) {
+            btnDownload.setText("Download");
+        }
+        if (progress == null) {
+            return;
+        }
+
+        if (progress.isComplete()) {
+            double megabytes = (osmDataFetcher.getOfflineTrailTiles().getSizeBytes()
+                    + osmDataFetcher.getOfflineBenchTiles().getSizeBytes()) / (1024.0 * 1024.0);
+            Toast.makeText(this, String.format(Locale.US,
+                    "Offline area ready (%.1f MB new, %.1f MB in total)",
+                    progress.getBytes() / (1024.0 * 1024.0), megabytes), Toast.LENGTH_LONG).show();
+        } else {
+            // Downloading again resumes with the missing tiles
+            Toast.makeText(this, progress.getTilesFailed() + " tiles failed. Tap Download to retry.",
+                    Toast.LENGTH_LONG).show();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // Stored tiles are kept; the next download resumes from them
+        if (downloadToken != null) {
+            downloadToken.cancel();
+        }
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+            requestExecutor.shutdownNow();
+        }
+    }
+}
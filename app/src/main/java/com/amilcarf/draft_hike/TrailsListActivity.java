@@ -10,6 +10,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -24,14 +25,15 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.amilcarf.draft_hike.adapters.TrailAdapter;
-import com.amilcarf.draft_hike.models.OSMNode;
-import com.amilcarf.draft_hike.models.OSMWay;
 import com.amilcarf.draft_hike.models.Trail;
-import com.amilcarf.draft_hike.osm.OSMDataFetcher;
+import com.amilcarf.draft_hike.search.TrailSearcher;
+import com.amilcarf.draft_hike.trails.TrailLoad;
+import com.amilcarf.draft_hike.trails.TrailRepository;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
@@ -39,8 +41,6 @@ import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.tasks.OnSuccessListener;
 
-import org.json.JSONException;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -51,7 +51,11 @@ public class TrailsListActivity extends AppCompatActivity {
     private static final String TAG = "TrailsListActivity";
     private static final String PREFS_NAME = "TrailsPrefs";
     private static final String LAST_FETCH_TIME = "last_fetch_time";
+    private static final String LAST_FETCH_LAT = "last_fetch_lat";
+    private static final String LAST_FETCH_LON = "last_fetch_lon";
     private static final long CACHE_DURATION = 30 * 60 * 1000; // 30 minutes
+    // Wait this long after the last keystroke before searching
+    private static final long SEARCH_DEBOUNCE_MS = 150;
 
     // Location permission request code
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
@@ -69,8 +73,18 @@ public class TrailsListActivity extends AppCompatActivity {
     private TextView emptyStateSubtext;
     private Button retryButton;
     private Toolbar toolbar;
-    private OSMDataFetcher osmDataFetcher;
-    private ExecutorService executorService;
+    private TrailRepository trailRepository;
+    // The search shown on screen; survives rotation in the repository
+    private LiveData<TrailLoad> trailLoad;
+    private ExecutorService searchExecutor;
+    private TrailSearcher trailSearcher;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable debouncedSearch = new Runnable() {
+        @Override
+        public void run() {
+            trailSearcher.search(searchEditText.getText().toString());
+        }
+    };
 
     // Location variables
     private FusedLocationProviderClient fusedLocationClient;
@@ -79,6 +93,11 @@ public class TrailsListActivity extends AppCompatActivity {
     private boolean locationPermissionGranted = false;
     private boolean isFetchingLocation = false;
 
+    // Cache-first loading state
+    private boolean showingCachedTrails = false;
+    private boolean forceRefresh = false;
+    private long lastFetchTime = 0;
+
     // Default location (used as fallback)---Necessary at the moment!!!!
     private double defaultLatitude = 40.7829; // Central Park, NYC
     private double defaultLongitude = -73.9654;
@@ -116,14 +135,16 @@ public class TrailsListActivity extends AppCompatActivity {
             }
         });
 
-        // Initialize OSM data fetcher
-        osmDataFetcher = new OSMDataFetcher(this);
+        // Trail searches and their results outlive this activity
+        trailRepository = TrailRepository.get(this);
 
         // Initialize location services
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
 
-        // Create thread pool
-        executorService = Executors.newFixedThreadPool(2);
+        // Searches run one at a time off the main thread; results come back on it
+        searchExecutor = Executors.newSingleThreadExecutor();
+        trailSearcher = new TrailSearcher(searchExecutor, mainHandler::post,
+                (query, trails) -> showSearchResults(trails));
 
         // RecyclerView here
         setupRecyclerView();
@@ -135,6 +156,7 @@ public class TrailsListActivity extends AppCompatActivity {
         locationButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                forceRefresh = true;
                 useCurrentLocation();
             }
         });
@@ -143,6 +165,7 @@ public class TrailsListActivity extends AppCompatActivity {
         retryButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                forceRefresh = true;
                 useCurrentLocation();
             }
         });
@@ -156,10 +179,79 @@ public class TrailsListActivity extends AppCompatActivity {
         emptyStateText.setText("Finding trails near you...");
         emptyStateSubtext.setText("Searching for hiking trails with benches");
 
-        // Check location permission and load data
+        // Show the last cached trails right away, then check location permission and load data
+        showCachedTrails();
         checkLocationPermissionAndLoad();
     }
 
+    private void showCachedTrails() {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        lastFetchTime = prefs.getLong(LAST_FETCH_TIME, 0);
+        if (lastFetchTime == 0) {
+            return;
+        }
+
+        trailRepository.loadSavedTrails().observe(this, cached -> {
+            // A network result may already have arrived
+            if (cached == null || cached.isEmpty() || !allTrails.isEmpty()) {
+                return;
+            }
+            Log.d(TAG, "Showing " + cached.size() + " cached trails");
+            showingCachedTrails = true;
+            loadingProgressBar.setVisibility(View.GONE);
+            showTrails(cached);
+            updateCacheAge();
+        });
+    }
+
+    // True when the cached trails are recent and were fetched for roughly this area
+    private boolean isCacheFreshFor(double latitude, double longitude) {
+        if (!showingCachedTrails || System.currentTimeMillis() - lastFetchTime >= CACHE_DURATION) {
+            return false;
+        }
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        float[] moved = new float[1];
+        Location.distanceBetween(latitude, longitude,
+                prefs.getFloat(LAST_FETCH_LAT, 0f), prefs.getFloat(LAST_FETCH_LON, 0f), moved);
+        return moved[0] < searchRadius / 2;
+    }
+
+    private void saveFetchArea(double latitude, double longitude) {
+        lastFetchTime = System.currentTimeMillis();
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                .putLong(LAST_FETCH_TIME, lastFetchTime)
+                .putFloat(LAST_FETCH_LAT, (float) latitude)
+                .putFloat(LAST_FETCH_LON, (float) longitude)
+                .apply();
+    }
+
+    private void updateCacheAge() {
+        if (getSupportActionBar() == null || lastFetchTime == 0) {
+            return;
+        }
+        CharSequence age = DateUtils.getRelativeTimeSpanString(lastFetchTime,
+                System.currentTimeMillis(), DateUtils.MINUTE_IN_MILLIS);
+        getSupportActionBar().setSubtitle("Updated " + age);
+    }
+
+    private void showTrails(List<Trail> trails) {
+        allTrails.clear();
+        allTrails.addAll(trails);
+        trailSearcher.setTrails(allTrails);
+
+        filteredTrails.clear();
+        filteredTrails.addAll(allTrails);
+        trailAdapter.submitList(filteredTrails);
+
+        recyclerViewTrails.setVisibility(View.VISIBLE);
+        emptyStateLayout.setVisibility(View.GONE);
+
+        String query = searchEditText.getText().toString();
+        if (!query.isEmpty()) {
+            trailSearcher.search(query);
+        }
+    }
+
     private void setupRecyclerView() {
         allTrails = new ArrayList<>();
         filteredTrails = new ArrayList<>();
@@ -167,7 +259,7 @@ public class TrailsListActivity extends AppCompatActivity {
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         recyclerViewTrails.setLayoutManager(layoutManager);
 
-        trailAdapter = new TrailAdapter(filteredTrails,
+        trailAdapter = new TrailAdapter(this,
                 new TrailAdapter.OnItemClickListener() {
                     @Override
                     public void onItemClick(Trail trail) {
@@ -197,7 +289,9 @@ public class TrailsListActivity extends AppCompatActivity {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                filterTrails(s.toString());
+                // Restart the debounce window on every keystroke
+                mainHandler.removeCallbacks(debouncedSearch);
+                mainHandler.postDelayed(debouncedSearch, SEARCH_DEBOUNCE_MS);
             }
 
             @Override
@@ -214,7 +308,9 @@ public class TrailsListActivity extends AppCompatActivity {
         });
 
         searchEditText.setOnEditorActionListener((v, actionId, event) -> {
-            filterTrails(searchEditText.getText().toString());
+            // Search right away instead of waiting out the debounce
+            mainHandler.removeCallbacks(debouncedSearch);
+            debouncedSearch.run();
             return true;
         });
     }
@@ -268,7 +364,8 @@ public class TrailsListActivity extends AppCompatActivity {
         }
 
         isFetchingLocation = true;
-        loadingProgressBar.setVisibility(View.VISIBLE);
+        // Cached trails stay on screen while refreshing, without the blocking spinner
+        loadingProgressBar.setVisibility(showingCachedTrails ? View.GONE : View.VISIBLE);
         emptyStateText.setText("Getting your location...");
         emptyStateSubtext.setText("Searching for trails nearby");
 
@@ -359,132 +456,72 @@ public class TrailsListActivity extends AppCompatActivity {
     private void loadTrailsWithLocation(double latitude, double longitude) {
         Log.d(TAG, "Loading trails for location: " + latitude + ", " + longitude);
 
-        executorService.execute(() -> {
-            try {
-                // Fetch trails from OSM
-                List<OSMWay> osmTrails = osmDataFetcher.fetchTrailsNearLocation(
-                        latitude, longitude, searchRadius);
-
-                Log.d(TAG, "Fetched " + (osmTrails != null ? osmTrails.size() : 0) + " trails from OSM");
-
-                // Fetch benches
-                List<OSMNode> osmBenches = osmDataFetcher.fetchBenchesNearLocation(
-                        latitude, longitude, searchRadius);
+        boolean refresh = forceRefresh;
+        forceRefresh = false;
+        if (!refresh && !trailRepository.hasArea(latitude, longitude, searchRadius)
+                && isCacheFreshFor(latitude, longitude)) {
+            // Cached trails are still current; skip the network entirely
+            Log.d(TAG, "Cached trails are fresh, not refreshing");
+            loadingProgressBar.setVisibility(View.GONE);
+            return;
+        }
 
-                Log.d(TAG, "Fetched " + (osmBenches != null ? osmBenches.size() : 0) + " benches from OSM");
+        if (trailLoad != null) {
+            trailLoad.removeObservers(this);
+        }
+        // Picks up a search for this area already running, e.g. from before a rotation
+        trailLoad = trailRepository.loadTrails(latitude, longitude, searchRadius, refresh);
+        trailLoad.observe(this, load -> showTrailLoad(load, latitude, longitude));
+    }
 
-                // Process the data
-                List<Trail> trails = new ArrayList<>();
-                if (osmTrails != null && !osmTrails.isEmpty()) {
-                    trails = processOSMDataToTrails(osmTrails, osmBenches, latitude, longitude);
+    private void showTrailLoad(TrailLoad load, double latitude, double longitude) {
+        List<Trail> trails = load.getTrails();
+        switch (load.getStatus()) {
+            case LOADING:
+                // Trails arrive nearest first while the search widens; the first batch
+                // replaces cached or sample trails and the differ inserts later ones
+                if (!trails.isEmpty()) {
+                    showingCachedTrails = false;
+                    loadingProgressBar.setVisibility(View.GONE);
+                    showTrails(trails);
                 }
+                break;
 
+            case LOADED:
+                loadingProgressBar.setVisibility(View.GONE);
                 if (trails.isEmpty()) {
-                    // Increase search radius and try again; Recommendation !!!!
-                    double largerRadius = searchRadius * 2;
-                    showToast("No trails found within " + (searchRadius/1000) + "km. Searching " + (largerRadius/1000) + "km...");
-
-                    osmTrails = osmDataFetcher.fetchTrailsNearLocation(latitude, longitude, largerRadius);
-                    if (osmTrails != null && !osmTrails.isEmpty()) {
-                        trails = processOSMDataToTrails(osmTrails, osmBenches, latitude, longitude);
-                    }
-                }
-
-                final List<Trail> finalTrails = trails;
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    loadingProgressBar.setVisibility(View.GONE);
-
-                    if (finalTrails.isEmpty()) {
-                        loadSampleData();
-                        showToast("No trails found nearby. Using sample trails.");
-                    } else {
-                        allTrails.clear();
-                        allTrails.addAll(finalTrails);
-
-                        filteredTrails.clear();
-                        filteredTrails.addAll(allTrails);
-                        trailAdapter.updateData(filteredTrails);
-
-                        recyclerViewTrails.setVisibility(View.VISIBLE);
-                        emptyStateLayout.setVisibility(View.GONE);
-
-                        showToast("Found " + finalTrails.size() + " trails near you!");
-                    }
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading trails from OSM", e);
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    loadingProgressBar.setVisibility(View.GONE);
                     loadSampleData();
-                    showToast("Cannot connect to trail database. Using sample trails.");
-                });
-            }
-        });
-    }
-
-    private List<Trail> processOSMDataToTrails(List<OSMWay> osmTrails, List<OSMNode> osmBenches,
-                                               double userLat, double userLon) {
-        List<Trail> trails = new ArrayList<>();
-
-        // Process each trail
-        for (int i = 0; i < Math.min(osmTrails.size(), 10); i++) { // Limit to 10 trails
-            OSMWay osmWay = osmTrails.get(i);
-
-            try {
-                // Calculate trail length
-                double distanceKm = calculateTrailLength(osmWay);
-                if (distanceKm < 0.1) continue; // Skip very short trails
-
-                // Estimate duration
-                int durationMinutes = (int) ((distanceKm / 5.0) * 60);
-                if (durationMinutes < 1) durationMinutes = 5;
-
-                String duration = durationMinutes + " min";
-
-                // Count benches (simplified)
-                int benchCount = osmBenches != null ? Math.min(osmBenches.size() / 5, 8) : 0;
-                if (benchCount < 1) benchCount = 2;
-
-                // Get trail name
-                String name = osmWay.getTag("name");
-                if (name == null || name.isEmpty()) {
-                    name = "Trail " + (i + 1);
+                    showToast("No trails found nearby. Using sample trails.");
+                } else {
+                    showingCachedTrails = false;
+                    showTrails(trails);
+                    saveFetchArea(latitude, longitude);
+                    updateCacheAge();
+
+                    showToast("Found " + trails.size() + " trails near you!");
                 }
+                break;
 
-                // Get difficulty
-                String difficulty = getDifficultyFromTags(osmWay);
-
-                // Get status
-                String status = "Open";
-
-                // Create description
-                String description = generateTrailDescription(osmWay);
-
-                // Create Trail object
-                Trail trail = new Trail(
-                        String.valueOf(osmWay.getId()),
-                        name,
-                        Math.round(distanceKm * 10.0) / 10.0,
-                        duration,
-                        benchCount,
-                        difficulty,
-                        status,
-                        description,
-                        false
-                );
-
-                trails.add(trail);
-
-            } catch (Exception e) {
-                Log.w(TAG, "Error processing trail", e);
-            }
+            case FAILED:
+                loadingProgressBar.setVisibility(View.GONE);
+                if (showingCachedTrails) {
+                    // Keep showing the cached trails rather than sample data
+                    showToast("Cannot refresh trails. Showing saved trails.");
+                    return;
+                }
+                loadSampleData();
+                showToast("Cannot connect to trail database. Using sample trails.");
+                break;
         }
-
-        return trails;
     }
 
     private void loadSampleData() {
+        if (showingCachedTrails) {
+            // Real cached trails are more useful than sample data
+            loadingProgressBar.setVisibility(View.GONE);
+            return;
+        }
+
         allTrails.clear();
 
         // Add sample trails
@@ -499,98 +536,21 @@ public class TrailsListActivity extends AppCompatActivity {
         allTrails.add(new Trail("5", "Lake Shore Walk", 0.8, "15 min", 3,
                 "Easy", "Open", "Short walk around the lake with accessible benches.", true));
 
+        trailSearcher.setTrails(allTrails);
         filteredTrails.clear();
         filteredTrails.addAll(allTrails);
-        trailAdapter.updateData(filteredTrails);
+        trailAdapter.submitList(filteredTrails);
 
         loadingProgressBar.setVisibility(View.GONE);
         recyclerViewTrails.setVisibility(View.VISIBLE);
         emptyStateLayout.setVisibility(View.GONE);
     }
 
-    private double calculateTrailLength(OSMWay way) {
-        List<OSMNode> nodes = way.getNodes();
-        if (nodes == null || nodes.size() < 2) {
-            return 1.0;
-        }
-
-        // Simple distance calculation
-        double totalDistance = 0.0;
-        for (int i = 0; i < nodes.size() - 1; i++) {
-            OSMNode node1 = nodes.get(i);
-            OSMNode node2 = nodes.get(i + 1);
-
-            double lat1 = node1.getLatitude();
-            double lon1 = node1.getLongitude();
-            double lat2 = node2.getLatitude();
-            double lon2 = node2.getLongitude();
-
-            double dLat = Math.toRadians(lat2 - lat1);
-            double dLon = Math.toRadians(lon2 - lon1);
-            double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                    Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                            Math.sin(dLon/2) * Math.sin(dLon/2);
-            double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-
-            totalDistance += 6371000 * c; // Earth's radius in meters
-        }
-
-        return totalDistance / 1000; // Convert to km
-    }
-
-    private String getDifficultyFromTags(OSMWay way) {
-        String difficulty = way.getTag("trail:difficulty");
-        if (difficulty != null) {
-            return difficulty;
-        }
-
-        String surface = way.getTag("surface");
-        if ("paved".equals(surface) || "asphalt".equals(surface)) {
-            return "Easy";
-        } else if ("gravel".equals(surface) || "compacted".equals(surface)) {
-            return "Medium";
-        }
-
-        return "Medium";
-    }
-
-    private String generateTrailDescription(OSMWay way) {
-        StringBuilder description = new StringBuilder();
-
-        String name = way.getTag("name");
-        if (name != null) {
-            description.append(name).append(". ");
-        }
-
-        String surface = way.getTag("surface");
-        if (surface != null) {
-            description.append("Surface: ").append(surface).append(". ");
-        }
-
-        if (description.length() == 0) {
-            description.append("A scenic hiking trail suitable for outdoor enthusiasts.");
-        }
-
-        return description.toString();
-    }
-
-    private void filterTrails(String query) {
+    private void showSearchResults(List<Trail> results) {
         filteredTrails.clear();
+        filteredTrails.addAll(results);
 
-        if (query.isEmpty()) {
-            filteredTrails.addAll(allTrails);
-        } else {
-            String lowerCaseQuery = query.toLowerCase();
-            for (Trail trail : allTrails) {
-                if (trail.getName().toLowerCase().contains(lowerCaseQuery) ||
-                        trail.getDescription().toLowerCase().contains(lowerCaseQuery) ||
-                        trail.getDifficulty().toLowerCase().contains(lowerCaseQuery)) {
-                    filteredTrails.add(trail);
-                }
-            }
-        }
-
-        trailAdapter.updateData(filteredTrails);
+        trailAdapter.submitList(filteredTrails);
         updateEmptyState();
     }
 
@@ -624,13 +584,22 @@ public class TrailsListActivity extends AppCompatActivity {
     }
 
     private void toggleFavorite(Trail trail, int position) {
-        trail.setFavorite(!trail.isFavorite());
-        trailAdapter.updateItem(position, trail);
+        // Submitted trails are never mutated; the diff against the copy rebinds just the star
+        Trail updated = new Trail(trail);
+        updated.setFavorite(!trail.isFavorite());
+
+        replaceTrail(allTrails, updated);
+        replaceTrail(filteredTrails, updated);
+        trailSearcher.setTrails(allTrails);
+        trailAdapter.submitList(filteredTrails);
+        trailRepository.saveTrail(updated);
+    }
 
-        for (int i = 0; i < allTrails.size(); i++) {
-            if (allTrails.get(i).getId().equals(trail.getId())) {
-                allTrails.set(i, trail);
-                break;
+    private static void replaceTrail(List<Trail> trails, Trail updated) {
+        for (int i = 0; i < trails.size(); i++) {
+            if (trails.get(i).getId().equals(updated.getId())) {
+                trails.set(i, updated);
+                return;
             }
         }
     }
@@ -651,9 +620,15 @@ public class TrailsListActivity extends AppCompatActivity {
             fusedLocationClient.removeLocationUpdates(locationCallback);
         }
 
-        // Shutdown executor
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+        // LiveData drops this activity's observers by itself. A trail search still running is
+        // left to finish for the activity recreated after a rotation, but nobody is coming
+        // back for it once the screen is closed
+        if (isFinishing()) {
+            trailRepository.cancelUnwatchedSearches();
+        }
+        mainHandler.removeCallbacks(debouncedSearch);
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
         }
     }
 }
\ No newline at end of file
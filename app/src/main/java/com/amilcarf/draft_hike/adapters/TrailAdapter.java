@@ -1,5 +1,8 @@
 package com.amilcarf.draft_hike.adapters;
 
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -7,14 +10,61 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.amilcarf.draft_hike.R;
 import com.amilcarf.draft_hike.models.Trail;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Shows trails from immutable list snapshots. Each submitted list is turned into display
+ * models and diffed against the current one on background threads, and only the rows that
+ * changed are rebound. Binding a row only copies precomputed values into its views.
+ * Trails must not be mutated after submission; submit an updated copy instead.
+ */
 public class TrailAdapter extends RecyclerView.Adapter<TrailAdapter.TrailViewHolder> {
 
-    private List<Trail> trailList;
+    // Payload for a change that only flipped the favorite flag
+    static final Object PAYLOAD_FAVORITE = new Object();
+
+    private static final DiffUtil.ItemCallback<TrailDisplayModel> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<TrailDisplayModel>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TrailDisplayModel oldItem, @NonNull TrailDisplayModel newItem) {
+            return oldItem.trail.getId().equals(newItem.trail.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TrailDisplayModel oldItem, @NonNull TrailDisplayModel newItem) {
+            return oldItem.trail.isFavorite() == newItem.trail.isFavorite()
+                    && oldItem.trail.hasSameDetails(newItem.trail);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull TrailDisplayModel oldItem, @NonNull TrailDisplayModel newItem) {
+            // Null asks for a full rebind
+            return oldItem.trail.hasSameDetails(newItem.trail) ? PAYLOAD_FAVORITE : null;
+        }
+    };
+
+    // Shared by all adapters; builds display models in submission order
+    private static final ExecutorService MODEL_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final AsyncListDiffer<TrailDisplayModel> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final TrailDisplayModel.Styles styles;
+    // Models of the last list built, by Trail instance; only touched on MODEL_EXECUTOR.
+    // Trails are immutable once submitted, so a trail still in the next list keeps its model.
+    private Map<Trail, TrailDisplayModel> models = new IdentityHashMap<>();
+    private int submitted;
+
     private OnItemClickListener onItemClickListener;
     private OnFavoriteClickListener onFavoriteClickListener;
     private OnStartTrailClickListener onStartTrailClickListener;
@@ -33,10 +83,12 @@ public class TrailAdapter extends RecyclerView.Adapter<TrailAdapter.TrailViewHol
     }
 
     // Constructor
-    public TrailAdapter(List<Trail> trailList, OnItemClickListener onItemClickListener,
+    public TrailAdapter(Context context,
+                        OnItemClickListener onItemClickListener,
                         OnFavoriteClickListener onFavoriteClickListener,
                         OnStartTrailClickListener onStartTrailClickListener) {
-        this.trailList = trailList;
+        setHasStableIds(true);
+        this.styles = new TrailDisplayModel.Styles(context);
         this.onItemClickListener = onItemClickListener;
         this.onFavoriteClickListener = onFavoriteClickListener;
         this.onStartTrailClickListener = onStartTrailClickListener;
@@ -47,56 +99,111 @@ public class TrailAdapter extends RecyclerView.Adapter<TrailAdapter.TrailViewHol
     public TrailViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_trail, parent, false);
-        return new TrailViewHolder(view);
-    }
+        TrailViewHolder holder = new TrailViewHolder(view);
 
-    @Override
-    public void onBindViewHolder(@NonNull TrailViewHolder holder, int position) {
-        Trail trail = trailList.get(position);
-        holder.bind(trail);
-
-        // Set click listeners
-        holder.itemView.setOnClickListener(v -> {
-            if (onItemClickListener != null) {
-                onItemClickListener.onItemClick(trail);
+        // Set click listeners once per holder; they look up the item at click time
+        View.OnClickListener openDetails = v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (onItemClickListener != null && position != RecyclerView.NO_POSITION) {
+                onItemClickListener.onItemClick(getItem(position));
             }
-        });
+        };
+        holder.itemView.setOnClickListener(openDetails);
+        holder.btnViewDetails.setOnClickListener(openDetails);
 
         holder.favoriteIcon.setOnClickListener(v -> {
-            if (onFavoriteClickListener != null) {
-                onFavoriteClickListener.onFavoriteClick(trail, position);
+            int position = holder.getBindingAdapterPosition();
+            if (onFavoriteClickListener != null && position != RecyclerView.NO_POSITION) {
+                onFavoriteClickListener.onFavoriteClick(getItem(position), position);
             }
         });
 
-        holder.btnViewDetails.setOnClickListener(v -> {
-            if (onItemClickListener != null) {
-                onItemClickListener.onItemClick(trail);
+        holder.btnStartTrail.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (onStartTrailClickListener != null && position != RecyclerView.NO_POSITION) {
+                onStartTrailClickListener.onStartTrailClick(getItem(position));
             }
         });
+        return holder;
+    }
 
-        holder.btnStartTrail.setOnClickListener(v -> {
-            if (onStartTrailClickListener != null) {
-                onStartTrailClickListener.onStartTrailClick(trail);
+    @Override
+    public void onBindViewHolder(@NonNull TrailViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && onlyFavoriteChanged(payloads)) {
+            holder.bindFavorite(differ.getCurrentList().get(position));
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    private static boolean onlyFavoriteChanged(List<Object> payloads) {
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) != PAYLOAD_FAVORITE) {
+                return false;
             }
-        });
+        }
+        return true;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TrailViewHolder holder, int position) {
+        holder.bind(differ.getCurrentList().get(position));
     }
 
     @Override
     public int getItemCount() {
-        return trailList != null ? trailList.size() : 0;
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return stableId(getItem(position).getId());
     }
 
-    // Update data method
-    public void updateData(List<Trail> newTrailList) {
-        this.trailList = newTrailList;
-        notifyDataSetChanged();
+    public Trail getItem(int position) {
+        return differ.getCurrentList().get(position).trail;
     }
 
-    // Update single item
-    public void updateItem(int position, Trail trail) {
-        if (position >= 0 && position < trailList.size()) {
-            trailList.set(position, trail);
-            notifyItemChanged(position);
+    // Show a new snapshot of the list; the caller may keep changing its own list afterwards.
+    // Must be called on the main thread.
+    public void submitList(List<Trail> trails) {
+        final List<Trail> snapshot = new ArrayList<>(trails);
+        final int generation = ++submitted;
+        MODEL_EXECUTOR.execute(() -> {
+            List<TrailDisplayModel> displayModels = new ArrayList<>(snapshot.size());
+            // Models of trails no longer listed are dropped with the previous map
+            Map<Trail, TrailDisplayModel> built = new IdentityHashMap<>();
+            for (Trail trail : snapshot) {
+                TrailDisplayModel model = models.get(trail);
+                if (model == null) {
+                    model = TrailDisplayModel.from(trail, styles);
+                }
+                built.put(trail, model);
+                displayModels.add(model);
+            }
+            models = built;
+            final List<TrailDisplayModel> result = Collections.unmodifiableList(displayModels);
+            mainHandler.post(() -> {
+                // A newer list may have been submitted while this one was being built
+                if (generation == submitted) {
+                    differ.submitList(result);
+                }
+            });
+        });
+    }
+
+    // OSM ids are numeric; anything else (sample or legacy ids) falls back to a 64-bit hash
+    static long stableId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            long hash = 0xcbf29ce484222325L; // FNV-1a
+            for (int i = 0; i < id.length(); i++) {
+                hash ^= id.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hash;
         }
     }
 
@@ -129,49 +236,27 @@ public class TrailAdapter extends RecyclerView.Adapter<TrailAdapter.TrailViewHol
             btnStartTrail = itemView.findViewById(R.id.btnStartTrail);
         }
 
-        public void bind(Trail trail) {
+        void bind(TrailDisplayModel model) {
+            Trail trail = model.trail;
             trailName.setText(trail.getName());
-            trailDistance.setText(String.format("%.1f km", trail.getDistance()));
+            trailDistance.setText(model.distanceText);
             trailDuration.setText(trail.getDuration());
-            trailBenches.setText(trail.getBenchCount() + " benches");
+            trailBenches.setText(model.benchesText);
             trailDifficulty.setText(trail.getDifficulty());
             trailStatus.setText(trail.getStatus());
             trailDescription.setText(trail.getDescription());
 
-            // Favorite icon
-            int favoriteIconRes = trail.isFavorite() ?
-                    android.R.drawable.btn_star_big_on : android.R.drawable.btn_star_big_off;;
-            favoriteIcon.setImageResource(favoriteIconRes);
-
-            // Difficulty background
-            String difficulty = trail.getDifficulty().toLowerCase();
-            int difficultyBg;
-            int difficultyTextColor;
-
-            if (difficulty.contains("hard")) {
-                difficultyBg = R.drawable.bg_difficulty_hard;
-                difficultyTextColor = itemView.getContext().getResources().getColor(R.color.difficulty_hard_text);
-            } else if (difficulty.contains("medium")) {
-                difficultyBg = R.drawable.bg_difficulty_medium;
-                difficultyTextColor = itemView.getContext().getResources().getColor(R.color.difficulty_medium_text);
-            } else {
-                difficultyBg = R.drawable.bg_difficulty_easy;
-                difficultyTextColor = itemView.getContext().getResources().getColor(R.color.difficulty_easy_text);
-            }
+            bindFavorite(model);
 
-            trailDifficulty.setBackgroundResource(difficultyBg);
-            trailDifficulty.setTextColor(difficultyTextColor);
+            trailDifficulty.setBackgroundResource(model.difficultyBackgroundRes);
+            trailDifficulty.setTextColor(model.difficultyTextColor);
 
-            // status background
-            String status = trail.getStatus().toLowerCase();
-            int statusBg = status.contains("open") ?
-                    R.drawable.bg_status_open : R.drawable.bg_status_closed;
-            int statusTextColor = status.contains("open") ?
-                    itemView.getContext().getResources().getColor(R.color.status_open_text) :
-                    itemView.getContext().getResources().getColor(R.color.status_closed_text);
+            trailStatus.setBackgroundResource(model.statusBackgroundRes);
+            trailStatus.setTextColor(model.statusTextColor);
+        }
 
-            trailStatus.setBackgroundResource(statusBg);
-            trailStatus.setTextColor(statusTextColor);
+        void bindFavorite(TrailDisplayModel model) {
+            favoriteIcon.setImageResource(model.favoriteIconRes);
         }
     }
 }
\ No newline at end of file
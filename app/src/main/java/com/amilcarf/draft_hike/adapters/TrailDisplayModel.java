@@ -0,0 +1,83 @@
+package com.amilcarf.draft_hike.adapters;
+
+import android.content.Context;
+import androidx.core.content.ContextCompat;
+import com.amilcarf.draft_hike.R;
+import com.amilcarf.draft_hike.models.Trail;
+
+/**
+ * Everything a trail row shows, formatted and resolved ahead of time so binding a row is
+ * only setter calls. Built once per Trail instance off the main thread; since shown trails
+ * are never mutated, a model stays valid for as long as its trail is in the list.
+ */
+final class TrailDisplayModel {
+
+    final Trail trail;
+    final String distanceText;
+    final String benchesText;
+    final int difficultyBackgroundRes;
+    final int difficultyTextColor;
+    final int statusBackgroundRes;
+    final int statusTextColor;
+    final int favoriteIconRes;
+
+    private TrailDisplayModel(Trail trail, String distanceText, String benchesText,
+                              int difficultyBackgroundRes, int difficultyTextColor,
+                              int statusBackgroundRes, int statusTextColor, int favoriteIconRes) {
+        this.trail = trail;
+        this.distanceText = distanceText;
+        this.benchesText = benchesText;
+        this.difficultyBackgroundRes = difficultyBackgroundRes;
+        this.difficultyTextColor = difficultyTextColor;
+        this.statusBackgroundRes = statusBackgroundRes;
+        this.statusTextColor = statusTextColor;
+        this.favoriteIconRes = favoriteIconRes;
+    }
+
+    static TrailDisplayModel from(Trail trail, Styles styles) {
+        // Difficulty background
+        String difficulty = trail.getDifficulty().toLowerCase();
+        int difficultyBg;
+        int difficultyTextColor;
+        if (difficulty.contains("hard")) {
+            difficultyBg = R.drawable.bg_difficulty_hard;
+            difficultyTextColor = styles.difficultyHardText;
+        } else if (difficulty.contains("medium")) {
+            difficultyBg = R.drawable.bg_difficulty_medium;
+            difficultyTextColor = styles.difficultyMediumText;
+        } else {
+            difficultyBg = R.drawable.bg_difficulty_easy;
+            difficultyTextColor = styles.difficultyEasyText;
+        }
+
+        // Status background
+        boolean open = trail.getStatus().toLowerCase().contains("open");
+
+        return new TrailDisplayModel(trail,
+                String.format("%.1f km", trail.getDistance()),
+                trail.getBenchCount() + " benches",
+                difficultyBg, difficultyTextColor,
+                open ? R.drawable.bg_status_open : R.drawable.bg_status_closed,
+                open ? styles.statusOpenText : styles.statusClosedText,
+                trail.isFavorite() ? android.R.drawable.btn_star_big_on : android.R.drawable.btn_star_big_off);
+    }
+
+    /**
+     * Text colors resolved once per adapter rather than once per bind.
+     */
+    static final class Styles {
+        final int difficultyEasyText;
+        final int difficultyMediumText;
+        final int difficultyHardText;
+        final int statusOpenText;
+        final int statusClosedText;
+
+        Styles(Context context) {
+            difficultyEasyText = ContextCompat.getColor(context, R.color.difficulty_easy_text);
+            difficultyMediumText = ContextCompat.getColor(context, R.color.difficulty_medium_text);
+            difficultyHardText = ContextCompat.getColor(context, R.color.difficulty_hard_text);
+            statusOpenText = ContextCompat.getColor(context, R.color.status_open_text);
+            statusClosedText = ContextCompat.getColor(context, R.color.status_closed_text);
+        }
+    }
+}
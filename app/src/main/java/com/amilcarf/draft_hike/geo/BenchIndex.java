@@ -0,0 +1,145 @@
+package com.amilcarf.draft_hike.geo;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static uniform-grid index over bench locations, for counting the benches along a trail.
+ *
+ * Benches are projected to local meters (equirectangular around the benches' mean
+ * latitude) and bucketed into square cells. The buckets are packed into sorted primitive
+ * arrays, so the index is a few arrays regardless of bench count. Counting the benches
+ * near a way only visits the cells around each of its segments, which keeps processing
+ * near-linear in the number of trail segments plus matched benches.
+ */
+public class BenchIndex {
+
+    private final double cellSize;
+    private final double cosLat;
+    private final double[] xs;
+    private final double[] ys;
+
+    // Cells in ascending key order; benches of cell i are order[cellStart[i]..cellStart[i+1])
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] order;
+
+    // Marks benches already counted by the current query
+    private final int[] seenStamp;
+    private int stamp;
+
+    public BenchIndex(List<OSMNode> benches, double cellSize) {
+        this.cellSize = cellSize;
+        int count = benches.size();
+
+        double latSum = 0;
+        for (OSMNode bench : benches) {
+            latSum += bench.getLatitude();
+        }
+        this.cosLat = GeoMath.cosLatitude(count > 0 ? latSum / count : 0);
+
+        xs = new double[count];
+        ys = new double[count];
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            OSMNode bench = benches.get(i);
+            xs[i] = projectX(bench.getLongitude());
+            ys[i] = projectY(bench.getLatitude());
+            keyed[i] = cellKey(cell(xs[i]), cell(ys[i]));
+        }
+
+        // Sort bench indices by cell key to build the packed buckets
+        Integer[] sorted = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(keyed[a], keyed[b]));
+
+        order = new int[count];
+        long[] keys = new long[count];
+        int[] starts = new int[count + 1];
+        int cells = 0;
+        for (int i = 0; i < count; i++) {
+            order[i] = sorted[i];
+            long key = keyed[sorted[i]];
+            if (cells == 0 || keys[cells - 1] != key) {
+                keys[cells] = key;
+                starts[cells] = i;
+                cells++;
+            }
+        }
+        starts[cells] = count;
+        cellKeys = Arrays.copyOf(keys, cells);
+        cellStart = Arrays.copyOf(starts, cells + 1);
+        seenStamp = new int[count];
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Counts the distinct benches within maxDistance meters of the way's polyline.
+     * Not thread-safe: queries share a scratch array.
+     */
+    public int countNear(OSMWay way, double maxDistance) {
+        if (xs.length == 0 || way.getNodeCount() == 0) {
+            return 0;
+        }
+        stamp++;
+        int found = 0;
+
+        double prevX = projectX(way.getLongitude(0));
+        double prevY = projectY(way.getLatitude(0));
+        int segments = Math.max(1, way.getNodeCount() - 1);
+        for (int s = 0; s < segments; s++) {
+            int next = Math.min(s + 1, way.getNodeCount() - 1);
+            double x = projectX(way.getLongitude(next));
+            double y = projectY(way.getLatitude(next));
+
+            int minCellX = cell(Math.min(prevX, x) - maxDistance);
+            int maxCellX = cell(Math.max(prevX, x) + maxDistance);
+            int minCellY = cell(Math.min(prevY, y) - maxDistance);
+            int maxCellY = cell(Math.max(prevY, y) + maxDistance);
+
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                for (int cy = minCellY; cy <= maxCellY; cy++) {
+                    int bucket = Arrays.binarySearch(cellKeys, cellKey(cx, cy));
+                    if (bucket < 0) {
+                        continue;
+                    }
+                    for (int k = cellStart[bucket]; k < cellStart[bucket + 1]; k++) {
+                        int bench = order[k];
+                        if (seenStamp[bench] != stamp
+                                && GeoMath.distanceToSegment(xs[bench], ys[bench], prevX, prevY, x, y) <= maxDistance) {
+                            seenStamp[bench] = stamp;
+                            found++;
+                        }
+                    }
+                }
+            }
+            prevX = x;
+            prevY = y;
+        }
+        return found;
+    }
+
+    private double projectX(double lon) {
+        return lon * GeoMath.METERS_PER_DEGREE * cosLat;
+    }
+
+    private double projectY(double lat) {
+        return lat * GeoMath.METERS_PER_DEGREE;
+    }
+
+    private int cell(double meters) {
+        return (int) Math.floor(meters / cellSize);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,120 @@
+package com.amilcarf.draft_hike.geo;
+
+import com.amilcarf.draft_hike.models.OSMWay;
+
+/**
+ * Distance math shared by trail length, bench matching and ranking.
+ *
+ * The fast path is an equirectangular projection that scales longitude by the cosine of
+ * one reference latitude per trail, so each segment costs a few multiplications and a
+ * sqrt instead of the trig calls of haversine. Against {@link #haversine} the relative
+ * error is at most about tan(|lat|) * dLat, where dLat is how far (in radians) the points
+ * are from the reference latitude, plus a d^2/R^2 curvature term that is negligible for
+ * trail-sized segments. In practice, for points within 0.05 degrees (about 5.5 km) of the
+ * reference: under 0.05% at 30 degrees, 0.09% at 45 degrees and 0.15% at 60 degrees.
+ * Way helpers read coordinates straight from the way's NodeStore, without node objects.
+ */
+public final class GeoMath {
+
+    public static final double EARTH_RADIUS = 6371000; // meters
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180.0;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Great-circle distance in meters. Exact reference for the fast path.
+     */
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return EARTH_RADIUS * c;
+    }
+
+    public static double cosLatitude(double latitude) {
+        return Math.cos(Math.toRadians(latitude));
+    }
+
+    /**
+     * Equirectangular distance in meters, with cosLat taken from a nearby reference latitude.
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2, double cosLat) {
+        double dy = (lat2 - lat1) * METERS_PER_DEGREE;
+        double dx = (lon2 - lon1) * METERS_PER_DEGREE * cosLat;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Planar distance from point p to segment a-b, in the units of the arguments.
+     */
+    public static double distanceToSegment(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSq : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    /**
+     * Cosine of the middle of the way's latitude range, the reference for its fast-path math.
+     */
+    public static double referenceCos(OSMWay way) {
+        int count = way.getNodeCount();
+        if (count == 0) {
+            return 1;
+        }
+        double min = way.getLatitude(0);
+        double max = min;
+        for (int i = 1; i < count; i++) {
+            double lat = way.getLatitude(i);
+            min = Math.min(min, lat);
+            max = Math.max(max, lat);
+        }
+        return cosLatitude((min + max) / 2);
+    }
+
+    /**
+     * Length of a way in meters, using the fast path with the way's reference latitude.
+     */
+    public static double wayLength(OSMWay way) {
+        int count = way.getNodeCount();
+        if (count < 2) {
+            return 0;
+        }
+        double cosLat = referenceCos(way);
+        double xScale = METERS_PER_DEGREE * cosLat;
+        double total = 0;
+        double prevLat = way.getLatitude(0);
+        double prevLon = way.getLongitude(0);
+        for (int i = 1; i < count; i++) {
+            double lat = way.getLatitude(i);
+            double lon = way.getLongitude(i);
+            double dy = (lat - prevLat) * METERS_PER_DEGREE;
+            double dx = (lon - prevLon) * xScale;
+            total += Math.sqrt(dx * dx + dy * dy);
+            prevLat = lat;
+            prevLon = lon;
+        }
+        return total;
+    }
+
+    /**
+     * Distance in meters from a point to the closest node of a way, or infinity for a way
+     * without nodes. Used to order trails by how far the user has to walk to reach them.
+     */
+    public static double distanceToNearestNode(OSMWay way, double lat, double lon) {
+        double cosLat = cosLatitude(lat);
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < way.getNodeCount(); i++) {
+            nearest = Math.min(nearest, distance(lat, lon, way.getLatitude(i), way.getLongitude(i), cosLat));
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,120 @@
+package com.amilcarf.draft_hike.map;
+
+import android.content.Context;
+import android.util.DisplayMetrics;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.maps.android.clustering.ClusterManager;
+import com.google.maps.android.clustering.algo.NonHierarchicalViewBasedAlgorithm;
+import com.google.maps.android.clustering.view.DefaultClusterRenderer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clustered bench markers on a GoogleMap.
+ *
+ * Clustering runs on the cluster manager's background executor and only covers the
+ * visible part of the map; the owner forwards camera idle events through
+ * {@link #onCameraIdle()} so it can share the listener with viewport loading. Updates are diffed by
+ * bench id: benches that are still shown and look the same keep their markers, and only
+ * added, removed or changed benches reach the cluster manager. Use from the main thread.
+ */
+public class BenchClusterLayer {
+
+    private final ClusterManager<BenchItem> clusterManager;
+    private final Map<Long, BenchItem> shown = new HashMap<>();
+
+    public BenchClusterLayer(Context context, GoogleMap map) {
+        clusterManager = new ClusterManager<>(context, map);
+
+        // The view based algorithm takes the map size in dp
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        clusterManager.setAlgorithm(new NonHierarchicalViewBasedAlgorithm<BenchItem>(
+                (int) (metrics.widthPixels / metrics.density),
+                (int) (metrics.heightPixels / metrics.density)));
+        clusterManager.setRenderer(new BenchRenderer(context, map, clusterManager));
+        // Animating every split and merge is what makes panning stutter with many benches
+        clusterManager.setAnimation(false);
+
+        map.setOnMarkerClickListener(clusterManager);
+    }
+
+    /**
+     * Shows exactly the given benches. Returns false when nothing changed, in which case
+     * the map is not touched at all.
+     */
+    public boolean setBenches(Collection<BenchItem> benches) {
+        Map<Long, BenchItem> next = new HashMap<>(benches.size() * 2);
+        for (BenchItem bench : benches) {
+            next.put(bench.getId(), bench);
+        }
+
+        List<BenchItem> removed = new ArrayList<>();
+        for (Iterator<BenchItem> it = shown.values().iterator(); it.hasNext(); ) {
+            BenchItem current = it.next();
+            BenchItem replacement = next.get(current.getId());
+            if (replacement == null || replacement.looksDifferentFrom(current)) {
+                removed.add(current);
+                it.remove();
+            }
+        }
+        List<BenchItem> added = new ArrayList<>();
+        for (BenchItem bench : next.values()) {
+            if (!shown.containsKey(bench.getId())) {
+                added.add(bench);
+                shown.put(bench.getId(), bench);
+            }
+        }
+
+        if (removed.isEmpty() && added.isEmpty()) {
+            return false;
+        }
+        clusterManager.removeItems(removed);
+        clusterManager.addItems(added);
+        clusterManager.cluster();
+        return true;
+    }
+
+    /**
+     * Re-clusters for the new visible region. Call from the map's camera idle listener.
+     */
+    public void onCameraIdle() {
+        clusterManager.onCameraIdle();
+    }
+
+    public int size() {
+        return shown.size();
+    }
+
+    public void clear() {
+        shown.clear();
+        clusterManager.clearItems();
+        clusterManager.cluster();
+    }
+
+    private static class BenchRenderer extends DefaultClusterRenderer<BenchItem> {
+        private final BitmapDescriptor benchIcon =
+                BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN);
+
+        BenchRenderer(Context context, GoogleMap map, ClusterManager<BenchItem> clusterManager) {
+            super(context, map, clusterManager);
+        }
+
+        @Override
+        protected void onBeforeClusterItemRendered(@NonNull BenchItem item, @NonNull MarkerOptions markerOptions) {
+            // The default sets the title and snippet
+            super.onBeforeClusterItemRendered(item, markerOptions);
+            markerOptions.icon(benchIcon);
+        }
+    }
+}
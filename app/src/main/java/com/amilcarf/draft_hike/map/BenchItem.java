@@ -0,0 +1,84 @@
+package com.amilcarf.draft_hike.map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.clustering.ClusterItem;
+
+/**
+ * A bench on the map. Items are equal when they are the same OSM node, which lets the
+ * cluster renderer keep an existing marker when a refresh returns the same bench again.
+ */
+public class BenchItem implements ClusterItem {
+
+    private final long id;
+    private final LatLng position;
+    private final String name;
+
+    public BenchItem(long id, double latitude, double longitude, String name) {
+        this.id = id;
+        this.position = new LatLng(latitude, longitude);
+        this.name = name;
+    }
+
+    /**
+     * Builds the map item for a bench node, named after its name tag when it has one.
+     */
+    public static BenchItem fromNode(OSMNode node) {
+        String benchName = "Bench";
+        // Check if bench has additional information
+        String name = node.getTag("name");
+        if (name != null && !name.isEmpty()) {
+            benchName = name;
+        } else if ("yes".equals(node.getTag("backrest"))) {
+            benchName = "Bench (with backrest)";
+        }
+        return new BenchItem(node.getId(), node.getLatitude(), node.getLongitude(), benchName);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @NonNull
+    @Override
+    public LatLng getPosition() {
+        return position;
+    }
+
+    @Nullable
+    @Override
+    public String getTitle() {
+        return "Bench";
+    }
+
+    @Nullable
+    @Override
+    public String getSnippet() {
+        return name;
+    }
+
+    @Nullable
+    public Float getZIndex() {
+        return null;
+    }
+
+    /**
+     * True when the bench would be drawn differently, so its marker must be replaced.
+     */
+    boolean looksDifferentFrom(BenchItem other) {
+        return !position.equals(other.position) || !name.equals(other.name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BenchItem && ((BenchItem) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+}
@@ -0,0 +1,274 @@
+package com.amilcarf.draft_hike.map;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.osm.CancellationToken;
+import com.amilcarf.draft_hike.tiles.Tile;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads benches tile by tile for whatever part of the map is visible.
+ *
+ * Each viewport update is diffed against the tiles already loaded or being loaded, and
+ * only the missing tiles are requested, nearest to the center first, in small groups with
+ * at most maxConcurrent requests running. Requests that no longer cover any visible tile
+ * are cancelled and queued ones are dropped, so rapid panning never builds up a backlog.
+ * Loaded tiles more than keepRing tiles outside the viewport are evicted.
+ *
+ * All methods must be called on the delivery executor's thread (the main thread in the
+ * app); tile sources run on the fetch executor.
+ */
+public class ViewportLoader {
+
+    /**
+     * Loads the benches of a group of tiles. Called on the fetch executor.
+     */
+    public interface TileSource {
+        Map<Tile, List<OSMNode>> load(List<Tile> tiles, CancellationToken token) throws IOException;
+    }
+
+    public interface Listener {
+        /**
+         * Every bench of the loaded tiles around the viewport, after each change.
+         */
+        void onBenches(List<OSMNode> benches);
+
+        /**
+         * The viewport grew beyond maxViewportTiles tiles, so nothing is loaded for it until
+         * the map is zoomed back in.
+         */
+        void onViewportTooLarge();
+
+        void onLoadFailed(IOException e);
+    }
+
+    // Tiles per Overpass request; neighbouring tiles of a row merge into one bbox
+    private static final int TILES_PER_REQUEST = 4;
+
+    private final TileSource source;
+    private final Executor fetchExecutor;
+    private final Executor delivery;
+    private final Listener listener;
+    private final int zoom;
+    private final int maxConcurrent;
+    private final int maxViewportTiles;
+    private final int keepRing;
+
+    private final Map<Tile, List<OSMNode>> loaded = new LinkedHashMap<>();
+    private final Map<Tile, Request> inFlight = new HashMap<>();
+    private final List<Request> running = new ArrayList<>();
+    private final ArrayDeque<List<Tile>> queue = new ArrayDeque<>();
+    // Empty until the first usable viewport and while zoomed out too far
+    private Set<Tile> visible = Collections.emptySet();
+    private int minX, maxX, minY, maxY;
+    private boolean tooLarge;
+    private boolean disposed;
+
+    public ViewportLoader(TileSource source, Executor fetchExecutor, Executor delivery, Listener listener,
+                          int zoom, int maxConcurrent, int maxViewportTiles, int keepRing) {
+        this.source = source;
+        this.fetchExecutor = fetchExecutor;
+        this.delivery = delivery;
+        this.listener = listener;
+        this.zoom = zoom;
+        this.maxConcurrent = maxConcurrent;
+        this.maxViewportTiles = maxViewportTiles;
+        this.keepRing = keepRing;
+    }
+
+    /**
+     * Call when the camera settles, with the visible bounds.
+     */
+    public void onViewportChanged(double south, double west, double north, double east) {
+        if (disposed) {
+            return;
+        }
+        List<Tile> tiles = Tile.covering(south, west, north, east, zoom);
+        queue.clear();
+        if (tiles.isEmpty() || tiles.size() > maxViewportTiles) {
+            visible = Collections.emptySet();
+            cancelRunning();
+            if (!tooLarge) {
+                tooLarge = true;
+                listener.onViewportTooLarge();
+            }
+            return;
+        }
+        tooLarge = false;
+
+        visible = new HashSet<>(tiles);
+        minX = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxY = Integer.MIN_VALUE;
+        for (Tile tile : tiles) {
+            minX = Math.min(minX, tile.getX());
+            maxX = Math.max(maxX, tile.getX());
+            minY = Math.min(minY, tile.getY());
+            maxY = Math.max(maxY, tile.getY());
+        }
+
+        boolean evicted = false;
+        for (Iterator<Tile> it = loaded.keySet().iterator(); it.hasNext(); ) {
+            if (!isKept(it.next())) {
+                it.remove();
+                evicted = true;
+            }
+        }
+        cancelRunning();
+
+        // Nearest the center first, as the user is most likely looking there
+        final double centerX = (minX + maxX) / 2.0;
+        final double centerY = (minY + maxY) / 2.0;
+        List<Tile> missing = new ArrayList<>();
+        for (Tile tile : tiles) {
+            if (!loaded.containsKey(tile) && !inFlight.containsKey(tile)) {
+                missing.add(tile);
+            }
+        }
+        Collections.sort(missing, (a, b) -> Double.compare(
+                squaredDistance(a, centerX, centerY), squaredDistance(b, centerX, centerY)));
+        for (int i = 0; i < missing.size(); i += TILES_PER_REQUEST) {
+            queue.add(new ArrayList<>(missing.subList(i, Math.min(missing.size(), i + TILES_PER_REQUEST))));
+        }
+
+        startQueued();
+        if (evicted) {
+            publish();
+        }
+    }
+
+    /**
+     * Cancels everything; later calls do nothing.
+     */
+    public void dispose() {
+        disposed = true;
+        queue.clear();
+        for (Request request : running) {
+            request.token.cancel();
+        }
+    }
+
+    public int getLoadedTileCount() {
+        return loaded.size();
+    }
+
+    public int getRunningRequestCount() {
+        return running.size();
+    }
+
+    public int getQueuedRequestCount() {
+        return queue.size();
+    }
+
+    // Cancels running requests that cover no visible tile any more
+    private void cancelRunning() {
+        for (Request request : running) {
+            if (request.token.isCancelled()) {
+                continue;
+            }
+            boolean stillNeeded = false;
+            for (Tile tile : request.tiles) {
+                stillNeeded |= visible.contains(tile);
+            }
+            if (!stillNeeded) {
+                request.token.cancel();
+                for (Tile tile : request.tiles) {
+                    inFlight.remove(tile);
+                }
+            }
+        }
+    }
+
+    private void startQueued() {
+        while (running.size() < maxConcurrent && !queue.isEmpty()) {
+            final Request request = new Request(queue.poll());
+            running.add(request);
+            for (Tile tile : request.tiles) {
+                inFlight.put(tile, request);
+            }
+            fetchExecutor.execute(() -> {
+                try {
+                    final Map<Tile, List<OSMNode>> result = source.load(request.tiles, request.token);
+                    delivery.execute(() -> onFinished(request, result, null));
+                } catch (final IOException e) {
+                    delivery.execute(() -> onFinished(request, null, e));
+                } catch (RuntimeException e) {
+                    // Still finished, or its tiles would stay in flight and never be asked for again
+                    final IOException error = new IOException("Loading tiles failed", e);
+                    delivery.execute(() -> onFinished(request, null, error));
+                }
+            });
+        }
+    }
+
+    private void onFinished(Request request, Map<Tile, List<OSMNode>> result, IOException error) {
+        running.remove(request);
+        for (Tile tile : request.tiles) {
+            if (inFlight.get(tile) == request) {
+                inFlight.remove(tile);
+            }
+        }
+        if (disposed) {
+            return;
+        }
+
+        if (!request.token.isCancelled()) {
+            if (result != null) {
+                boolean added = false;
+                for (Map.Entry<Tile, List<OSMNode>> entry : result.entrySet()) {
+                    if (isKept(entry.getKey())) {
+                        loaded.put(entry.getKey(), entry.getValue());
+                        added = true;
+                    }
+                }
+                if (added) {
+                    publish();
+                }
+            } else {
+                listener.onLoadFailed(error);
+            }
+        }
+        startQueued();
+    }
+
+    private void publish() {
+        List<OSMNode> benches = new ArrayList<>();
+        for (List<OSMNode> tileBenches : loaded.values()) {
+            benches.addAll(tileBenches);
+        }
+        listener.onBenches(benches);
+    }
+
+    private boolean isKept(Tile tile) {
+        return !visible.isEmpty()
+                && tile.getX() >= minX - keepRing && tile.getX() <= maxX + keepRing
+                && tile.getY() >= minY - keepRing && tile.getY() <= maxY + keepRing;
+    }
+
+    private static double squaredDistance(Tile tile, double x, double y) {
+        double dx = tile.getX() - x;
+        double dy = tile.getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static final class Request {
+        final List<Tile> tiles;
+        final CancellationToken token = new CancellationToken();
+
+        Request(List<Tile> tiles) {
+            this.tiles = tiles;
+        }
+    }
+}
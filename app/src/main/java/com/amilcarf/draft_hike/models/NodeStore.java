@@ -0,0 +1,142 @@
+package com.amilcarf.draft_hike.models;
+
+import com.amilcarf.draft_hike.util.LongIntHashMap;
+
+/**
+ * Columnar storage for the nodes of an Overpass response.
+ *
+ * Coordinates are packed as E7 fixed-point ints (about 1 cm of precision) in parallel
+ * arrays and looked up through a primitive id index, so a response with 100k nodes costs
+ * a handful of arrays instead of 100k OSMNode objects, boxed ids and empty tag maps.
+ * Ways refer to nodes by their index in the store.
+ *
+ * A store can also wrap the packed geometry of a single way ({@link #wrap}); its id index
+ * is then only built if something looks a node up.
+ */
+public class NodeStore {
+
+    private static final double E7 = 1e7;
+
+    private long[] ids;
+    private int[] latE7;
+    private int[] lonE7;
+    private int size;
+    private LongIntHashMap indexById;
+
+    public NodeStore() {
+        this(64);
+    }
+
+    public NodeStore(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        ids = new long[capacity];
+        latE7 = new int[capacity];
+        lonE7 = new int[capacity];
+        indexById = new LongIntHashMap(capacity);
+    }
+
+    private NodeStore(long[] ids, int[] latE7, int[] lonE7, int size) {
+        this.ids = ids;
+        this.latE7 = latE7;
+        this.lonE7 = lonE7;
+        this.size = size;
+    }
+
+    /**
+     * Wraps already packed E7 coordinates without copying them. The arrays must hold at
+     * least size entries and must not be changed afterwards; ids may repeat.
+     */
+    public static NodeStore wrap(long[] ids, int[] latE7, int[] lonE7, int size) {
+        return new NodeStore(ids, latE7, lonE7, size);
+    }
+
+    /**
+     * Adds a node and returns its index. A node id that is already stored keeps its
+     * original index and coordinates.
+     */
+    public int add(long id, double latitude, double longitude) {
+        ensureIndex();
+        int existing = indexById.get(id);
+        if (existing != LongIntHashMap.NOT_FOUND) {
+            return existing;
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        int index = size++;
+        ids[index] = id;
+        latE7[index] = toE7(latitude);
+        lonE7[index] = toE7(longitude);
+        indexById.put(id, index);
+        return index;
+    }
+
+    /**
+     * Returns the index of a node, or -1 when the store does not contain it.
+     */
+    public int indexOf(long id) {
+        ensureIndex();
+        return indexById.get(id);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public int getLatitudeE7(int index) {
+        return latE7[index];
+    }
+
+    public int getLongitudeE7(int index) {
+        return lonE7[index];
+    }
+
+    public double getLatitude(int index) {
+        return latE7[index] / E7;
+    }
+
+    public double getLongitude(int index) {
+        return lonE7[index] / E7;
+    }
+
+    /**
+     * Creates a standalone OSMNode for callers that still work with node objects.
+     */
+    public OSMNode getNode(int index) {
+        return new OSMNode(ids[index], getLatitude(index), getLongitude(index));
+    }
+
+    public static int toE7(double degrees) {
+        return (int) Math.round(degrees * E7);
+    }
+
+    private void ensureIndex() {
+        if (indexById != null) {
+            return;
+        }
+        indexById = new LongIntHashMap(Math.max(size, 4));
+        for (int i = 0; i < size; i++) {
+            // The first occurrence of a repeated id wins, as with add()
+            if (indexById.get(ids[i]) == LongIntHashMap.NOT_FOUND) {
+                indexById.put(ids[i], i);
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = Math.max(ids.length + (ids.length >> 1) + 1, 4);
+        long[] newIds = new long[capacity];
+        int[] newLat = new int[capacity];
+        int[] newLon = new int[capacity];
+        System.arraycopy(ids, 0, newIds, 0, size);
+        System.arraycopy(latE7, 0, newLat, 0, size);
+        System.arraycopy(lonE7, 0, newLon, 0, size);
+        ids = newIds;
+        latE7 = newLat;
+        lonE7 = newLon;
+    }
+}
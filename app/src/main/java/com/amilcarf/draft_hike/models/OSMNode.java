@@ -1,5 +1,6 @@
 package com.amilcarf.draft_hike.models;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,7 +14,6 @@ public class OSMNode {
         this.id = id;
         this.latitude = latitude;
         this.longitude = longitude;
-        this.tags = new HashMap<>();
     }
 
     public long getId() {
@@ -29,14 +29,18 @@ public class OSMNode {
     }
 
     public Map<String, String> getTags() {
-        return tags;
+        return tags != null ? tags : Collections.<String, String>emptyMap();
     }
 
     public String getTag(String key) {
-        return tags.get(key);
+        return tags != null ? tags.get(key) : null;
     }
 
+    // Tag map is created on first use; skeleton nodes never carry tags
     public void addTag(String key, String value) {
+        if (tags == null) {
+            tags = new HashMap<>();
+        }
         tags.put(key, value);
     }
 }
\ No newline at end of file
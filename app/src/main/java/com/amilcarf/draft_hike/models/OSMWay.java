@@ -1,31 +1,109 @@
 package com.amilcarf.draft_hike.models;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class OSMWay {
     private long id;
-    private List<OSMNode> nodes;
+    private NodeStore nodeStore;
+    // Null when the way owns its store and node i is simply store index i
+    private int[] nodeIndices;
+    private int nodeCount;
     private Map<String, String> tags;
 
     public OSMWay(long id) {
+        this(id, null);
+    }
+
+    // Ways parsed from the same response share one store and keep only node indices
+    public OSMWay(long id, NodeStore nodeStore) {
+        this(id, nodeStore, new int[8]);
+    }
+
+    private OSMWay(long id, NodeStore nodeStore, int[] nodeIndices) {
         this.id = id;
-        this.nodes = new ArrayList<>();
+        this.nodeStore = nodeStore;
+        this.nodeIndices = nodeIndices;
         this.tags = new HashMap<>();
     }
 
+    /**
+     * Creates a way whose nodes are exactly the nodes of the given store, in order, as
+     * parsed from inline ("out geom") geometry. No index array is kept.
+     */
+    public static OSMWay withGeometry(long id, NodeStore geometry) {
+        OSMWay way = new OSMWay(id, geometry, null);
+        way.nodeCount = geometry.size();
+        return way;
+    }
+
     public long getId() {
         return id;
     }
 
+    /**
+     * Read-only view of the way's nodes. Each call to get() creates a small OSMNode, so
+     * hot loops should prefer getNodeCount() with getLatitude(i)/getLongitude(i).
+     */
     public List<OSMNode> getNodes() {
-        return nodes;
+        return new AbstractList<OSMNode>() {
+            @Override
+            public OSMNode get(int index) {
+                if (index < 0 || index >= nodeCount) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + nodeCount);
+                }
+                return nodeStore.getNode(getNodeIndex(index));
+            }
+
+            @Override
+            public int size() {
+                return nodeCount;
+            }
+        };
     }
 
     public void addNode(OSMNode node) {
-        nodes.add(node);
+        if (nodeStore == null) {
+            nodeStore = new NodeStore(8);
+        }
+        addNodeIndex(nodeStore.add(node.getId(), node.getLatitude(), node.getLongitude()));
+    }
+
+    public void addNodeIndex(int index) {
+        if (nodeIndices == null) {
+            nodeIndices = new int[Math.max(8, nodeCount * 2)];
+            for (int i = 0; i < nodeCount; i++) {
+                nodeIndices[i] = i;
+            }
+        }
+        if (nodeCount == nodeIndices.length) {
+            int[] grown = new int[nodeCount * 2];
+            System.arraycopy(nodeIndices, 0, grown, 0, nodeCount);
+            nodeIndices = grown;
+        }
+        nodeIndices[nodeCount++] = index;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public NodeStore getNodeStore() {
+        return nodeStore;
+    }
+
+    public int getNodeIndex(int position) {
+        return nodeIndices != null ? nodeIndices[position] : position;
+    }
+
+    public double getLatitude(int position) {
+        return nodeStore.getLatitude(getNodeIndex(position));
+    }
+
+    public double getLongitude(int position) {
+        return nodeStore.getLongitude(getNodeIndex(position));
     }
 
     public Map<String, String> getTags() {
@@ -39,4 +117,4 @@ public class OSMWay {
     public void addTag(String key, String value) {
         tags.put(key, value);
     }
-}
\ No newline at end of file
+}
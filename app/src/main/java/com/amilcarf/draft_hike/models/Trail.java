@@ -1,5 +1,7 @@
 package com.amilcarf.draft_hike.models;
 
+import java.util.Objects;
+
 public class Trail {
     private String id;
     private String name;
@@ -10,6 +12,8 @@ public class Trail {
     private String status;
     private String description;
     private boolean isFavorite;
+    // Meters from the user to the nearest point of the trail; not persisted
+    private double distanceFromUser = Double.NaN;
 
     // Default constructor (required for Firebase/Firestore) ----Further reading rquired
     public Trail() {
@@ -29,6 +33,25 @@ public class Trail {
         this.isFavorite = isFavorite;
     }
 
+    // Copy, for changing a trail that is already shown in a list
+    public Trail(Trail other) {
+        this(other.id, other.name, other.distance, other.duration, other.benchCount,
+                other.difficulty, other.status, other.description, other.isFavorite);
+        this.distanceFromUser = other.distanceFromUser;
+    }
+
+    // True when everything shown for the trail except the favorite flag is equal
+    public boolean hasSameDetails(Trail other) {
+        return Objects.equals(id, other.id)
+                && Objects.equals(name, other.name)
+                && Double.compare(distance, other.distance) == 0
+                && Objects.equals(duration, other.duration)
+                && benchCount == other.benchCount
+                && Objects.equals(difficulty, other.difficulty)
+                && Objects.equals(status, other.status)
+                && Objects.equals(description, other.description);
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -101,4 +124,12 @@ public class Trail {
     public void setFavorite(boolean favorite) {
         isFavorite = favorite;
     }
-}
\ No newline at end of file
+
+    public double getDistanceFromUser() {
+        return distanceFromUser;
+    }
+
+    public void setDistanceFromUser(double distanceFromUser) {
+        this.distanceFromUser = distanceFromUser;
+    }
+}
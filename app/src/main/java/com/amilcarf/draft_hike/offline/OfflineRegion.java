@@ -0,0 +1,60 @@
+package com.amilcarf.draft_hike.offline;
+
+import com.amilcarf.draft_hike.geo.GeoMath;
+import com.amilcarf.draft_hike.tiles.Tile;
+
+import java.util.List;
+
+/**
+ * A bounding box to make available offline.
+ */
+public final class OfflineRegion {
+
+    private final double south;
+    private final double west;
+    private final double north;
+    private final double east;
+
+    public OfflineRegion(double south, double west, double north, double east) {
+        if (south > north || west > east) {
+            throw new IllegalArgumentException("Empty region " + south + "," + west + "," + north + "," + east);
+        }
+        this.south = south;
+        this.west = west;
+        this.north = north;
+        this.east = east;
+    }
+
+    /**
+     * The square region enclosing a circle, e.g. everything within a day's hike of a point.
+     */
+    public static OfflineRegion around(double lat, double lon, double radiusMeters) {
+        double dLat = radiusMeters / GeoMath.METERS_PER_DEGREE;
+        double dLon = radiusMeters / (GeoMath.METERS_PER_DEGREE * GeoMath.cosLatitude(lat));
+        return new OfflineRegion(Math.max(-85, lat - dLat), Math.max(-180, lon - dLon),
+                Math.min(85, lat + dLat), Math.min(180, lon + dLon));
+    }
+
+    /**
+     * The tiles to download, row by row from north-west.
+     */
+    public List<Tile> tiles(int zoom) {
+        return Tile.covering(south, west, north, east, zoom);
+    }
+
+    public double getSouth() {
+        return south;
+    }
+
+    public double getWest() {
+        return west;
+    }
+
+    public double getNorth() {
+        return north;
+    }
+
+    public double getEast() {
+        return east;
+    }
+}
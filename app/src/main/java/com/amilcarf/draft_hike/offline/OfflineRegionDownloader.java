@@ -0,0 +1,256 @@
+package com.amilcarf.draft_hike.offline;
+
+import com.amilcarf.draft_hike.osm.CancellationToken;
+import com.amilcarf.draft_hike.tiles.OfflineTileStore;
+import com.amilcarf.draft_hike.tiles.Tile;
+import com.amilcarf.draft_hike.tiles.TileData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+
+/**
+ * Downloads the tiles of a region into offline tile stores.
+ *
+ * Each layer (e.g. trails, benches) has its own source and store. Tiles a store already
+ * holds are skipped, so running the same download again resumes it where it stopped. The
+ * rest are fetched in groups of tilesPerRequest neighbouring tiles, with at most
+ * maxConcurrent groups in flight, and each group is retried a few times before it counts
+ * as failed. Every tile is written to its store as soon as its group arrives.
+ */
+public class OfflineRegionDownloader {
+
+    /**
+     * Fetches one group of tiles of a layer. Called on the download executor.
+     */
+    public interface TileSource {
+        Map<Tile, TileData> fetch(List<Tile> tiles, CancellationToken token) throws IOException;
+    }
+
+    /**
+     * Called on the thread running {@link #download} after every finished group.
+     */
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    public static final class Layer {
+        final OfflineTileStore store;
+        final TileSource source;
+
+        public Layer(OfflineTileStore store, TileSource source) {
+            this.store = store;
+            this.source = source;
+        }
+    }
+
+    public static final class Progress {
+        private final int tilesTotal;
+        private final int tilesStored;
+        private final int tilesSkipped;
+        private final int tilesFailed;
+        private final long bytes;
+
+        Progress(int tilesTotal, int tilesStored, int tilesSkipped, int tilesFailed, long bytes) {
+            this.tilesTotal = tilesTotal;
+            this.tilesStored = tilesStored;
+            this.tilesSkipped = tilesSkipped;
+            this.tilesFailed = tilesFailed;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Tiles of all layers together.
+         */
+        public int getTilesTotal() {
+            return tilesTotal;
+        }
+
+        /**
+         * Tiles downloaded by this run.
+         */
+        public int getTilesStored() {
+            return tilesStored;
+        }
+
+        /**
+         * Tiles already stored by an earlier run.
+         */
+        public int getTilesSkipped() {
+            return tilesSkipped;
+        }
+
+        public int getTilesFailed() {
+            return tilesFailed;
+        }
+
+        /**
+         * Bytes written to the stores by this run.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getFraction() {
+            return tilesTotal == 0 ? 1 : (tilesStored + tilesSkipped + tilesFailed) / (double) tilesTotal;
+        }
+
+        /**
+         * Whether every tile of the region is now stored.
+         */
+        public boolean isComplete() {
+            return tilesStored + tilesSkipped == tilesTotal;
+        }
+    }
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY = 2000; // ms, doubled per attempt
+
+    private final Executor executor;
+    private final int maxConcurrent;
+    private final int tilesPerRequest;
+    private final long retryDelayMillis;
+
+    public OfflineRegionDownloader(Executor executor, int maxConcurrent, int tilesPerRequest) {
+        this(executor, maxConcurrent, tilesPerRequest, RETRY_DELAY);
+    }
+
+    OfflineRegionDownloader(Executor executor, int maxConcurrent, int tilesPerRequest, long retryDelayMillis) {
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+        this.tilesPerRequest = tilesPerRequest;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Downloads every layer of the given tiles and blocks until done. Groups that still fail
+     * after retrying are counted in the result rather than aborting the download; run it
+     * again to fetch them. Throws when the token cancels the download.
+     */
+    public Progress download(List<Tile> tiles, List<Layer> layers, ProgressListener listener,
+                             CancellationToken token) throws IOException {
+        int total = tiles.size() * layers.size();
+        int skipped = 0;
+        List<Group> groups = new ArrayList<>();
+        for (Layer layer : layers) {
+            List<Tile> missing = new ArrayList<>();
+            for (Tile tile : tiles) {
+                if (layer.store.contains(tile)) {
+                    skipped++;
+                } else {
+                    missing.add(tile);
+                }
+            }
+            // Consecutive tiles of a row share one bbox in the query
+            for (int i = 0; i < missing.size(); i += tilesPerRequest) {
+                groups.add(new Group(layer, new ArrayList<>(
+                        missing.subList(i, Math.min(missing.size(), i + tilesPerRequest))), token));
+            }
+        }
+
+        int stored = 0;
+        int failed = 0;
+        long bytes = 0;
+        Progress progress = new Progress(total, stored, skipped, failed, bytes);
+        listener.onProgress(progress);
+
+        CompletionService<Group> completion = new ExecutorCompletionService<>(executor);
+        int next = 0;
+        int running = 0;
+        while (next < groups.size() || running > 0) {
+            while (running < maxConcurrent && next < groups.size() && !token.isCancelled()) {
+                completion.submit(groups.get(next++));
+                running++;
+            }
+            if (running == 0) {
+                break;
+            }
+
+            Group group;
+            try {
+                group = completion.take().get();
+            } catch (InterruptedException e) {
+                token.cancel();
+                Thread.currentThread().interrupt();
+                throw new IOException("Download interrupted", e);
+            } catch (ExecutionException e) {
+                // Groups catch their own failures; anything else is a bug
+                throw new IllegalStateException(e.getCause());
+            }
+            running--;
+
+            stored += group.stored;
+            failed += group.tiles.size() - group.stored;
+            bytes += group.bytes;
+            progress = new Progress(total, stored, skipped, failed, bytes);
+            listener.onProgress(progress);
+        }
+
+        if (token.isCancelled()) {
+            throw new IOException("Download canceled");
+        }
+        return progress;
+    }
+
+    private final class Group implements Callable<Group> {
+        final Layer layer;
+        final List<Tile> tiles;
+        final CancellationToken token;
+        int stored;
+        long bytes;
+
+        Group(Layer layer, List<Tile> tiles, CancellationToken token) {
+            this.layer = layer;
+            this.tiles = tiles;
+            this.token = token;
+        }
+
+        @Override
+        public Group call() {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS && !token.isCancelled(); attempt++) {
+                if (attempt > 0 && !sleep(retryDelayMillis << (attempt - 1))) {
+                    return this;
+                }
+                // A retry stores the whole group again, replacing what a failed attempt wrote
+                stored = 0;
+                bytes = 0;
+                try {
+                    Map<Tile, TileData> data = layer.source.fetch(tiles, token);
+                    for (Tile tile : tiles) {
+                        TileData tileData = data.get(tile);
+                        if (tileData != null) {
+                            bytes += layer.store.put(tile, tileData);
+                            stored++;
+                        }
+                    }
+                    return this;
+                } catch (IOException e) {
+                    stored = 0;
+                    bytes = 0;
+                } catch (RuntimeException e) {
+                    // E.g. a response that does not parse; asking again would not help
+                    stored = 0;
+                    bytes = 0;
+                    return this;
+                }
+            }
+            return this;
+        }
+
+        private boolean sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+                return !token.isCancelled();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
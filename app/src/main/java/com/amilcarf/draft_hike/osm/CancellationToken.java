@@ -0,0 +1,55 @@
+package com.amilcarf.draft_hike.osm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets the owner of one fetch abort it from another thread, for work that has been
+ * superseded. Unlike {@link OSMDataFetcher#cancel}, it only affects the calls it is passed to.
+ * One token may be shared by several calls running at once.
+ */
+public final class CancellationToken {
+
+    private boolean cancelled;
+    private final List<Runnable> onCancel = new ArrayList<>();
+
+    public void cancel() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            actions = new ArrayList<>(onCancel);
+            onCancel.clear();
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Adds something cancel() should abort, e.g. a call in flight. Runs the action right away
+     * if the token is already cancelled.
+     */
+    public void addOnCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                onCancel.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Removes an action added with addOnCancel, once there is nothing left for it to abort.
+     */
+    public synchronized void removeOnCancel(Runnable action) {
+        onCancel.remove(action);
+    }
+}
@@ -0,0 +1,18 @@
+package com.amilcarf.draft_hike.osm;
+
+/**
+ * How trail geometry is requested from Overpass. Both modes produce the same ways.
+ */
+public enum IngestMode {
+    /**
+     * "out body; &gt;; out skel qt;": ways list node ids and every node follows as its own
+     * element, joined back to the ways by id while parsing.
+     */
+    NODE_RECURSION,
+
+    /**
+     * "out body geom;": each way carries its coordinates inline. The response is smaller
+     * and the parser needs no node map.
+     */
+    INLINE_GEOMETRY
+}
@@ -0,0 +1,129 @@
+package com.amilcarf.draft_hike.osm;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The original org.json DOM parsers, superseded by {@link OverpassParser}.
+ *
+ * Kept as the reference the streaming parser is checked against in tests and as the
+ * baseline in the benchmark module.
+ */
+final class LegacyOverpassParser {
+
+    private LegacyOverpassParser() {
+    }
+
+    static List<OSMWay> parseWaysFromJson(String jsonResponse, int maxWays) throws JSONException {
+        List<OSMWay> ways = new ArrayList<>();
+        Map<Long, OSMNode> nodeMap = new HashMap<>();
+
+        JSONObject json = new JSONObject(jsonResponse);
+        JSONArray elements = json.getJSONArray("elements");
+
+        // First pass!!!: collect only nodes that belong to ways
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject element = elements.getJSONObject(i);
+            if ("node".equals(element.getString("type"))) {
+                long id = element.getLong("id");
+                double lat = element.getDouble("lat");
+                double lon = element.getDouble("lon");
+
+                OSMNode node = new OSMNode(id, lat, lon);
+                nodeMap.put(id, node);
+            }
+        }
+
+        // Second pass!: process ways
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject element = elements.getJSONObject(i);
+            if ("way".equals(element.getString("type"))) {
+                long id = element.getLong("id");
+                OSMWay way = new OSMWay(id);
+
+                // Get nodes for this way
+                JSONArray nodesArray = element.getJSONArray("nodes");
+                List<OSMNode> wayNodes = new ArrayList<>();
+
+                for (int j = 0; j < nodesArray.length(); j++) {
+                    long nodeId = nodesArray.getLong(j);
+                    OSMNode node = nodeMap.get(nodeId);
+                    if (node != null) {
+                        wayNodes.add(node);
+                    }
+                }
+
+                // Skip ways with too few nodes (likely not a real trail)
+                if (wayNodes.size() < 2) {
+                    continue;
+                }
+
+                // Add nodes to way
+                for (OSMNode node : wayNodes) {
+                    way.addNode(node);
+                }
+
+                // Get tags
+                if (element.has("tags")) {
+                    JSONObject tags = element.getJSONObject("tags");
+                    Iterator<String> keys = tags.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        String value = tags.getString(key);
+                        way.addTag(key, value);
+                    }
+                }
+
+                ways.add(way);
+
+                // Stop once enough ways are collected
+                if (ways.size() >= maxWays) {
+                    break;
+                }
+            }
+        }
+        return ways;
+    }
+
+    static List<OSMNode> parseNodesFromJson(String jsonResponse) throws JSONException {
+        List<OSMNode> nodes = new ArrayList<>();
+
+        JSONObject json = new JSONObject(jsonResponse);
+        JSONArray elements = json.getJSONArray("elements");
+
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject element = elements.getJSONObject(i);
+            if ("node".equals(element.getString("type"))) {
+                long id = element.getLong("id");
+                double lat = element.getDouble("lat");
+                double lon = element.getDouble("lon");
+
+                OSMNode node = new OSMNode(id, lat, lon);
+
+                // Get tags
+                if (element.has("tags")) {
+                    JSONObject tags = element.getJSONObject("tags");
+                    Iterator<String> keys = tags.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        String value = tags.getString(key);
+                        node.addTag(key, value);
+                    }
+                }
+
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+}
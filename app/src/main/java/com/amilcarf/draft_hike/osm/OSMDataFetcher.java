@@ -7,23 +7,19 @@ import android.util.Log;
 import com.amilcarf.draft_hike.models.OSMNode;
 import com.amilcarf.draft_hike.models.OSMWay;
 import com.amilcarf.draft_hike.models.Trail;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.amilcarf.draft_hike.storage.TrailCacheFile;
+import com.amilcarf.draft_hike.tiles.OfflineTileStore;
+import com.amilcarf.draft_hike.tiles.Tile;
+import com.amilcarf.draft_hike.tiles.TileCache;
+import com.amilcarf.draft_hike.tiles.TileData;
+import com.amilcarf.draft_hike.tiles.TileQueries;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -31,39 +27,147 @@ import java.util.concurrent.TimeUnit;
 
 import okhttp3.Cache;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
+/**
+ * Fetches trails and benches from Overpass and keeps the local trail cache.
+ *
+ * All instances share one Overpass client (mirror statistics, connection pool and HTTP
+ * cache) and one tile cache, so screens can create their own fetcher cheaply and still reuse each other's
+ * connections and results. {@link #cancel} aborts only the requests of one instance.
+ *
+ * Tiles downloaded for offline use are looked up before the tile caches and never expire,
+ * so queries inside a downloaded region are answered from disk without the network.
+ *
+ * Identical Overpass queries are coalesced across all instances: a caller whose query is
+ * already running waits for that request and shares its parsed result, and results stay
+ * shared for SHARED_RESULT_TTL afterwards. Returned lists must therefore not be modified.
+ */
 public class OSMDataFetcher {
     private static final String TAG = "OSMDataFetcher";
-    private static final String OSM_API_URL = "https://overpass-api.de/api/interpreter";
-    private static final String CACHE_FILENAME = "trails_cache.json";
+    private static final String CACHE_FILENAME = "trails_cache.bin";
+    private static final String LEGACY_CACHE_FILENAME = "trails_cache.json";
     private static final long CACHE_SIZE = 10 * 1024 * 1024; // 10 MB cache
-
-    private final OkHttpClient client;
+    private static final int MAX_WAYS = 30;
+    // How far from a trail a bench may be and still count as on it
+    private static final double BENCH_TRAIL_DISTANCE = 50;
+    // Zoom 15 tiles are about 1.2 km wide at the equator
+    private static final int TILE_ZOOM = 15;
+    private static final long TILE_TTL = 12 * 60 * 60 * 1000L; // 12 hours
+    private static final int MEMORY_TILES = 256;
+    private static final int DISK_TILES = 2048;
+
+    // Bench-only tiles for the map, at the same zoom as the trail tiles
+    private static final int BENCH_DISK_TILES = 1024;
+
+    // How long a parsed response answers the same query again, e.g. after a rotation
+    private static final long SHARED_RESULT_TTL = 30 * 1000L;
+    private static final int SHARED_RESULTS = 8;
+
+    private static final SingleFlight OVERPASS_FLIGHTS = new SingleFlight(SHARED_RESULT_TTL, SHARED_RESULTS);
+
+    private static OverpassClient sharedClient;
+    private static TileCache sharedTileCache;
+    private static TileCache sharedBenchTileCache;
+    private static OfflineTileStore sharedOfflineTrailTiles;
+    private static OfflineTileStore sharedOfflineBenchTiles;
+
+    private final OverpassClient client;
     private final Context context;
-    private final Gson gson;
+    private final TrailCacheFile trailCache;
+    private final TileCache tileCache;
+    private final TileCache benchTileCache;
+    private final OfflineTileStore offlineTrailTiles;
+    private final OfflineTileStore offlineBenchTiles;
+    private volatile IngestMode ingestMode = IngestMode.INLINE_GEOMETRY;
+
+    // Cancelled with the fetcher; aborts its requests and waits on shared ones
+    private final CancellationToken lifetime = new CancellationToken();
 
     public OSMDataFetcher(Context context) {
         this.context = context;
-        this.gson = new Gson();
+        this.trailCache = new TrailCacheFile(new File(context.getFilesDir(), CACHE_FILENAME));
+        this.client = sharedClient(context.getApplicationContext());
+        this.tileCache = sharedTileCache(context.getApplicationContext());
+        this.benchTileCache = sharedBenchTileCache(context.getApplicationContext());
+        this.offlineTrailTiles = sharedOfflineStore(context.getApplicationContext(), true);
+        this.offlineBenchTiles = sharedOfflineStore(context.getApplicationContext(), false);
+    }
+
+    private static synchronized OverpassClient sharedClient(Context appContext) {
+        if (sharedClient == null) {
+            // Create cache directory;
+            File cacheDir = new File(appContext.getCacheDir(), "osm_cache");
+            if (!cacheDir.exists()) {
+                cacheDir.mkdirs();
+            }
+
+            // Create HTTP client with caching
+            OkHttpClient httpClient = new OkHttpClient.Builder()
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(15, TimeUnit.SECONDS)
+                    .writeTimeout(10, TimeUnit.SECONDS)
+                    .cache(new Cache(cacheDir, CACHE_SIZE))
+                    .build();
+            // No hedge delay: duplicating slow queries would double the load on the public mirrors
+            sharedClient = new OverpassClient(httpClient, OverpassClient.DEFAULT_ENDPOINTS);
+        }
+        return sharedClient;
+    }
+
+    private static synchronized TileCache sharedTileCache(Context appContext) {
+        if (sharedTileCache == null) {
+            sharedTileCache = new TileCache(new File(appContext.getCacheDir(), "osm_tiles"),
+                    MEMORY_TILES, DISK_TILES, TILE_TTL);
+        }
+        return sharedTileCache;
+    }
 
-        // Create cache directory;
-        File cacheDir = new File(context.getCacheDir(), "osm_cache");
-        if (!cacheDir.exists()) {
-            cacheDir.mkdirs();
+    private static synchronized TileCache sharedBenchTileCache(Context appContext) {
+        if (sharedBenchTileCache == null) {
+            sharedBenchTileCache = new TileCache(new File(appContext.getCacheDir(), "osm_bench_tiles"),
+                    MEMORY_TILES, BENCH_DISK_TILES, TILE_TTL);
         }
+        return sharedBenchTileCache;
+    }
+
+    // In the files directory, which unlike the cache directory the system never clears
+    private static synchronized OfflineTileStore sharedOfflineStore(Context appContext, boolean trails) {
+        if (sharedOfflineTrailTiles == null) {
+            File offlineDir = new File(appContext.getFilesDir(), "offline");
+            sharedOfflineTrailTiles = new OfflineTileStore(new File(offlineDir, "trails"));
+            sharedOfflineBenchTiles = new OfflineTileStore(new File(offlineDir, "benches"));
+        }
+        return trails ? sharedOfflineTrailTiles : sharedOfflineBenchTiles;
+    }
 
-        // Create HTTP client with caching
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(15, TimeUnit.SECONDS)
-                .writeTimeout(10, TimeUnit.SECONDS)
-                .cache(new Cache(cacheDir, CACHE_SIZE))
-                .build();
+    public static int getTileZoom() {
+        return TILE_ZOOM;
     }
 
-    public List<OSMWay> fetchTrailsNearLocation(double lat, double lon, double radius) throws IOException, JSONException {
+    /**
+     * Aborts this fetcher's requests in flight and makes later ones fail right away; the
+     * blocked fetch methods throw an IOException. Call when the owning screen is destroyed.
+     */
+    public void cancel() {
+        lifetime.cancel();
+    }
+
+    public boolean isCancelled() {
+        return lifetime.isCancelled();
+    }
+
+    public IngestMode getIngestMode() {
+        return ingestMode;
+    }
+
+    /**
+     * Chooses how way geometry is requested; inline geometry is the default.
+     */
+    public void setIngestMode(IngestMode ingestMode) {
+        this.ingestMode = ingestMode;
+    }
+
+    public List<OSMWay> fetchTrailsNearLocation(double lat, double lon, double radius) throws IOException {
         // Fixed query
         String query = String.format(Locale.US,
                 "[out:json][timeout:15];" +
@@ -71,19 +175,143 @@ public class OSMDataFetcher {
                         "  way[\"highway\"=\"path\"][\"foot\"!=\"no\"](around:%.0f,%.6f,%.6f);" +
                         "  way[\"route\"=\"hiking\"](around:%.0f,%.6f,%.6f);" +
                         ");" +
-                        "out body;" +
-                        ">;" +
-                        "out skel qt;",
+                        "%s",
                 radius, lat, lon,
-                radius, lat, lon
+                radius, lat, lon,
+                ingestMode == IngestMode.INLINE_GEOMETRY ? "out body geom;" : "out body;>;out skel qt;"
         );
 
         Log.d(TAG, "Fetching trails query (radius=" + radius + "m)");
-        String jsonResponse = executeOverpassQuery(query);
-        return parseWaysFromJson(jsonResponse);
+        List<OSMWay> ways = executeSharedQuery("ways", query,
+                body -> OverpassParser.parseWays(body, MAX_WAYS), null);
+        Log.d(TAG, "Kept " + ways.size() + " valid ways");
+        return ways;
+    }
+
+    /**
+     * Fetches every trail around a point without the MAX_WAYS cap, publishing them as they
+     * become available: first whatever the tile cache already holds, then batches of about
+     * batchSize ways while the response for the missing tiles is still downloading. Each
+     * batch is ordered nearest first. Returns the complete result once the stream ends.
+     *
+     * The search starts at startRadius and widens the circle until at least targetWays ways
+     * are found or maxRadius is covered. Each step fetches only the tiles the wider circle
+     * adds, so nothing inside is downloaded twice, and ways and benches already held are
+     * re-used for every later step. The next radius follows from the trail density seen so
+     * far (see ProgressiveSearch), so sparse areas get there in a few steps rather than
+     * repeated doubling.
+     *
+     * When token is cancelled, the request in flight is aborted, no further ring is fetched,
+     * and an IOException is thrown.
+     */
+    public TrailQueryResult fetchTrailsProgressively(double lat, double lon, double startRadius, double maxRadius,
+                                                     int targetWays, int batchSize, TrailBatchListener listener,
+                                                     CancellationToken token) throws IOException {
+        WayBatchPublisher publisher = new WayBatchPublisher(lat, lon, startRadius, listener);
+        Map<Tile, TileData> tileData = new HashMap<>();
+        double radius = startRadius;
+        while (true) {
+            if (token != null && token.isCancelled()) {
+                throw new IOException("Overpass query canceled");
+            }
+            List<Tile> tiles = Tile.coveringRadius(lat, lon, radius, TILE_ZOOM);
+            List<Tile> ring = new ArrayList<>();
+            for (Tile tile : tiles) {
+                if (!tileData.containsKey(tile)) {
+                    ring.add(tile);
+                }
+            }
+            List<Tile> missing = lookUpTiles(ring, tileData);
+
+            // Cached tiles and ways from earlier steps that reach into the wider circle first
+            publisher.setRadius(radius);
+            TrailQueryResult known = TileQueries.merge(tiles, tileData, lat, lon, radius, OverpassParser.NO_LIMIT);
+            publisher.publish(known.getWays(), known.getBenches());
+
+            if (!missing.isEmpty()) {
+                tileData.putAll(fetchTiles(missing, publisher::publish, batchSize, token));
+            }
+            TrailQueryResult result = TileQueries.merge(tiles, tileData, lat, lon, radius, OverpassParser.NO_LIMIT);
+            // A response shared with another caller streamed its batches to that caller only;
+            // publish whatever this listener has not seen yet
+            publisher.publish(result.getWays(), result.getBenches());
+
+            int found = publisher.getPublishedWays();
+            Log.d(TAG, String.format(Locale.US, "Radius %.0f m: %d new tiles, %d fetched, %d ways",
+                    radius, ring.size(), missing.size(), found));
+            if (found >= targetWays || radius >= maxRadius) {
+                return result;
+            }
+            radius = ProgressiveSearch.nextRadius(radius, found, targetWays, maxRadius);
+        }
+    }
+
+    // Fills tileData from the offline store and tile cache and returns the tiles they do not hold
+    private List<Tile> lookUpTiles(List<Tile> tiles, Map<Tile, TileData> tileData) {
+        List<Tile> missing = new ArrayList<>();
+        for (Tile tile : tiles) {
+            TileData data = offlineTrailTiles.get(tile);
+            if (data == null) {
+                data = tileCache.get(tile);
+            }
+            if (data != null) {
+                tileData.put(tile, data);
+            } else {
+                missing.add(tile);
+            }
+        }
+
+        Log.d(TAG, "Tiles: " + tiles.size() + " needed, " + missing.size() + " missing"
+                + String.format(Locale.US, " (hit rate %.0f%%)", tileCache.getHitRate() * 100));
+        return missing;
+    }
+
+    private Map<Tile, TileData> fetchTiles(List<Tile> tiles, OverpassParser.WayBatchListener listener,
+                                           int batchSize, CancellationToken token) throws IOException {
+        // A response Overpass cut short fails to parse, so its tiles never reach the cache
+        Map<Tile, TileData> byTile = requestTiles(tiles, listener, batchSize, token);
+        for (Map.Entry<Tile, TileData> entry : byTile.entrySet()) {
+            tileCache.put(entry.getKey(), entry.getValue());
+        }
+        return byTile;
+    }
+
+    private Map<Tile, TileData> requestTiles(List<Tile> tiles, OverpassParser.WayBatchListener listener,
+                                             int batchSize, CancellationToken token) throws IOException {
+        StringBuilder selectors = new StringBuilder();
+        for (double[] box : TileQueries.rowBoxes(tiles)) {
+            String bbox = String.format(Locale.US, "(%.6f,%.6f,%.6f,%.6f)", box[0], box[1], box[2], box[3]);
+            selectors.append("  way[\"highway\"=\"path\"][\"foot\"!=\"no\"]").append(bbox).append(";")
+                    .append("  way[\"route\"=\"hiking\"]").append(bbox).append(";");
+        }
+
+        // Benches (and way nodes, without inline geometry) go first so each way is
+        // complete when it arrives
+        String ways = ingestMode == IngestMode.INLINE_GEOMETRY
+                ? ".trails out body geom;"
+                : "node(w.trails);out skel qt;.trails out body;";
+        String query = String.format(Locale.US,
+                "[out:json][timeout:25];" +
+                        "(" +
+                        "%s" +
+                        ")->.trails;" +
+                        "node(around.trails:%.0f)[\"amenity\"=\"bench\"];" +
+                        "out body;" +
+                        "%s",
+                selectors, BENCH_TRAIL_DISTANCE, ways
+        );
+
+        Log.d(TAG, "Fetching trails and benches for " + tiles.size() + " tiles");
+        // Tiles are cached whole, so the way cap is applied after merging instead
+        TrailQueryResult result = executeSharedQuery("trails", query, body -> listener == null
+                ? OverpassParser.parseTrailsAndBenches(body, OverpassParser.NO_LIMIT)
+                : OverpassParser.parseTrailsAndBenches(body, OverpassParser.NO_LIMIT, batchSize, listener), token);
+        Log.d(TAG, "Received " + result.getWays().size() + " ways and "
+                + result.getBenches().size() + " benches");
+        return TileQueries.split(tiles, result, System.currentTimeMillis());
     }
 
-    public List<OSMNode> fetchBenchesNearLocation(double lat, double lon, double radius) throws IOException, JSONException {
+    public List<OSMNode> fetchBenchesNearLocation(double lat, double lon, double radius) throws IOException {
         // Fixed query - removed invalid "limit" statement
         String query = String.format(Locale.US,
                 "[out:json][timeout:10];" +
@@ -93,165 +321,130 @@ public class OSMDataFetcher {
         );
 
         Log.d(TAG, "Fetching benches query (radius=" + radius + "m)");
-        String jsonResponse = executeOverpassQuery(query);
-        return parseNodesFromJson(jsonResponse);
+        List<OSMNode> benches = executeSharedQuery("nodes", query, OverpassParser::parseNodes, null);
+        Log.d(TAG, "Parsed " + benches.size() + " benches");
+        return benches;
     }
 
-    private String executeOverpassQuery(String query) throws IOException {
-        try {
-            // Encode the query!!!!
-            String encodedQuery = java.net.URLEncoder.encode(query, "UTF-8");
-            String url = OSM_API_URL + "?data=" + encodedQuery;
-
-            Log.d(TAG, "Executing query to Overpass API");
-            Log.d(TAG, "Query preview: " + query.substring(0, Math.min(100, query.length())));
-
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("User-Agent", "DraftHikeApp/1.0")
-                    .build();
-
-            Response response = client.newCall(request).execute();
-
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "";
-                Log.e(TAG, "HTTP error " + response.code() + ": " + errorBody);
-                throw new IOException("HTTP " + response.code() + ": " + errorBody);
+    /**
+     * Returns every bench in the given tiles, by tile. Cached tiles are served locally and
+     * the rest are fetched in one request, which the token can abort.
+     */
+    public Map<Tile, List<OSMNode>> fetchBenchTiles(List<Tile> tiles, CancellationToken token) throws IOException {
+        Map<Tile, List<OSMNode>> benches = new HashMap<>();
+        List<Tile> missing = new ArrayList<>();
+        for (Tile tile : tiles) {
+            TileData data = offlineBenchTiles.get(tile);
+            if (data == null) {
+                data = benchTileCache.get(tile);
             }
+            if (data != null) {
+                benches.put(tile, data.getBenches());
+            } else {
+                missing.add(tile);
+            }
+        }
+        if (missing.isEmpty()) {
+            return benches;
+        }
 
-            String responseBody = response.body().string();
-            Log.d(TAG, "Response received, length: " + responseBody.length() + " bytes");
-
-            return responseBody;
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error in executeOverpassQuery: " + e.getMessage(), e);
-            throw new IOException("Failed to execute Overpass query: " + e.getMessage(), e);
+        Log.d(TAG, "Fetching benches for " + missing.size() + " of " + tiles.size() + " tiles");
+        for (Map.Entry<Tile, TileData> entry : requestBenchTiles(missing, token).entrySet()) {
+            benchTileCache.put(entry.getKey(), entry.getValue());
+            benches.put(entry.getKey(), entry.getValue().getBenches());
         }
+        return benches;
     }
 
-    private List<OSMWay> parseWaysFromJson(String jsonResponse) throws JSONException {
-        List<OSMWay> ways = new ArrayList<>();
-        Map<Long, OSMNode> nodeMap = new HashMap<>();
+    /**
+     * Downloads trails and the benches along them for the given tiles, bypassing the
+     * caches. Used to fill the offline store; the token can abort the request.
+     */
+    public Map<Tile, TileData> downloadTrailTiles(List<Tile> tiles, CancellationToken token) throws IOException {
+        return requestTiles(tiles, null, 0, token);
+    }
 
-        JSONObject json = new JSONObject(jsonResponse);
-        JSONArray elements = json.getJSONArray("elements");
+    /**
+     * Downloads every bench in the given tiles, bypassing the caches.
+     */
+    public Map<Tile, TileData> downloadBenchTiles(List<Tile> tiles, CancellationToken token) throws IOException {
+        return requestBenchTiles(tiles, token);
+    }
 
-        Log.d(TAG, "Total elements in response: " + elements.length());
+    public OfflineTileStore getOfflineTrailTiles() {
+        return offlineTrailTiles;
+    }
 
-        // First pass!!!: collect only nodes that belong to ways
-        for (int i = 0; i < elements.length(); i++) {
-            JSONObject element = elements.getJSONObject(i);
-            if ("node".equals(element.getString("type"))) {
-                long id = element.getLong("id");
-                double lat = element.getDouble("lat");
-                double lon = element.getDouble("lon");
+    public OfflineTileStore getOfflineBenchTiles() {
+        return offlineBenchTiles;
+    }
 
-                OSMNode node = new OSMNode(id, lat, lon);
-                nodeMap.put(id, node);
-            }
+    // Tiles without benches are included too, so they are not asked for again
+    private Map<Tile, TileData> requestBenchTiles(List<Tile> tiles, CancellationToken token) throws IOException {
+        StringBuilder selectors = new StringBuilder();
+        for (double[] box : TileQueries.rowBoxes(tiles)) {
+            selectors.append(String.format(Locale.US, "  node[\"amenity\"=\"bench\"](%.6f,%.6f,%.6f,%.6f);",
+                    box[0], box[1], box[2], box[3]));
         }
+        String query = "[out:json][timeout:15];(" + selectors + ");out body;";
 
-        Log.d(TAG, "Collected " + nodeMap.size() + " nodes");
-
-        // Second pass!: process ways
-        int wayCount = 0;
-        for (int i = 0; i < elements.length(); i++) {
-            JSONObject element = elements.getJSONObject(i);
-            if ("way".equals(element.getString("type"))) {
-                wayCount++;
-                long id = element.getLong("id");
-                OSMWay way = new OSMWay(id);
-
-                // Get nodes for this way
-                JSONArray nodesArray = element.getJSONArray("nodes");
-                List<OSMNode> wayNodes = new ArrayList<>();
-
-                for (int j = 0; j < nodesArray.length(); j++) {
-                    long nodeId = nodesArray.getLong(j);
-                    OSMNode node = nodeMap.get(nodeId);
-                    if (node != null) {
-                        wayNodes.add(node);
-                    }
-                }
-
-                // Skip ways with too few nodes (likely not a real trail)
-                if (wayNodes.size() < 2) {
-                    Log.d(TAG, "Skipping way " + id + " - only " + wayNodes.size() + " nodes");
-                    continue;
-                }
-
-                // Add nodes to way
-                for (OSMNode node : wayNodes) {
-                    way.addNode(node);
-                }
-
-                // Get tags
-                if (element.has("tags")) {
-                    JSONObject tags = element.getJSONObject("tags");
-                    Iterator<String> keys = tags.keys();
-                    while (keys.hasNext()) {
-                        String key = keys.next();
-                        String value = tags.getString(key);
-                        way.addTag(key, value);
-                    }
-                }
-
-                ways.add(way);
+        List<OSMNode> nodes = executeSharedQuery("nodes", query, OverpassParser::parseNodes, token);
+        TrailQueryResult result = new TrailQueryResult(new ArrayList<OSMWay>(), nodes);
+        return TileQueries.split(tiles, result, System.currentTimeMillis());
+    }
 
-                // Limit to 30 ways maximum
-                if (ways.size() >= 30) {
-                    break;
-                }
+    /**
+     * Runs a query through the shared single-flight, so concurrent identical queries from any
+     * fetcher make one request. kind names the parsed result type, as the same query text
+     * may be parsed differently.
+     */
+    private <T> T executeSharedQuery(String kind, final String query, final OverpassClient.ResponseParser<T> parser,
+                                     final CancellationToken token) throws IOException {
+        // Ends waiting on someone else's request, or aborts our own, when this fetcher or the
+        // token is cancelled
+        CancellationToken callToken = new CancellationToken();
+        Runnable cancelCall = callToken::cancel;
+        lifetime.addOnCancel(cancelCall);
+        if (token != null) {
+            token.addOnCancel(cancelCall);
+        }
+        try {
+            return OVERPASS_FLIGHTS.execute(kind + "\n" + normalizeQuery(query),
+                    () -> executeOverpassQuery(query, parser, callToken), callToken);
+        } finally {
+            lifetime.removeOnCancel(cancelCall);
+            if (token != null) {
+                token.removeOnCancel(cancelCall);
             }
         }
-
-        Log.d(TAG, "Processed " + wayCount + " ways, kept " + ways.size() + " valid ways");
-        return ways;
     }
 
-    private List<OSMNode> parseNodesFromJson(String jsonResponse) throws JSONException {
-        List<OSMNode> nodes = new ArrayList<>();
-
-        JSONObject json = new JSONObject(jsonResponse);
-        JSONArray elements = json.getJSONArray("elements");
-
-        for (int i = 0; i < elements.length(); i++) {
-            JSONObject element = elements.getJSONObject(i);
-            if ("node".equals(element.getString("type"))) {
-                long id = element.getLong("id");
-                double lat = element.getDouble("lat");
-                double lon = element.getDouble("lon");
-
-                OSMNode node = new OSMNode(id, lat, lon);
-
-                // Get tags
-                if (element.has("tags")) {
-                    JSONObject tags = element.getJSONObject("tags");
-                    Iterator<String> keys = tags.keys();
-                    while (keys.hasNext()) {
-                        String key = keys.next();
-                        String value = tags.getString(key);
-                        node.addTag(key, value);
-                    }
-                }
+    // Queries differing only in whitespace are the same request
+    static String normalizeQuery(String query) {
+        return query.trim().replaceAll("\\s+", " ");
+    }
 
-                nodes.add(node);
+    private <T> T executeOverpassQuery(String query, OverpassClient.ResponseParser<T> parser,
+                                       CancellationToken token) throws IOException {
+        Log.d(TAG, "Executing query to Overpass API");
+        Log.d(TAG, "Query preview: " + query.substring(0, Math.min(100, query.length())));
+        try {
+            // Retries overloaded mirrors and fails over to the others
+            return client.execute(query, parser, token);
+        } catch (IOException | RuntimeException e) {
+            if (token.isCancelled()) {
+                Log.d(TAG, "Overpass query canceled");
+                throw new IOException("Overpass query canceled", e);
             }
+            Log.e(TAG, "Error in executeOverpassQuery: " + e.getMessage(), e);
+            throw new IOException("Failed to execute Overpass query: " + e.getMessage(), e);
         }
-
-        Log.d(TAG, "Parsed " + nodes.size() + " benches from JSON");
-        return nodes;
     }
 
     public void cacheTrails(List<Trail> trails) {
         try {
-            String json = gson.toJson(trails);
-
-            File cacheFile = new File(context.getFilesDir(), CACHE_FILENAME);
-            FileOutputStream fos = new FileOutputStream(cacheFile);
-            fos.write(json.getBytes());
-            fos.close();
+            // Only changed trails are appended; the file is not rewritten
+            trailCache.replaceAll(trails);
 
             // Save cache timestamp
             SharedPreferences prefs = context.getSharedPreferences("TrailsPrefs", Context.MODE_PRIVATE);
@@ -259,27 +452,31 @@ public class OSMDataFetcher {
             editor.putLong("cache_timestamp", System.currentTimeMillis());
             editor.apply();
 
+            new File(context.getFilesDir(), LEGACY_CACHE_FILENAME).delete();
+
             Log.d(TAG, "Cached " + trails.size() + " trails");
         } catch (IOException e) {
             Log.e(TAG, "Failed to cache trails", e);
         }
     }
 
+    /**
+     * Updates a single cached trail, for example after toggling a favorite.
+     */
+    public void cacheTrail(Trail trail) {
+        try {
+            trailCache.put(trail);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to cache trail " + trail.getId(), e);
+        }
+    }
+
     public List<Trail> loadCachedTrails() {
         try {
-            File cacheFile = new File(context.getFilesDir(), CACHE_FILENAME);
-            if (!cacheFile.exists()) {
+            if (!trailCache.exists()) {
                 return null;
             }
-
-            FileInputStream fis = new FileInputStream(cacheFile);
-            byte[] data = new byte[(int) cacheFile.length()];
-            fis.read(data);
-            fis.close();
-
-            String json = new String(data);
-            Type listType = new TypeToken<List<Trail>>(){}.getType();
-            return gson.fromJson(json, listType);
+            return trailCache.readAll();
 
         } catch (IOException e) {
             Log.e(TAG, "Failed to load cached trails", e);
@@ -0,0 +1,481 @@
+package com.amilcarf.draft_hike.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Sends Overpass queries to a list of mirrors, keeping the fastest healthy one first.
+ *
+ * Every mirror has moving averages of its time to first byte and its error rate, and
+ * requests go to the best ranked mirror that is not backing off. Overload answers (429,
+ * 5xx) and connection failures are retried: a failing mirror backs off for its Retry-After
+ * or a jittered exponential delay while the next request goes to another mirror, and only
+ * when every mirror is backing off does the client wait. Other errors, and failures while a
+ * response body is being parsed, are not retried.
+ *
+ * Hedging is off by default. With a hedge delay set, a request that has not started answering after that delay is
+ * also sent to the second best mirror and the first response wins; the other is cancelled.
+ */
+public class OverpassClient {
+
+    /**
+     * Parses a response body straight from its byte stream.
+     */
+    interface ResponseParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    public static final List<String> DEFAULT_ENDPOINTS = Collections.unmodifiableList(Arrays.asList(
+            "https://overpass-api.de/api/interpreter",
+            "https://overpass.kumi.systems/api/interpreter",
+            "https://overpass.private.coffee/api/interpreter"));
+
+    // Weight of the newest sample in the moving averages
+    private static final double EWMA_WEIGHT = 0.3;
+    // A mirror that always fails ranks like one this much slower
+    private static final double ERROR_PENALTY_MILLIS = 5000;
+    private static final int MAX_ERROR_BODY = 200;
+
+    private final OkHttpClient client;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final Random random = new Random();
+
+    private volatile int maxAttempts = 4;
+    private volatile long baseBackoffMillis = 1000;
+    private volatile long maxBackoffMillis = 30_000;
+    private volatile long maxWaitMillis = 60_000;
+    private volatile long hedgeDelayMillis;
+
+    public OverpassClient(OkHttpClient client, List<String> endpointUrls) {
+        if (endpointUrls.isEmpty()) {
+            throw new IllegalArgumentException("No Overpass endpoints");
+        }
+        this.client = client;
+        for (String url : endpointUrls) {
+            endpoints.add(new Endpoint(url));
+        }
+    }
+
+    /**
+     * Requests sent per query, across all mirrors, before giving up.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Backoff of a failing mirror without Retry-After: about base, doubling per consecutive
+     * failure up to max, with random jitter.
+     */
+    public void setBackoff(long baseMillis, long maxMillis) {
+        this.baseBackoffMillis = baseMillis;
+        this.maxBackoffMillis = maxMillis;
+    }
+
+    /**
+     * Longest the client waits for a mirror to stop backing off before failing instead.
+     */
+    public void setMaxWait(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Delay after which a request is also sent to a second mirror; 0 turns hedging off.
+     */
+    public void setHedgeDelay(long hedgeDelayMillis) {
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    /**
+     * Runs a query and parses the response, retrying and failing over as described above.
+     * Cancelling the token aborts the request, also while the body is being parsed.
+     */
+    public <T> T execute(String query, ResponseParser<T> parser, CancellationToken token) throws IOException {
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            if (token.isCancelled()) {
+                throw new IOException("Canceled");
+            }
+            if (attempt > 0 && !waitForEndpoint(token)) {
+                break;
+            }
+
+            List<Endpoint> ranked = rank();
+            Endpoint hedge = ranked.size() > 1 && !ranked.get(1).isBackingOff(now()) ? ranked.get(1) : null;
+            Race race = new Race(query);
+            Runnable abort = race::cancel;
+            token.addOnCancel(abort);
+            try {
+                Response response;
+                try {
+                    response = race.run(ranked.get(0), hedgeDelayMillis > 0 ? hedge : null);
+                } catch (RetryableException e) {
+                    lastFailure = e;
+                    continue;
+                }
+                try (ResponseBody body = response.body()) {
+                    if (body == null) {
+                        throw new IOException("Empty response body");
+                    }
+                    // Parse while the body is still downloading instead of buffering it
+                    return parser.parse(body.byteStream());
+                }
+            } finally {
+                token.removeOnCancel(abort);
+            }
+        }
+        throw lastFailure != null ? lastFailure : new IOException("Overpass mirrors unavailable");
+    }
+
+    /**
+     * Moving average of a mirror's time to first byte, in ms; 0 before its first response.
+     */
+    public double getLatencyMillis(String url) {
+        return endpoint(url).latency();
+    }
+
+    /**
+     * Moving average of the fraction of failed requests to a mirror.
+     */
+    public double getErrorRate(String url) {
+        return endpoint(url).errorRate();
+    }
+
+    // Mirrors not backing off come first, best score first; the rest by when they recover
+    private List<Endpoint> rank() {
+        final long now = now();
+        List<Endpoint> ranked = new ArrayList<>(endpoints);
+        Collections.sort(ranked, (a, b) -> {
+            boolean aReady = !a.isBackingOff(now);
+            boolean bReady = !b.isBackingOff(now);
+            if (aReady != bReady) {
+                return aReady ? -1 : 1;
+            }
+            return aReady ? Double.compare(a.score(), b.score()) : Long.compare(a.blockedUntil(), b.blockedUntil());
+        });
+        return ranked;
+    }
+
+    // Waits until some mirror stops backing off; false when that would take too long
+    private boolean waitForEndpoint(CancellationToken token) throws IOException {
+        long now = now();
+        long earliest = Long.MAX_VALUE;
+        for (Endpoint endpoint : endpoints) {
+            earliest = Math.min(earliest, endpoint.blockedUntil());
+        }
+        long delay = earliest - now;
+        if (delay <= 0) {
+            return true;
+        }
+        if (delay > maxWaitMillis) {
+            return false;
+        }
+
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Runnable wake = cancelled::countDown;
+        token.addOnCancel(wake);
+        try {
+            if (cancelled.await(delay, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Canceled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting to retry", e);
+        } finally {
+            token.removeOnCancel(wake);
+        }
+        return true;
+    }
+
+    private long backoff(int consecutiveFailures) {
+        long cap = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(consecutiveFailures - 1, 16));
+        return cap / 2 + (long) (random.nextDouble() * (cap / 2 + 1));
+    }
+
+    private Endpoint endpoint(String url) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.url.equals(url)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint " + url);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    // Retry-After in seconds or as an HTTP date; 0 when absent or unparseable
+    private static long retryAfterMillis(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    private static String errorExcerpt(Response response) {
+        try {
+            ResponseBody body = response.body();
+            String text = body != null ? body.string() : "";
+            return text.length() > MAX_ERROR_BODY ? text.substring(0, MAX_ERROR_BODY) + "..." : text;
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static final class Endpoint {
+        final String url;
+        private double latency;
+        private double errorRate;
+        private boolean measured;
+        private int consecutiveFailures;
+        private long blockedUntil;
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+
+        synchronized void recordLatency(long millis) {
+            latency = measured ? latency + EWMA_WEIGHT * (millis - latency) : millis;
+            measured = true;
+        }
+
+        // A cancelled hedge only tells us the mirror took at least this long
+        synchronized void recordAtLeast(long millis) {
+            if (!measured || millis > latency) {
+                recordLatency(millis);
+            }
+        }
+
+        synchronized void recordSuccess() {
+            errorRate -= EWMA_WEIGHT * errorRate;
+            consecutiveFailures = 0;
+            blockedUntil = 0;
+        }
+
+        synchronized int recordFailure() {
+            errorRate += EWMA_WEIGHT * (1 - errorRate);
+            return ++consecutiveFailures;
+        }
+
+        synchronized void backOffUntil(long until) {
+            blockedUntil = Math.max(blockedUntil, until);
+        }
+
+        synchronized boolean isBackingOff(long now) {
+            return blockedUntil > now;
+        }
+
+        synchronized long blockedUntil() {
+            return blockedUntil;
+        }
+
+        synchronized double latency() {
+            return latency;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        // Lower is better; mirrors never measured score 0 so each gets tried
+        synchronized double score() {
+            return latency + errorRate * ERROR_PENALTY_MILLIS;
+        }
+    }
+
+    private static final class RetryableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RetryableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * One request, possibly sent to two mirrors; the first successful response wins.
+     */
+    private final class Race {
+        private final String query;
+        private final List<Leg> legs = new ArrayList<>();
+        private Leg winner;
+        private int finished;
+        private boolean cancelled;
+        private IOException fatal;
+        private RetryableException retryable;
+
+        Race(String query) {
+            this.query = query;
+        }
+
+        Response run(Endpoint primary, Endpoint hedge) throws IOException {
+            start(primary);
+            long hedgeAt = hedge != null ? now() + hedgeDelayMillis : Long.MAX_VALUE;
+            synchronized (this) {
+                try {
+                    while (true) {
+                        if (winner != null) {
+                            cancelLosers();
+                            return winner.response;
+                        }
+                        if (cancelled) {
+                            throw new IOException("Canceled");
+                        }
+                        if (fatal != null) {
+                            cancelLosers();
+                            throw fatal;
+                        }
+                        if (finished == legs.size() && hedgeAt == Long.MAX_VALUE) {
+                            throw retryable;
+                        }
+                        long now = now();
+                        if (hedgeAt <= now || finished == legs.size()) {
+                            // Hedge now, or right away when the first mirror already failed
+                            start(hedge);
+                            hedgeAt = Long.MAX_VALUE;
+                            continue;
+                        }
+                        wait(hedgeAt == Long.MAX_VALUE ? 0 : hedgeAt - now);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+        }
+
+        void cancel() {
+            List<Leg> toCancel;
+            synchronized (this) {
+                cancelled = true;
+                toCancel = new ArrayList<>(legs);
+                notifyAll();
+            }
+            for (Leg leg : toCancel) {
+                leg.call.cancel();
+            }
+        }
+
+        private synchronized void start(Endpoint endpoint) throws IOException {
+            String url = endpoint.url + "?data=" + URLEncoder.encode(query, "UTF-8");
+            Request request = new Request.Builder()
+                    .url(url)
+                    .header("User-Agent", "DraftHikeApp/1.0")
+                    .build();
+            Leg leg = new Leg(endpoint, client.newCall(request));
+            legs.add(leg);
+            leg.call.enqueue(leg);
+        }
+
+        // Called with the lock held
+        private void cancelLosers() {
+            for (Leg leg : legs) {
+                if (leg != winner) {
+                    leg.call.cancel();
+                }
+            }
+        }
+
+        private final class Leg implements Callback {
+            final Endpoint endpoint;
+            final Call call;
+            final long startedAt = now();
+            Response response;
+
+            Leg(Endpoint endpoint, Call call) {
+                this.endpoint = endpoint;
+                this.call = call;
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                long elapsed = now() - startedAt;
+                endpoint.recordLatency(elapsed);
+                int code = response.code();
+                if (response.isSuccessful()) {
+                    endpoint.recordSuccess();
+                    synchronized (Race.this) {
+                        if (winner == null && !cancelled) {
+                            this.response = response;
+                            winner = this;
+                            Race.this.notifyAll();
+                            return;
+                        }
+                        finished++;
+                    }
+                    response.close();
+                    return;
+                }
+
+                String body = errorExcerpt(response);
+                response.close();
+                if (!isRetryable(code)) {
+                    // The mirror is fine, the query is not
+                    endpoint.recordSuccess();
+                    finish(new IOException("HTTP " + code + ": " + body), null);
+                    return;
+                }
+                int failures = endpoint.recordFailure();
+                long retryAfter = retryAfterMillis(response);
+                endpoint.backOffUntil(now() + (retryAfter > 0 ? retryAfter : backoff(failures)));
+                finish(null, new RetryableException("HTTP " + code + " from " + endpoint.url + ": " + body, null));
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                long elapsed = now() - startedAt;
+                synchronized (Race.this) {
+                    if (winner != null || cancelled) {
+                        endpoint.recordAtLeast(elapsed);
+                        finished++;
+                        return;
+                    }
+                }
+                endpoint.recordLatency(elapsed);
+                int failures = endpoint.recordFailure();
+                endpoint.backOffUntil(now() + backoff(failures));
+                finish(null, new RetryableException("Request to " + endpoint.url + " failed: " + e.getMessage(), e));
+            }
+
+            private void finish(IOException fatalError, RetryableException retryableError) {
+                synchronized (Race.this) {
+                    if (fatalError != null) {
+                        fatal = fatalError;
+                    }
+                    if (retryableError != null) {
+                        retryable = retryableError;
+                    }
+                    finished++;
+                    Race.this.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package com.amilcarf.draft_hike.osm;
+
+import com.amilcarf.draft_hike.models.NodeStore;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.util.LongIntHashMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for Overpass API JSON responses.
+ *
+ * Reads the "elements" array token by token straight from the response stream, so the
+ * body is never buffered as a String and no intermediate JSON tree is built. Ways and
+ * nodes are collected in a single pass and joined once the stream ends; way nodes go into
+ * a shared {@link NodeStore} rather than individual OSMNode objects.
+ *
+ * Ways that carry inline geometry ("out geom") skip the join: their coordinates are read
+ * straight into packed arrays owned by the way, and they are complete as soon as they are
+ * read.
+ *
+ * A response carrying a top-level "remark" was cut short by a timeout or memory limit on
+ * the server, so parsing it fails with an IOException rather than returning part of the
+ * data as if it were complete.
+ */
+public final class OverpassParser {
+
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    /**
+     * Receives ways while a response is still being parsed.
+     */
+    public interface WayBatchListener {
+        /**
+         * Called on the parsing thread with the next ways, which are never repeated, and
+         * every bench read so far.
+         */
+        void onWays(List<OSMWay> ways, List<OSMNode> benches);
+    }
+
+    private OverpassParser() {
+    }
+
+    /**
+     * Parses the ways of an "out body; >; out skel" or an "out body geom" response.
+     *
+     * Ways with fewer than two node references are dropped as soon as they are read, and
+     * once maxWays ways are pending any further way is skipped without being materialized.
+     * Nodes that no pending way references are skipped too (when ways precede nodes, which
+     * is the order Overpass uses for recursed output).
+     */
+    public static List<OSMWay> parseWays(InputStream in, int maxWays) throws IOException {
+        return parseTrails(in, maxWays, false, 0, null).getWays();
+    }
+
+    /**
+     * Parses a combined trails-and-benches response in one pass. Ways are handled as in
+     * {@link #parseWays}; nodes tagged amenity=bench are returned separately with their tags.
+     */
+    public static TrailQueryResult parseTrailsAndBenches(InputStream in, int maxWays) throws IOException {
+        return parseTrails(in, maxWays, true, 0, null);
+    }
+
+    /**
+     * Like {@link #parseTrailsAndBenches(InputStream, int)}, but hands ways to the listener in
+     * batches of batchSize while the stream is still being read.
+     *
+     * A way can only be published once all of its nodes are known, so this pays off when the
+     * response lists benches and way nodes before the ways ("out skel" before "out body").
+     * Ways that arrive ahead of their nodes are held back and published when the stream ends.
+     * The returned result holds every way, published or not.
+     */
+    public static TrailQueryResult parseTrailsAndBenches(InputStream in, int maxWays, int batchSize,
+                                                         WayBatchListener listener) throws IOException {
+        return parseTrails(in, maxWays, true, Math.max(1, batchSize), listener);
+    }
+
+    private static TrailQueryResult parseTrails(InputStream in, int maxWays, boolean collectBenches,
+                                                int batchSize, WayBatchListener listener) throws IOException {
+        List<PendingWay> pendingWays = new ArrayList<>();
+        List<OSMWay> resolvedWays = new ArrayList<>();
+        List<OSMWay> batch = new ArrayList<>();
+        List<OSMNode> benches = new ArrayList<>();
+        LongIntHashMap referencedNodes = new LongIntHashMap(1024);
+        NodeStore nodeStore = new NodeStore(1024);
+
+        JsonReader reader = open(in);
+        try {
+            if (!seekElements(reader)) {
+                return new TrailQueryResult(new ArrayList<>(), benches);
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                String type = null;
+                long id = 0;
+                double lat = 0;
+                double lon = 0;
+                long[] refs = null;
+                Geometry geometry = null;
+                Map<String, String> tags = null;
+                boolean skip = false;
+
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (skip) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    switch (field) {
+                        case "type":
+                            type = reader.nextString();
+                            if ("way".equals(type)) {
+                                skip = pendingWays.size() + resolvedWays.size() >= maxWays;
+                            } else if (!"node".equals(type)) {
+                                skip = true;
+                            }
+                            break;
+                        case "id":
+                            id = reader.nextLong();
+                            // A bench is only recognizable by its tags, which come later
+                            if (!collectBenches && "node".equals(type) && !pendingWays.isEmpty()
+                                    && !referencedNodes.containsKey(id)) {
+                                skip = true;
+                            }
+                            break;
+                        case "lat":
+                            lat = reader.nextDouble();
+                            break;
+                        case "lon":
+                            lon = reader.nextDouble();
+                            break;
+                        case "nodes":
+                            refs = readLongArray(reader);
+                            break;
+                        case "geometry":
+                            geometry = readGeometry(reader);
+                            break;
+                        case "tags":
+                            tags = readTags(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+
+                if (skip) {
+                    continue;
+                }
+                if ("way".equals(type) && geometry != null) {
+                    // Inline geometry: nothing to join, so the way is final right away
+                    OSMWay way = geometry.toWay(id, refs, tags);
+                    if (way == null) {
+                        continue;
+                    }
+                    resolvedWays.add(way);
+                    if (listener != null) {
+                        batch.add(way);
+                        if (batch.size() >= batchSize) {
+                            listener.onWays(batch, new ArrayList<>(benches));
+                            batch = new ArrayList<>();
+                        }
+                    }
+                } else if ("way".equals(type)) {
+                    // Skip ways with too few nodes (likely not a real trail)
+                    if (refs == null || refs.length < 2) {
+                        continue;
+                    }
+                    PendingWay pending = new PendingWay(id, refs, tags);
+                    if (listener != null && pending.isComplete(nodeStore)) {
+                        // Its nodes came first, so the way can be published right away
+                        OSMWay way = pending.resolve(nodeStore);
+                        if (way != null) {
+                            resolvedWays.add(way);
+                            batch.add(way);
+                            if (batch.size() >= batchSize) {
+                                listener.onWays(batch, new ArrayList<>(benches));
+                                batch = new ArrayList<>();
+                            }
+                        }
+                        continue;
+                    }
+                    pendingWays.add(pending);
+                    for (long ref : refs) {
+                        referencedNodes.put(ref, 1);
+                    }
+                } else if ("node".equals(type)) {
+                    if (collectBenches && tags != null && "bench".equals(tags.get("amenity"))) {
+                        benches.add(toNode(id, lat, lon, tags));
+                    }
+                    if (pendingWays.isEmpty() || referencedNodes.containsKey(id)) {
+                        nodeStore.add(id, lat, lon);
+                    }
+                }
+            }
+            reader.endArray();
+            readTrailer(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed Overpass response: " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+
+        List<OSMWay> ways = new ArrayList<>(resolvedWays.size() + pendingWays.size());
+        ways.addAll(resolvedWays);
+        for (PendingWay pending : pendingWays) {
+            OSMWay way = pending.resolve(nodeStore);
+            if (way != null) {
+                ways.add(way);
+                batch.add(way);
+            }
+        }
+        if (listener != null && !batch.isEmpty()) {
+            listener.onWays(batch, new ArrayList<>(benches));
+        }
+        return new TrailQueryResult(ways, benches);
+    }
+
+    /**
+     * Parses every node of a response, keeping its tags (benches and other POIs).
+     */
+    public static List<OSMNode> parseNodes(InputStream in) throws IOException {
+        List<OSMNode> nodes = new ArrayList<>();
+
+        JsonReader reader = open(in);
+        try {
+            if (!seekElements(reader)) {
+                return nodes;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                String type = null;
+                long id = 0;
+                double lat = 0;
+                double lon = 0;
+                Map<String, String> tags = null;
+
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "type":
+                            type = reader.nextString();
+                            break;
+                        case "id":
+                            id = reader.nextLong();
+                            break;
+                        case "lat":
+                            lat = reader.nextDouble();
+                            break;
+                        case "lon":
+                            lon = reader.nextDouble();
+                            break;
+                        case "tags":
+                            tags = readTags(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+
+                if ("node".equals(type)) {
+                    nodes.add(toNode(id, lat, lon, tags));
+                }
+            }
+            reader.endArray();
+            readTrailer(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed Overpass response: " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+        return nodes;
+    }
+
+    private static OSMNode toNode(long id, double lat, double lon, Map<String, String> tags) {
+        OSMNode node = new OSMNode(id, lat, lon);
+        if (tags != null) {
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                node.addTag(tag.getKey(), tag.getValue());
+            }
+        }
+        return node;
+    }
+
+    private static JsonReader open(InputStream in) {
+        return new JsonReader(new InputStreamReader(
+                new BufferedInputStream(in, 16 * 1024), StandardCharsets.UTF_8));
+    }
+
+    // Advances to the value of the top-level "elements" field, skipping the header
+    private static boolean seekElements(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("elements".equals(name)) {
+                return true;
+            }
+            skipOrFailOnRemark(reader, name);
+        }
+        return false;
+    }
+
+    // Reads the top-level fields after "elements", where Overpass puts its remark
+    private static void readTrailer(JsonReader reader) throws IOException {
+        while (reader.hasNext()) {
+            skipOrFailOnRemark(reader, reader.nextName());
+        }
+        reader.endObject();
+    }
+
+    // A query that hit its timeout or memory limit still answers 200, with whatever elements
+    // it got and a "remark" saying why it stopped; such a response must not pass as complete
+    private static void skipOrFailOnRemark(JsonReader reader, String name) throws IOException {
+        if ("remark".equals(name) && reader.peek() == JsonToken.STRING) {
+            throw new IOException("Incomplete Overpass response: " + reader.nextString());
+        }
+        reader.skipValue();
+    }
+
+    private static long[] readLongArray(JsonReader reader) throws IOException {
+        long[] values = new long[16];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == values.length) {
+                long[] grown = new long[size * 2];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = reader.nextLong();
+        }
+        reader.endArray();
+
+        long[] result = new long[size];
+        System.arraycopy(values, 0, result, 0, size);
+        return result;
+    }
+
+    // Reads [{"lat":..,"lon":..}, ...]; entries can be null for nodes outside a clipped bbox
+    private static Geometry readGeometry(JsonReader reader) throws IOException {
+        Geometry geometry = new Geometry();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                geometry.addMissing();
+                continue;
+            }
+            double lat = Double.NaN;
+            double lon = Double.NaN;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "lat":
+                        lat = reader.nextDouble();
+                        break;
+                    case "lon":
+                        lon = reader.nextDouble();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (Double.isNaN(lat) || Double.isNaN(lon)) {
+                geometry.addMissing();
+            } else {
+                geometry.add(lat, lon);
+            }
+        }
+        reader.endArray();
+        return geometry;
+    }
+
+    private static Map<String, String> readTags(JsonReader reader) throws IOException {
+        Map<String, String> tags = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            tags.put(key, reader.nextString());
+        }
+        reader.endObject();
+        return tags;
+    }
+
+    // Inline coordinates of one way, packed as E7 like NodeStore
+    private static final class Geometry {
+        int[] latE7 = new int[16];
+        int[] lonE7 = new int[16];
+        boolean[] missing;
+        int size;
+        int present;
+
+        void add(double lat, double lon) {
+            ensureCapacity();
+            latE7[size] = NodeStore.toE7(lat);
+            lonE7[size] = NodeStore.toE7(lon);
+            size++;
+            present++;
+        }
+
+        void addMissing() {
+            ensureCapacity();
+            if (missing == null) {
+                missing = new boolean[latE7.length];
+            }
+            missing[size++] = true;
+        }
+
+        private void ensureCapacity() {
+            if (size < latE7.length) {
+                return;
+            }
+            int capacity = size * 2;
+            int[] lat = new int[capacity];
+            int[] lon = new int[capacity];
+            System.arraycopy(latE7, 0, lat, 0, size);
+            System.arraycopy(lonE7, 0, lon, 0, size);
+            latE7 = lat;
+            lonE7 = lon;
+            if (missing != null) {
+                boolean[] grown = new boolean[capacity];
+                System.arraycopy(missing, 0, grown, 0, size);
+                missing = grown;
+            }
+        }
+
+        /**
+         * Builds the way, pairing coordinates with the node ids at the same position and
+         * dropping missing ones, or returns null when fewer than two coordinates remain.
+         */
+        OSMWay toWay(long id, long[] refs, Map<String, String> tags) {
+            if (present < 2) {
+                return null;
+            }
+            long[] ids = new long[present];
+            int[] lat = missing == null && latE7.length == present ? latE7 : new int[present];
+            int[] lon = missing == null && lonE7.length == present ? lonE7 : new int[present];
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                if (missing != null && missing[i]) {
+                    continue;
+                }
+                ids[next] = refs != null && i < refs.length ? refs[i] : 0;
+                lat[next] = latE7[i];
+                lon[next] = lonE7[i];
+                next++;
+            }
+            OSMWay way = OSMWay.withGeometry(id, NodeStore.wrap(ids, lat, lon, present));
+            if (tags != null) {
+                for (Map.Entry<String, String> tag : tags.entrySet()) {
+                    way.addTag(tag.getKey(), tag.getValue());
+                }
+            }
+            return way;
+        }
+    }
+
+    private static final class PendingWay {
+        final long id;
+        final long[] refs;
+        final Map<String, String> tags;
+
+        PendingWay(long id, long[] refs, Map<String, String> tags) {
+            this.id = id;
+            this.refs = refs;
+            this.tags = tags;
+        }
+
+        boolean isComplete(NodeStore nodeStore) {
+            for (long ref : refs) {
+                if (nodeStore.indexOf(ref) == LongIntHashMap.NOT_FOUND) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        OSMWay resolve(NodeStore nodeStore) {
+            OSMWay way = new OSMWay(id, nodeStore);
+            for (long ref : refs) {
+                int index = nodeStore.indexOf(ref);
+                if (index != LongIntHashMap.NOT_FOUND) {
+                    way.addNodeIndex(index);
+                }
+            }
+            if (way.getNodeCount() < 2) {
+                return null;
+            }
+            if (tags != null) {
+                for (Map.Entry<String, String> tag : tags.entrySet()) {
+                    way.addTag(tag.getKey(), tag.getValue());
+                }
+            }
+            return way;
+        }
+    }
+}
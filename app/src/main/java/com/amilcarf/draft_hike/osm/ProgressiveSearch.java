@@ -0,0 +1,30 @@
+package com.amilcarf.draft_hike.osm;
+
+/**
+ * Step sizes for a search that widens its radius until enough trails are found.
+ *
+ * Assuming trails are spread evenly, finding found trails within radius means the target
+ * is reached at radius * sqrt(target / found). Each step aims for that, within bounds so a
+ * single lucky or unlucky ring does not overshoot or crawl.
+ */
+final class ProgressiveSearch {
+
+    // Each step grows the radius by at least this factor, so it always covers a real ring
+    static final double MIN_GROWTH = 1.25;
+    // ...and at most this factor, which is also the step when nothing was found yet
+    static final double MAX_GROWTH = 2;
+
+    private ProgressiveSearch() {
+    }
+
+    /**
+     * Returns the radius of the next step, never beyond maxRadius.
+     */
+    static double nextRadius(double radius, int found, int target, double maxRadius) {
+        double growth = found == 0
+                ? MAX_GROWTH
+                : Math.sqrt(target / (double) found);
+        growth = Math.max(MIN_GROWTH, Math.min(MAX_GROWTH, growth));
+        return Math.min(maxRadius, radius * growth);
+    }
+}
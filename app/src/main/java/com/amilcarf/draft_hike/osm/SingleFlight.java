@@ -0,0 +1,193 @@
+package com.amilcarf.draft_hike.osm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Coalesces identical requests: while a call for a key is running, other callers with the
+ * same key wait for it and share its result instead of starting their own. Successful
+ * results are also remembered for a short while, so a caller arriving just after the call
+ * finished gets the same result.
+ *
+ * Results are shared between callers and must not be modified. A caller cancelled while
+ * waiting stops waiting without affecting the others; if the caller running the call is
+ * cancelled, the ones waiting on it run the call again themselves.
+ */
+final class SingleFlight {
+
+    interface Call<V> {
+        V run() throws IOException;
+    }
+
+    /**
+     * Time source, replaceable in tests.
+     */
+    interface Clock {
+        long now();
+    }
+
+    private final long memoMillis;
+    private final Clock clock;
+    private final Map<String, Flight> inFlight = new HashMap<>();
+    private final LinkedHashMap<String, Memo> memo;
+
+    private int calls;
+    private int shared;
+    private int memoHits;
+
+    SingleFlight(long memoMillis, int memoCapacity) {
+        this(memoMillis, memoCapacity, System::currentTimeMillis);
+    }
+
+    SingleFlight(long memoMillis, final int memoCapacity, Clock clock) {
+        this.memoMillis = memoMillis;
+        this.clock = clock;
+        this.memo = new LinkedHashMap<String, Memo>(memoCapacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Memo> eldest) {
+                return size() > memoCapacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the result of the call for key, running it only when no call for the same key
+     * is running or remembered. Waiting stops with an IOException once the token is cancelled.
+     */
+    @SuppressWarnings("unchecked")
+    <V> V execute(String key, Call<V> call, CancellationToken token) throws IOException {
+        while (true) {
+            Flight flight;
+            boolean leader = false;
+            synchronized (this) {
+                Memo remembered = memo.get(key);
+                if (remembered != null) {
+                    if (clock.now() - remembered.storedAt < memoMillis) {
+                        memoHits++;
+                        return (V) remembered.value;
+                    }
+                    memo.remove(key);
+                }
+                flight = inFlight.get(key);
+                if (flight == null) {
+                    flight = new Flight();
+                    inFlight.put(key, flight);
+                    leader = true;
+                    calls++;
+                } else {
+                    shared++;
+                }
+            }
+
+            if (leader) {
+                return lead(key, flight, call, token);
+            }
+            flight.await(token);
+            if (flight.abandoned) {
+                // The caller running it was cancelled; try again, possibly as the leader
+                continue;
+            }
+            if (flight.error instanceof IOException) {
+                throw new IOException(flight.error.getMessage(), flight.error);
+            }
+            if (flight.error != null) {
+                throw (RuntimeException) flight.error;
+            }
+            return (V) flight.value;
+        }
+    }
+
+    private <V> V lead(String key, Flight flight, Call<V> call, CancellationToken token) throws IOException {
+        try {
+            V value = call.run();
+            synchronized (this) {
+                inFlight.remove(key);
+                if (memoMillis > 0) {
+                    memo.put(key, new Memo(value, clock.now()));
+                }
+            }
+            flight.finish(value, null, false);
+            return value;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                inFlight.remove(key);
+            }
+            flight.finish(null, e, token.isCancelled());
+            throw e;
+        }
+    }
+
+    synchronized void clearMemo() {
+        memo.clear();
+    }
+
+    /**
+     * Calls actually run.
+     */
+    synchronized int getCalls() {
+        return calls;
+    }
+
+    /**
+     * Callers that waited on a call already running.
+     */
+    synchronized int getShared() {
+        return shared;
+    }
+
+    synchronized int getMemoHits() {
+        return memoHits;
+    }
+
+    private static final class Flight {
+        private boolean done;
+        Object value;
+        Exception error;
+        boolean abandoned;
+
+        synchronized void finish(Object value, Exception error, boolean abandoned) {
+            this.value = value;
+            this.error = error;
+            this.abandoned = abandoned;
+            done = true;
+            notifyAll();
+        }
+
+        void await(CancellationToken token) throws IOException {
+            Runnable wake = this::wake;
+            token.addOnCancel(wake);
+            try {
+                synchronized (this) {
+                    while (!done) {
+                        if (token.isCancelled()) {
+                            throw new IOException("Overpass query canceled");
+                        }
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a shared Overpass query");
+            } finally {
+                token.removeOnCancel(wake);
+            }
+        }
+
+        private synchronized void wake() {
+            notifyAll();
+        }
+    }
+
+    private static final class Memo {
+        final Object value;
+        final long storedAt;
+
+        Memo(Object value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
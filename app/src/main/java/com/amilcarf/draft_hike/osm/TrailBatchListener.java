@@ -0,0 +1,12 @@
+package com.amilcarf.draft_hike.osm;
+
+/**
+ * Receives trails while they are still being fetched. Called on the fetching thread.
+ */
+public interface TrailBatchListener {
+    /**
+     * The batch holds new ways nearest first, possibly none when only benches were added, and
+     * every in-radius bench seen so far.
+     */
+    void onTrailBatch(TrailQueryResult batch);
+}
@@ -0,0 +1,27 @@
+package com.amilcarf.draft_hike.osm;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import java.util.List;
+
+/**
+ * Trails and the benches along them, as returned by a single Overpass round-trip.
+ */
+public class TrailQueryResult {
+    private final List<OSMWay> ways;
+    private final List<OSMNode> benches;
+
+    public TrailQueryResult(List<OSMWay> ways, List<OSMNode> benches) {
+        this.ways = ways;
+        this.benches = benches;
+    }
+
+    public List<OSMWay> getWays() {
+        return ways;
+    }
+
+    public List<OSMNode> getBenches() {
+        return benches;
+    }
+}
@@ -0,0 +1,101 @@
+package com.amilcarf.draft_hike.osm;
+
+import com.amilcarf.draft_hike.geo.GeoMath;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns raw way batches from cached tiles and a streaming response into the batches an
+ * {@link TrailBatchListener} sees.
+ *
+ * Keeps only ways that come within the radius, publishes each way once even when several
+ * tiles or both sources contain it, and orders every batch nearest first. Each batch carries
+ * all in-radius benches published so far, so bench counts can be taken per batch; new
+ * benches are published even when they come without new ways.
+ *
+ * The radius may grow between batches, as in a progressive search; ways and benches that
+ * were outside it before are published once they fall inside.
+ */
+final class WayBatchPublisher {
+
+    private final double lat;
+    private final double lon;
+    private double radius;
+    private final double cosLat;
+    private final TrailBatchListener listener;
+
+    private final Set<Long> seenWays = new HashSet<>();
+    private final Set<Long> seenBenches = new HashSet<>();
+    private final List<OSMNode> benches = new ArrayList<>();
+    private int publishedWays;
+
+    WayBatchPublisher(double lat, double lon, double radius, TrailBatchListener listener) {
+        this.lat = lat;
+        this.lon = lon;
+        this.radius = radius;
+        this.cosLat = GeoMath.cosLatitude(lat);
+        this.listener = listener;
+    }
+
+    void setRadius(double radius) {
+        if (radius < this.radius) {
+            throw new IllegalArgumentException("The radius can only grow");
+        }
+        this.radius = radius;
+    }
+
+    void publish(List<OSMWay> ways, List<OSMNode> newBenches) {
+        int knownBenches = benches.size();
+        for (OSMNode bench : newBenches) {
+            if (!seenBenches.contains(bench.getId())
+                    && GeoMath.distance(bench.getLatitude(), bench.getLongitude(), lat, lon, cosLat) <= radius) {
+                seenBenches.add(bench.getId());
+                benches.add(bench);
+            }
+        }
+
+        List<RankedWay> ranked = new ArrayList<>();
+        for (OSMWay way : ways) {
+            if (seenWays.contains(way.getId())) {
+                continue;
+            }
+            double distance = GeoMath.distanceToNearestNode(way, lat, lon);
+            if (distance <= radius) {
+                seenWays.add(way.getId());
+                ranked.add(new RankedWay(way, distance));
+            }
+        }
+        // Benches alone still make a batch, so trails published earlier can count them
+        if (ranked.isEmpty() && benches.size() == knownBenches) {
+            return;
+        }
+        Collections.sort(ranked, (a, b) -> Double.compare(a.distance, b.distance));
+
+        List<OSMWay> batch = new ArrayList<>(ranked.size());
+        for (RankedWay rankedWay : ranked) {
+            batch.add(rankedWay.way);
+        }
+        publishedWays += batch.size();
+        listener.onTrailBatch(new TrailQueryResult(batch, Collections.unmodifiableList(new ArrayList<>(benches))));
+    }
+
+    int getPublishedWays() {
+        return publishedWays;
+    }
+
+    private static final class RankedWay {
+        final OSMWay way;
+        final double distance;
+
+        RankedWay(OSMWay way, double distance) {
+            this.way = way;
+            this.distance = distance;
+        }
+    }
+}
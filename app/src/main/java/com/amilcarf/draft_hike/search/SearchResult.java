@@ -0,0 +1,60 @@
+package com.amilcarf.draft_hike.search;
+
+import com.amilcarf.draft_hike.models.Trail;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Matches of one query against a {@link TrailSearchIndex}, as positions into its trail list.
+ */
+public final class SearchResult {
+
+    private final TrailSearchIndex index;
+    private final String normalizedQuery;
+    // Null when the query is empty and everything matches
+    private final int[] positions;
+
+    SearchResult(TrailSearchIndex index, String normalizedQuery, int[] positions) {
+        this.index = index;
+        this.normalizedQuery = normalizedQuery;
+        this.positions = positions;
+    }
+
+    public TrailSearchIndex getIndex() {
+        return index;
+    }
+
+    public String getNormalizedQuery() {
+        return normalizedQuery;
+    }
+
+    public int size() {
+        return positions != null ? positions.length : index.size();
+    }
+
+    /**
+     * The matching trails in index order, as a read-only view.
+     */
+    public List<Trail> getTrails() {
+        final List<Trail> trails = index.getTrails();
+        if (positions == null) {
+            return trails;
+        }
+        return new AbstractList<Trail>() {
+            @Override
+            public Trail get(int i) {
+                return trails.get(positions[i]);
+            }
+
+            @Override
+            public int size() {
+                return positions.length;
+            }
+        };
+    }
+
+    int[] getPositions() {
+        return positions;
+    }
+}
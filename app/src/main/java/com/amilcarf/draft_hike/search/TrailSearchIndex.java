@@ -0,0 +1,295 @@
+package com.amilcarf.draft_hike.search;
+
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.util.LongIntHashMap;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable search index over one list of trails.
+ *
+ * Name, description and difficulty are normalized once at build time (lowercased, accents
+ * folded) and joined into one searchable string per trail. A query is split into terms at
+ * whitespace, and a trail matches when every term occurs somewhere in its text, so "lake"
+ * still finds "Lakeside" and "ridge lake" finds "Lake Ridge Trail".
+ *
+ * Terms of three or more characters are narrowed with trigram postings; shorter terms go
+ * through the dictionary of distinct tokens instead of every trail. Candidates are then
+ * confirmed against the normalized text. Results keep the order of the indexed list.
+ */
+public final class TrailSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private final List<Trail> trails;
+    private final String[] texts;
+    // Trigram (three chars packed into a long) -> position in postings
+    private final LongIntHashMap gramIds;
+    private final int[][] postings;
+    private final String[] tokens;
+    private final int[][] tokenPostings;
+
+    private TrailSearchIndex(List<Trail> trails, String[] texts, LongIntHashMap gramIds, int[][] postings,
+                             String[] tokens, int[][] tokenPostings) {
+        this.trails = trails;
+        this.texts = texts;
+        this.gramIds = gramIds;
+        this.postings = postings;
+        this.tokens = tokens;
+        this.tokenPostings = tokenPostings;
+    }
+
+    public static TrailSearchIndex build(List<Trail> trails) {
+        List<Trail> snapshot = Collections.unmodifiableList(new ArrayList<>(trails));
+        String[] texts = new String[snapshot.size()];
+        LongIntHashMap gramIds = new LongIntHashMap(snapshot.size() * 8);
+        List<IntList> gramLists = new ArrayList<>();
+        Map<String, IntList> tokenLists = new HashMap<>();
+
+        for (int i = 0; i < texts.length; i++) {
+            Trail trail = snapshot.get(i);
+            String text = normalize(trail.getName()) + ' '
+                    + normalize(trail.getDescription()) + ' '
+                    + normalize(trail.getDifficulty());
+            texts[i] = text;
+
+            for (int start = 0; start + GRAM <= text.length(); start++) {
+                long gram = pack(text, start);
+                if (gram == -1) {
+                    continue;
+                }
+                int id = gramIds.get(gram);
+                if (id == LongIntHashMap.NOT_FOUND) {
+                    id = gramLists.size();
+                    gramIds.put(gram, id);
+                    gramLists.add(new IntList());
+                }
+                gramLists.get(id).addOnce(i);
+            }
+
+            for (String token : text.split(" ")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                IntList list = tokenLists.get(token);
+                if (list == null) {
+                    list = new IntList();
+                    tokenLists.put(token, list);
+                }
+                list.addOnce(i);
+            }
+        }
+
+        int[][] postings = new int[gramLists.size()][];
+        for (int id = 0; id < postings.length; id++) {
+            postings[id] = gramLists.get(id).toArray();
+        }
+        String[] tokens = new String[tokenLists.size()];
+        int[][] tokenPostings = new int[tokens.length][];
+        int t = 0;
+        for (Map.Entry<String, IntList> entry : tokenLists.entrySet()) {
+            tokens[t] = entry.getKey();
+            tokenPostings[t] = entry.getValue().toArray();
+            t++;
+        }
+        return new TrailSearchIndex(snapshot, texts, gramIds, postings, tokens, tokenPostings);
+    }
+
+    public int size() {
+        return trails.size();
+    }
+
+    public List<Trail> getTrails() {
+        return trails;
+    }
+
+    /**
+     * Runs a query from scratch.
+     */
+    public SearchResult search(String query) {
+        return search(query, null);
+    }
+
+    /**
+     * Runs a query, reusing the previous result when it came from this index and the new
+     * query only extends it: typing more can only remove matches, so just the previous
+     * matches need checking.
+     */
+    public SearchResult search(String query, SearchResult previous) {
+        String normalized = normalize(query).trim();
+        String[] terms = normalized.isEmpty() ? new String[0] : normalized.split("\\s+");
+        if (terms.length == 0) {
+            return new SearchResult(this, normalized, null);
+        }
+
+        int[] candidates;
+        if (previous != null && previous.getIndex() == this
+                && !previous.getNormalizedQuery().isEmpty()
+                && normalized.startsWith(previous.getNormalizedQuery())) {
+            candidates = previous.getPositions();
+        } else {
+            candidates = candidates(terms);
+        }
+
+        int[] matches = new int[candidates.length];
+        int count = 0;
+        for (int position : candidates) {
+            if (matchesAll(texts[position], terms)) {
+                matches[count++] = position;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(matches, 0, result, 0, count);
+        return new SearchResult(this, normalized, result);
+    }
+
+    // Narrows to trails that can contain every term, using the most selective postings
+    private int[] candidates(String[] terms) {
+        int[] best = null;
+        for (String term : terms) {
+            int[] list = term.length() >= GRAM ? gramCandidates(term) : tokenCandidates(term);
+            if (best == null || list.length < best.length) {
+                best = list;
+            }
+            if (best.length == 0) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private int[] gramCandidates(String term) {
+        int[] result = null;
+        for (int start = 0; start + GRAM <= term.length(); start++) {
+            long gram = pack(term, start);
+            int id = gram == -1 ? LongIntHashMap.NOT_FOUND : gramIds.get(gram);
+            if (id == LongIntHashMap.NOT_FOUND) {
+                return new int[0];
+            }
+            result = result == null ? postings[id] : intersect(result, postings[id]);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int[] tokenCandidates(String term) {
+        boolean[] hit = new boolean[texts.length];
+        int count = 0;
+        for (int t = 0; t < tokens.length; t++) {
+            if (tokens[t].contains(term)) {
+                for (int position : tokenPostings[t]) {
+                    if (!hit[position]) {
+                        hit[position] = true;
+                        count++;
+                    }
+                }
+            }
+        }
+        int[] result = new int[count];
+        int next = 0;
+        for (int position = 0; position < hit.length && next < count; position++) {
+            if (hit[position]) {
+                result[next++] = position;
+            }
+        }
+        return result;
+    }
+
+    private static boolean matchesAll(String text, String[] terms) {
+        for (String term : terms) {
+            if (!text.contains(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(out, 0, result, 0, count);
+        return result;
+    }
+
+    // Packs three chars into a key, or returns -1 for a gram spanning a token boundary
+    private static long pack(String text, int start) {
+        char a = text.charAt(start);
+        char b = text.charAt(start + 1);
+        char c = text.charAt(start + 2);
+        if (a == ' ' || b == ' ' || c == ' ') {
+            return -1;
+        }
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    /**
+     * Lowercases and strips accents, so "Sentier du Pr&eacute;" and "sentier du pre" compare equal.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // Growable ascending int list; positions are added in order, so a repeat is always last
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            System.arraycopy(values, 0, result, 0, size);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.amilcarf.draft_hike.search;
+
+import com.amilcarf.draft_hike.models.Trail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs trail searches on a background executor and delivers results on another (the main
+ * thread in the app).
+ *
+ * The index is rebuilt lazily: {@link #setTrails} only records the new dataset, and the next
+ * search builds the index once, however many updates arrived in between. Consecutive
+ * searches on the same index reuse the previous result when the query extends it. A result
+ * is only delivered if no newer query or dataset has been submitted since.
+ */
+public class TrailSearcher {
+
+    public interface Callback {
+        void onResults(String query, List<Trail> trails);
+    }
+
+    private final Executor background;
+    private final Executor delivery;
+    private final Callback callback;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Only touched on the background executor, which must run tasks one at a time
+    private List<Trail> pendingTrails = new ArrayList<>();
+    private TrailSearchIndex index;
+    private SearchResult lastResult;
+
+    public TrailSearcher(Executor background, Executor delivery, Callback callback) {
+        this.background = background;
+        this.delivery = delivery;
+        this.callback = callback;
+    }
+
+    /**
+     * Replaces the searched trails. Results of searches still in flight are dropped, so call
+     * {@link #search} afterwards to refresh an active query.
+     */
+    public void setTrails(List<Trail> trails) {
+        final List<Trail> snapshot = new ArrayList<>(trails);
+        generation.incrementAndGet();
+        background.execute(() -> {
+            pendingTrails = snapshot;
+            index = null;
+            lastResult = null;
+        });
+    }
+
+    public void search(String query) {
+        final int submitted = generation.incrementAndGet();
+        background.execute(() -> run(query, submitted));
+    }
+
+    private void run(String query, int submitted) {
+        if (submitted != generation.get()) {
+            // A newer query is queued behind this one
+            return;
+        }
+        if (index == null) {
+            index = TrailSearchIndex.build(pendingTrails);
+            pendingTrails = null;
+        }
+        SearchResult result = index.search(query, lastResult);
+        lastResult = result;
+        // Copy so the receiver can keep the list after later searches
+        final List<Trail> trails = new ArrayList<>(result.getTrails());
+        delivery.execute(() -> {
+            if (submitted == generation.get()) {
+                callback.onResults(query, trails);
+            }
+        });
+    }
+}
@@ -0,0 +1,380 @@
+package com.amilcarf.draft_hike.storage;
+
+import com.amilcarf.draft_hike.models.Trail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary store for cached trails, read through a memory-mapped buffer.
+ *
+ * Layout: an 8 byte header (magic, format version, reserved) followed by records of
+ * [int payload length][int CRC32 of payload][byte flags][payload]. A record supersedes
+ * any earlier record with the same trail id, and a record with the deleted flag removes
+ * it, so updating one trail appends one record instead of rewriting the file. The id index
+ * is built by scanning record headers on first use. A record with a bad length or checksum
+ * marks the end of valid data (for example after a crash mid-write) and is cut off by the
+ * next write. The file is compacted once superseded records outnumber live ones.
+ */
+public class TrailCacheFile {
+
+    private static final int MAGIC = 0x44485443; // "DHTC"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final byte FLAG_DELETED = 1;
+    private static final int MIN_COMPACT_RECORDS = 64;
+
+    private final File file;
+
+    // Live records by trail id, in first-insertion order
+    private LinkedHashMap<String, Entry> index;
+    private long validEnd;
+    private int deadRecords;
+
+    private byte[] scratch = new byte[512];
+    private final CRC32 crc = new CRC32();
+
+    private static final class Entry {
+        final long offset;
+        final int length;
+        final int checksum;
+
+        Entry(long offset, int length, int checksum) {
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
+    public TrailCacheFile(File file) {
+        this.file = file;
+    }
+
+    public synchronized boolean exists() {
+        return file.exists() && file.length() > HEADER_SIZE;
+    }
+
+    /**
+     * Decodes every live trail straight from the mapped file.
+     */
+    public synchronized List<Trail> readAll() throws IOException {
+        ensureIndex();
+        List<Trail> trails = new ArrayList<>(index.size());
+        if (index.isEmpty()) {
+            return trails;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, validEnd);
+            for (Entry entry : index.values()) {
+                buffer.position((int) entry.offset + RECORD_HEADER_SIZE);
+                trails.add(decode(buffer, entry.length));
+            }
+        }
+        return trails;
+    }
+
+    /**
+     * Makes the file hold exactly the given trails. Unchanged trails are left in place,
+     * changed ones are appended and trails no longer present get a delete record.
+     */
+    public synchronized void replaceAll(List<Trail> trails) throws IOException {
+        ensureIndex();
+        Set<String> keep = new HashSet<>();
+        List<byte[]> records = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (Trail trail : trails) {
+            keep.add(trail.getId());
+            byte[] payload = encode(trail);
+            if (!isCurrent(trail.getId(), payload)) {
+                records.add(payload);
+                ids.add(trail.getId());
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String id : index.keySet()) {
+            if (!keep.contains(id)) {
+                removed.add(id);
+            }
+        }
+        append(ids, records, removed);
+    }
+
+    /**
+     * Adds or updates a single trail.
+     */
+    public synchronized void put(Trail trail) throws IOException {
+        ensureIndex();
+        byte[] payload = encode(trail);
+        if (isCurrent(trail.getId(), payload)) {
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        ids.add(trail.getId());
+        List<byte[]> records = new ArrayList<>();
+        records.add(payload);
+        append(ids, records, new ArrayList<String>());
+    }
+
+    public synchronized void remove(String id) throws IOException {
+        ensureIndex();
+        if (index.containsKey(id)) {
+            List<String> removed = new ArrayList<>();
+            removed.add(id);
+            append(new ArrayList<String>(), new ArrayList<byte[]>(), removed);
+        }
+    }
+
+    public synchronized int size() throws IOException {
+        ensureIndex();
+        return index.size();
+    }
+
+    private boolean isCurrent(String id, byte[] payload) {
+        Entry entry = index.get(id);
+        return entry != null && entry.length == payload.length && entry.checksum == checksum(payload, payload.length);
+    }
+
+    private void append(List<String> ids, List<byte[]> payloads, List<String> removed) throws IOException {
+        if (payloads.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            if (validEnd == 0) {
+                channel.truncate(0);
+                writeHeader(channel);
+                validEnd = HEADER_SIZE;
+            }
+            // Drops anything after the last valid record
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+
+            for (int i = 0; i < payloads.size(); i++) {
+                byte[] payload = payloads.get(i);
+                int checksum = checksum(payload, payload.length);
+                writeRecord(channel, payload, checksum, (byte) 0);
+                Entry previous = index.put(ids.get(i), new Entry(validEnd, payload.length, checksum));
+                if (previous != null) {
+                    deadRecords++;
+                }
+                validEnd += RECORD_HEADER_SIZE + payload.length;
+            }
+            for (String id : removed) {
+                byte[] payload = encodeString(id);
+                writeRecord(channel, payload, checksum(payload, payload.length), FLAG_DELETED);
+                index.remove(id);
+                // The delete record and the record it removes are both dead
+                deadRecords += 2;
+                validEnd += RECORD_HEADER_SIZE + payload.length;
+            }
+        }
+
+        if (deadRecords >= MIN_COMPACT_RECORDS && deadRecords > index.size()) {
+            compact();
+        }
+    }
+
+    // Rewrites the file with only live records, through a temporary file and a rename
+    private void compact() throws IOException {
+        List<Trail> live = readAll();
+        File temp = new File(file.getPath() + ".tmp");
+        LinkedHashMap<String, Entry> newIndex = new LinkedHashMap<>();
+        long end = HEADER_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            writeHeader(channel);
+            for (Trail trail : live) {
+                byte[] payload = encode(trail);
+                int checksum = checksum(payload, payload.length);
+                writeRecord(channel, payload, checksum, (byte) 0);
+                newIndex.put(trail.getId(), new Entry(end, payload.length, checksum));
+                end += RECORD_HEADER_SIZE + payload.length;
+            }
+            channel.force(false);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        index = newIndex;
+        validEnd = end;
+        deadRecords = 0;
+    }
+
+    private void ensureIndex() throws IOException {
+        if (index != null) {
+            return;
+        }
+        index = new LinkedHashMap<>();
+        validEnd = 0;
+        deadRecords = 0;
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                // Unknown format; the next write starts a new file
+                return;
+            }
+            buffer.position(HEADER_SIZE);
+            validEnd = HEADER_SIZE;
+
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                long offset = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                byte flags = buffer.get();
+                if (length < 2 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = readBytes(buffer, length);
+                if (checksum(payload, length) != checksum) {
+                    break;
+                }
+                ByteBuffer view = ByteBuffer.wrap(payload, 0, length);
+                String id = readString(view);
+                if ((flags & FLAG_DELETED) != 0) {
+                    index.remove(id);
+                    deadRecords += 2;
+                } else if (index.put(id, new Entry(offset, length, checksum)) != null) {
+                    deadRecords++;
+                }
+                validEnd = buffer.position();
+            }
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        header.flip();
+        channel.write(header, 0);
+        channel.position(HEADER_SIZE);
+    }
+
+    private static void writeRecord(FileChannel channel, byte[] payload, int checksum, byte flags)
+            throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(checksum).put(flags).put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private Trail decode(ByteBuffer buffer, int length) {
+        byte[] payload = readBytes(buffer, length);
+        ByteBuffer view = ByteBuffer.wrap(payload, 0, length);
+        Trail trail = new Trail();
+        trail.setId(readString(view));
+        trail.setName(readString(view));
+        trail.setDistance(view.getDouble());
+        trail.setDuration(readString(view));
+        trail.setBenchCount(view.getInt());
+        trail.setDifficulty(readString(view));
+        trail.setStatus(readString(view));
+        trail.setDescription(readString(view));
+        trail.setFavorite(view.get() != 0);
+        return trail;
+    }
+
+    private static byte[] encode(Trail trail) {
+        byte[][] strings = {
+                utf8(trail.getId()), utf8(trail.getName()), utf8(trail.getDuration()),
+                utf8(trail.getDifficulty()), utf8(trail.getStatus()), utf8(trail.getDescription())
+        };
+        int size = 8 + 4 + 1;
+        for (byte[] s : strings) {
+            size += 2 + (s != null ? s.length : 0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        putString(buffer, strings[0]);
+        putString(buffer, strings[1]);
+        buffer.putDouble(trail.getDistance());
+        putString(buffer, strings[2]);
+        buffer.putInt(trail.getBenchCount());
+        putString(buffer, strings[3]);
+        putString(buffer, strings[4]);
+        putString(buffer, strings[5]);
+        buffer.put((byte) (trail.isFavorite() ? 1 : 0));
+        return buffer.array();
+    }
+
+    private static byte[] encodeString(String value) {
+        byte[] bytes = utf8(value);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + bytes.length);
+        putString(buffer, bytes);
+        return buffer.array();
+    }
+
+    // Strings are stored as an unsigned short length and UTF-8 bytes; 0xFFFF means null
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) 0xFFFF);
+            return;
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == 0xFFFF) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < 0xFFFF) {
+            return bytes;
+        }
+        // Longer values would not fit the length prefix; cut before a character, not inside one
+        int length = 0xFFFE;
+        while ((bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    // Copies a record into the reusable scratch buffer
+    private byte[] readBytes(ByteBuffer buffer, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(scratch, 0, length);
+        return scratch;
+    }
+
+    private int checksum(byte[] payload, int length) {
+        crc.reset();
+        crc.update(payload, 0, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,144 @@
+package com.amilcarf.draft_hike.tiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tiles pinned for offline use, one file per tile like the disk tier of TileCache.
+ *
+ * Unlike the cache, tiles here never expire and are never trimmed; they stay until the
+ * store is cleared. Which tiles are present is known from the file names alone, so a
+ * download can be resumed without reading any tile back. A small LRU keeps recently read
+ * tiles in memory.
+ */
+public class OfflineTileStore {
+
+    private static final String FILE_SUFFIX = ".tile";
+    private static final int MEMORY_TILES = 64;
+
+    private final File directory;
+    private final Set<String> keys = new HashSet<>();
+    private final LinkedHashMap<Tile, TileData> memory =
+            new LinkedHashMap<Tile, TileData>(MEMORY_TILES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Tile, TileData> eldest) {
+                    return size() > MEMORY_TILES;
+                }
+            };
+    private long sizeBytes;
+
+    public OfflineTileStore(File directory) {
+        this.directory = directory;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                keys.add(name.substring(0, name.length() - FILE_SUFFIX.length()));
+                sizeBytes += file.length();
+            }
+        }
+    }
+
+    public synchronized boolean contains(Tile tile) {
+        return keys.contains(tile.key());
+    }
+
+    /**
+     * Returns the stored data for a tile, or null when it was never downloaded.
+     */
+    public TileData get(Tile tile) {
+        synchronized (this) {
+            if (!keys.contains(tile.key())) {
+                return null;
+            }
+            TileData data = memory.get(tile);
+            if (data != null) {
+                return data;
+            }
+        }
+
+        File file = fileFor(tile);
+        TileData data;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            data = TileData.readFrom(in);
+        } catch (IOException e) {
+            // Corrupt or outdated file; drop it so the next download fetches the tile again
+            synchronized (this) {
+                if (keys.remove(tile.key())) {
+                    sizeBytes -= file.length();
+                }
+            }
+            file.delete();
+            return null;
+        }
+        synchronized (this) {
+            memory.put(tile, data);
+        }
+        return data;
+    }
+
+    /**
+     * Stores a tile, replacing an earlier copy, and returns the bytes written.
+     */
+    public long put(Tile tile, TileData data) throws IOException {
+        File file = fileFor(tile);
+        File temp = new File(directory, tile.key() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            data.writeTo(out);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            long previous = keys.contains(tile.key()) ? file.length() : 0;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not store tile " + tile);
+            }
+            keys.add(tile.key());
+            memory.put(tile, data);
+            sizeBytes += file.length() - previous;
+            return file.length();
+        }
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    /**
+     * Total size of the stored tile files.
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized void clear() {
+        for (String key : keys) {
+            new File(directory, key + FILE_SUFFIX).delete();
+        }
+        keys.clear();
+        memory.clear();
+        sizeBytes = 0;
+    }
+
+    private File fileFor(Tile tile) {
+        return new File(directory, tile.key() + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,159 @@
+package com.amilcarf.draft_hike.tiles;
+
+import com.amilcarf.draft_hike.geo.GeoMath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A slippy-map (Web Mercator) tile. Tiles are the unit of caching for Overpass results,
+ * so that lookups around nearby points resolve to the same keys.
+ */
+public final class Tile {
+
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private final int zoom;
+    private final int x;
+    private final int y;
+
+    public Tile(int zoom, int x, int y) {
+        this.zoom = zoom;
+        this.x = x;
+        this.y = y;
+    }
+
+    public static Tile containing(double lat, double lon, int zoom) {
+        return new Tile(zoom, tileX(lon, zoom), tileY(lat, zoom));
+    }
+
+    /**
+     * Returns the tiles intersecting a bounding box, row by row from north-west.
+     */
+    public static List<Tile> covering(double south, double west, double north, double east, int zoom) {
+        int minX = tileX(west, zoom);
+        int maxX = tileX(east, zoom);
+        int minY = tileY(north, zoom);
+        int maxY = tileY(south, zoom);
+
+        List<Tile> tiles = new ArrayList<>((maxX - minX + 1) * (maxY - minY + 1));
+        for (int ty = minY; ty <= maxY; ty++) {
+            for (int tx = minX; tx <= maxX; tx++) {
+                tiles.add(new Tile(zoom, tx, ty));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Returns the tiles that intersect a circle, leaving out corner tiles of the bounding
+     * box that lie entirely outside it.
+     */
+    public static List<Tile> coveringRadius(double lat, double lon, double radiusMeters, int zoom) {
+        double dLat = radiusMeters / GeoMath.METERS_PER_DEGREE;
+        double dLon = radiusMeters / (GeoMath.METERS_PER_DEGREE * GeoMath.cosLatitude(lat));
+        List<Tile> box = covering(lat - dLat, lon - dLon, lat + dLat, lon + dLon, zoom);
+
+        List<Tile> tiles = new ArrayList<>(box.size());
+        for (Tile tile : box) {
+            if (tile.distanceTo(lat, lon) <= radiusMeters) {
+                tiles.add(tile);
+            }
+        }
+        return tiles;
+    }
+
+    public int getZoom() {
+        return zoom;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public double getNorth() {
+        return latitudeOf(y, zoom);
+    }
+
+    public double getSouth() {
+        return latitudeOf(y + 1, zoom);
+    }
+
+    public double getWest() {
+        return longitudeOf(x, zoom);
+    }
+
+    public double getEast() {
+        return longitudeOf(x + 1, zoom);
+    }
+
+    public boolean contains(double lat, double lon) {
+        return lat >= getSouth() && lat < getNorth() && lon >= getWest() && lon < getEast();
+    }
+
+    public boolean intersects(double south, double west, double north, double east) {
+        return south <= getNorth() && north >= getSouth() && west <= getEast() && east >= getWest();
+    }
+
+    /**
+     * Approximate distance in meters from a point to the nearest point of this tile,
+     * 0 when the point is inside.
+     */
+    public double distanceTo(double lat, double lon) {
+        double nearestLat = Math.max(getSouth(), Math.min(lat, getNorth()));
+        double nearestLon = Math.max(getWest(), Math.min(lon, getEast()));
+        return GeoMath.distance(lat, lon, nearestLat, nearestLon, GeoMath.cosLatitude(lat));
+    }
+
+    /**
+     * Stable identifier used for cache keys and file names.
+     */
+    public String key() {
+        return zoom + "_" + x + "_" + y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Tile)) return false;
+        Tile other = (Tile) o;
+        return zoom == other.zoom && x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return (zoom * 31 + x) * 1_000_003 + y;
+    }
+
+    @Override
+    public String toString() {
+        return zoom + "/" + x + "/" + y;
+    }
+
+    private static int tileX(double lon, int zoom) {
+        int n = 1 << zoom;
+        int tx = (int) Math.floor((lon + 180.0) / 360.0 * n);
+        return Math.max(0, Math.min(n - 1, tx));
+    }
+
+    private static int tileY(double lat, int zoom) {
+        int n = 1 << zoom;
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+        double latRad = Math.toRadians(clamped);
+        int ty = (int) Math.floor((1.0 - Math.log(Math.tan(latRad) + 1.0 / Math.cos(latRad)) / Math.PI) / 2.0 * n);
+        return Math.max(0, Math.min(n - 1, ty));
+    }
+
+    private static double longitudeOf(int tx, int zoom) {
+        return tx / (double) (1 << zoom) * 360.0 - 180.0;
+    }
+
+    private static double latitudeOf(int ty, int zoom) {
+        double n = Math.PI - 2.0 * Math.PI * ty / (1 << zoom);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+}
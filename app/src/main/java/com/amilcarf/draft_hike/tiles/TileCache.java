@@ -0,0 +1,185 @@
+package com.amilcarf.draft_hike.tiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-tier cache of per-tile Overpass results: an in-memory LRU in front of one file per
+ * tile on disk. Entries older than the TTL count as misses in both tiers.
+ */
+public class TileCache {
+
+    /**
+     * Time source, replaceable in tests.
+     */
+    public interface Clock {
+        long now();
+    }
+
+    private static final String FILE_SUFFIX = ".tile";
+
+    private final File directory;
+    private final long ttlMillis;
+    private final int maxDiskTiles;
+    private final Clock clock;
+    private final LinkedHashMap<Tile, TileData> memory;
+
+    private int memoryHits;
+    private int diskHits;
+    private int misses;
+
+    public TileCache(File directory, int memoryCapacity, int maxDiskTiles, long ttlMillis) {
+        this(directory, memoryCapacity, maxDiskTiles, ttlMillis, System::currentTimeMillis);
+    }
+
+    public TileCache(File directory, int memoryCapacity, int maxDiskTiles, long ttlMillis, Clock clock) {
+        this.directory = directory;
+        this.ttlMillis = ttlMillis;
+        this.maxDiskTiles = maxDiskTiles;
+        this.clock = clock;
+        this.memory = new LinkedHashMap<Tile, TileData>(memoryCapacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Tile, TileData> eldest) {
+                return size() > memoryCapacity;
+            }
+        };
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * Returns the cached data for a tile, or null when it is missing or expired.
+     */
+    public TileData get(Tile tile) {
+        synchronized (memory) {
+            TileData data = memory.get(tile);
+            if (data != null) {
+                if (isFresh(data)) {
+                    memoryHits++;
+                    return data;
+                }
+                memory.remove(tile);
+            }
+        }
+
+        TileData data = readFromDisk(tile);
+        synchronized (memory) {
+            if (data != null && isFresh(data)) {
+                diskHits++;
+                memory.put(tile, data);
+                return data;
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    public void put(Tile tile, TileData data) {
+        synchronized (memory) {
+            memory.put(tile, data);
+        }
+        writeToDisk(tile, data);
+    }
+
+    public void clearMemory() {
+        synchronized (memory) {
+            memory.clear();
+        }
+    }
+
+    public int getMemoryHits() {
+        synchronized (memory) {
+            return memoryHits;
+        }
+    }
+
+    public int getDiskHits() {
+        synchronized (memory) {
+            return diskHits;
+        }
+    }
+
+    public int getMisses() {
+        synchronized (memory) {
+            return misses;
+        }
+    }
+
+    /**
+     * Fraction of lookups served from either tier, 0 before the first lookup.
+     */
+    public double getHitRate() {
+        synchronized (memory) {
+            int lookups = memoryHits + diskHits + misses;
+            return lookups == 0 ? 0 : (memoryHits + diskHits) / (double) lookups;
+        }
+    }
+
+    private boolean isFresh(TileData data) {
+        return clock.now() - data.getFetchedAt() < ttlMillis;
+    }
+
+    private File fileFor(Tile tile) {
+        return new File(directory, tile.key() + FILE_SUFFIX);
+    }
+
+    private TileData readFromDisk(Tile tile) {
+        File file = fileFor(tile);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            return TileData.readFrom(in);
+        } catch (IOException e) {
+            // Corrupt or outdated file; drop it and fetch the tile again
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(Tile tile, TileData data) {
+        File file = fileFor(tile);
+        File temp = new File(directory, tile.key() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            data.writeTo(out);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    // Keeps the disk tier bounded by dropping the least recently written tiles
+    private void trimDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null || files.length <= maxDiskTiles) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - maxDiskTiles; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.amilcarf.draft_hike.tiles;
+
+import com.amilcarf.draft_hike.models.NodeStore;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The trails and benches Overpass returned for one tile.
+ *
+ * A way is stored in every tile its bounding box touches, with its full geometry, so any
+ * union of tiles yields complete ways. Benches are stored in the tile containing them.
+ */
+public class TileData {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final List<OSMWay> ways;
+    private final List<OSMNode> benches;
+    private final long fetchedAt;
+
+    public TileData(List<OSMWay> ways, List<OSMNode> benches, long fetchedAt) {
+        this.ways = ways;
+        this.benches = benches;
+        this.fetchedAt = fetchedAt;
+    }
+
+    public List<OSMWay> getWays() {
+        return ways;
+    }
+
+    public List<OSMNode> getBenches() {
+        return benches;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(fetchedAt);
+
+        out.writeInt(ways.size());
+        for (OSMWay way : ways) {
+            out.writeLong(way.getId());
+            writeTags(out, way.getTags());
+            NodeStore store = way.getNodeStore();
+            int count = way.getNodeCount();
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                int index = way.getNodeIndex(i);
+                out.writeLong(store.getId(index));
+                out.writeInt(store.getLatitudeE7(index));
+                out.writeInt(store.getLongitudeE7(index));
+            }
+        }
+
+        out.writeInt(benches.size());
+        for (OSMNode bench : benches) {
+            out.writeLong(bench.getId());
+            out.writeDouble(bench.getLatitude());
+            out.writeDouble(bench.getLongitude());
+            writeTags(out, bench.getTags());
+        }
+    }
+
+    static TileData readFrom(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported tile format " + version);
+        }
+        long fetchedAt = in.readLong();
+
+        int wayCount = in.readInt();
+        List<OSMWay> ways = new ArrayList<>(wayCount);
+        NodeStore store = new NodeStore();
+        for (int w = 0; w < wayCount; w++) {
+            OSMWay way = new OSMWay(in.readLong(), store);
+            readTags(in, way.getTags());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                double lat = in.readInt() / 1e7;
+                double lon = in.readInt() / 1e7;
+                way.addNodeIndex(store.add(id, lat, lon));
+            }
+            ways.add(way);
+        }
+
+        int benchCount = in.readInt();
+        List<OSMNode> benches = new ArrayList<>(benchCount);
+        for (int b = 0; b < benchCount; b++) {
+            OSMNode bench = new OSMNode(in.readLong(), in.readDouble(), in.readDouble());
+            int tagCount = in.readInt();
+            for (int t = 0; t < tagCount; t++) {
+                bench.addTag(in.readUTF(), in.readUTF());
+            }
+            benches.add(bench);
+        }
+        return new TileData(ways, benches, fetchedAt);
+    }
+
+    private static void writeTags(DataOutputStream out, Map<String, String> tags) throws IOException {
+        out.writeInt(tags.size());
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            out.writeUTF(tag.getKey());
+            out.writeUTF(tag.getValue());
+        }
+    }
+
+    private static void readTags(DataInputStream in, Map<String, String> tags) throws IOException {
+        int count = in.readInt();
+        for (int t = 0; t < count; t++) {
+            tags.put(in.readUTF(), in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.amilcarf.draft_hike.tiles;
+
+import com.amilcarf.draft_hike.geo.GeoMath;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.osm.TrailQueryResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers for turning tile sets into Overpass bounding boxes and back.
+ */
+public final class TileQueries {
+
+    private TileQueries() {
+    }
+
+    /**
+     * Merges horizontally adjacent tiles of the same row into one box each, so a query
+     * for many tiles needs only a few bbox clauses. Each box is {south, west, north, east}.
+     */
+    public static List<double[]> rowBoxes(List<Tile> tiles) {
+        Map<Integer, List<Tile>> rows = new HashMap<>();
+        List<Integer> rowOrder = new ArrayList<>();
+        for (Tile tile : tiles) {
+            List<Tile> row = rows.get(tile.getY());
+            if (row == null) {
+                row = new ArrayList<>();
+                rows.put(tile.getY(), row);
+                rowOrder.add(tile.getY());
+            }
+            row.add(tile);
+        }
+
+        List<double[]> boxes = new ArrayList<>();
+        for (Integer y : rowOrder) {
+            List<Tile> row = rows.get(y);
+            Collections.sort(row, (a, b) -> Integer.compare(a.getX(), b.getX()));
+            Tile runStart = row.get(0);
+            Tile runEnd = runStart;
+            for (int i = 1; i <= row.size(); i++) {
+                Tile next = i < row.size() ? row.get(i) : null;
+                if (next != null && next.getX() == runEnd.getX() + 1) {
+                    runEnd = next;
+                    continue;
+                }
+                boxes.add(new double[]{runStart.getSouth(), runStart.getWest(),
+                        runStart.getNorth(), runEnd.getEast()});
+                if (next != null) {
+                    runStart = next;
+                    runEnd = next;
+                }
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * Distributes one response over the tiles it was fetched for. A way goes to every tile
+     * its bounding box touches; a bench goes to the tile that contains it.
+     */
+    public static Map<Tile, TileData> split(List<Tile> tiles, TrailQueryResult result, long fetchedAt) {
+        Map<Tile, List<OSMWay>> ways = new HashMap<>();
+        Map<Tile, List<OSMNode>> benches = new HashMap<>();
+        for (Tile tile : tiles) {
+            ways.put(tile, new ArrayList<>());
+            benches.put(tile, new ArrayList<>());
+        }
+
+        for (OSMWay way : result.getWays()) {
+            double south = Double.MAX_VALUE, west = Double.MAX_VALUE;
+            double north = -Double.MAX_VALUE, east = -Double.MAX_VALUE;
+            for (int i = 0; i < way.getNodeCount(); i++) {
+                double lat = way.getLatitude(i);
+                double lon = way.getLongitude(i);
+                south = Math.min(south, lat);
+                north = Math.max(north, lat);
+                west = Math.min(west, lon);
+                east = Math.max(east, lon);
+            }
+            for (Tile tile : tiles) {
+                if (tile.intersects(south, west, north, east)) {
+                    ways.get(tile).add(way);
+                }
+            }
+        }
+
+        for (OSMNode bench : result.getBenches()) {
+            for (Tile tile : tiles) {
+                if (tile.contains(bench.getLatitude(), bench.getLongitude())) {
+                    benches.get(tile).add(bench);
+                    break;
+                }
+            }
+        }
+
+        Map<Tile, TileData> data = new HashMap<>();
+        for (Tile tile : tiles) {
+            data.put(tile, new TileData(ways.get(tile), benches.get(tile), fetchedAt));
+        }
+        return data;
+    }
+
+    /**
+     * Unions tile results around a point: ways that come within the radius and benches
+     * inside it, each once, in tile order. At most maxWays ways are returned.
+     */
+    public static TrailQueryResult merge(List<Tile> tiles, Map<Tile, TileData> data,
+                                         double lat, double lon, double radius, int maxWays) {
+        List<OSMWay> ways = new ArrayList<>();
+        List<OSMNode> benches = new ArrayList<>();
+        Set<Long> seenWays = new HashSet<>();
+        Set<Long> seenBenches = new HashSet<>();
+        double cosLat = GeoMath.cosLatitude(lat);
+
+        for (Tile tile : tiles) {
+            TileData tileData = data.get(tile);
+            if (tileData == null) {
+                continue;
+            }
+            for (OSMWay way : tileData.getWays()) {
+                if (ways.size() < maxWays && seenWays.add(way.getId())
+                        && wayWithin(way, lat, lon, cosLat, radius)) {
+                    ways.add(way);
+                }
+            }
+            for (OSMNode bench : tileData.getBenches()) {
+                if (seenBenches.add(bench.getId())
+                        && GeoMath.distance(bench.getLatitude(), bench.getLongitude(), lat, lon, cosLat) <= radius) {
+                    benches.add(bench);
+                }
+            }
+        }
+        return new TrailQueryResult(ways, benches);
+    }
+
+    private static boolean wayWithin(OSMWay way, double lat, double lon, double cosLat, double radius) {
+        for (int i = 0; i < way.getNodeCount(); i++) {
+            if (GeoMath.distance(way.getLatitude(i), way.getLongitude(i), lat, lon, cosLat) <= radius) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
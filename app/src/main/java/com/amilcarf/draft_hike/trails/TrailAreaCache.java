@@ -0,0 +1,88 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.geo.GeoMath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small LRU of values for search areas, looked up by position rather than exact key.
+ *
+ * A lookup matches an area of the same radius whose center is within matchFraction of that
+ * radius, so a slightly different location fix (e.g. after a rotation) finds the area
+ * searched a moment ago. Not thread safe.
+ */
+final class TrailAreaCache<V> {
+
+    private final int capacity;
+    private final double matchFraction;
+    // Most recently used first
+    private final List<Area<V>> areas = new ArrayList<>();
+
+    TrailAreaCache(int capacity, double matchFraction) {
+        this.capacity = capacity;
+        this.matchFraction = matchFraction;
+    }
+
+    /**
+     * Returns the value of the nearest matching area, or null.
+     */
+    V get(double lat, double lon, double radius) {
+        int index = find(lat, lon, radius);
+        if (index < 0) {
+            return null;
+        }
+        Area<V> area = areas.remove(index);
+        areas.add(0, area);
+        return area.value;
+    }
+
+    /**
+     * Stores a value for the area around lat/lon, replacing a matching area.
+     */
+    void put(double lat, double lon, double radius, V value) {
+        int index = find(lat, lon, radius);
+        if (index >= 0) {
+            areas.remove(index);
+        }
+        areas.add(0, new Area<>(lat, lon, radius, value));
+        while (areas.size() > capacity) {
+            areas.remove(areas.size() - 1);
+        }
+    }
+
+    int size() {
+        return areas.size();
+    }
+
+    private int find(double lat, double lon, double radius) {
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < areas.size(); i++) {
+            Area<V> area = areas.get(i);
+            if (area.radius != radius) {
+                continue;
+            }
+            double distance = GeoMath.haversine(lat, lon, area.lat, area.lon);
+            if (distance <= radius * matchFraction && distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private static final class Area<V> {
+        final double lat;
+        final double lon;
+        final double radius;
+        final V value;
+
+        Area(double lat, double lon, double radius, V value) {
+            this.lat = lat;
+            this.lon = lon;
+            this.radius = radius;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.geo.BenchIndex;
+import com.amilcarf.draft_hike.geo.GeoMath;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.osm.TrailQueryResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Converts streamed way batches into Trail items for one search around the user.
+ *
+ * Unnamed trails are numbered across batches, and the bench index is only rebuilt when a
+ * batch brings new benches; trails converted earlier that have new benches near
+ * them are replaced by copies with the higher count, since the earlier instances may already
+ * have been handed out. With a ranker, each trail is added to it and the ranker measures its
+ * distance from the user; without one, every trail gets the distance to its nearest node.
+ * Not thread safe; feed it from the thread that receives the batches.
+ */
+public class TrailBatchProcessor {
+
+    /**
+     * Nearest first; trails without a known distance go last.
+     */
+    public static final Comparator<Trail> BY_DISTANCE = (a, b) -> {
+        double da = a.getDistanceFromUser();
+        double db = b.getDistanceFromUser();
+        if (Double.isNaN(da) || Double.isNaN(db)) {
+            return Boolean.compare(Double.isNaN(da), Double.isNaN(db));
+        }
+        return Double.compare(da, db);
+    };
+
+    private final double latitude;
+    private final double longitude;
+    private final TrailRanker ranker;
+    private final List<Trail> trails = new ArrayList<>();
+    // The way each trail was converted from, for recounting its benches
+    private final List<OSMWay> ways = new ArrayList<>();
+
+    private BenchIndex benchIndex;
+    private int indexedBenches = -1;
+    private int processedWays;
+
+    public TrailBatchProcessor(double latitude, double longitude) {
+        this(latitude, longitude, null);
+    }
+
+    public TrailBatchProcessor(double latitude, double longitude, TrailRanker ranker) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.ranker = ranker;
+    }
+
+    /**
+     * Converts one batch and returns its trails, nearest first unless a ranker measures them.
+     * Earlier trails whose bench count the batch raised are updated in getTrails() and the
+     * ranker, not returned here.
+     */
+    public List<Trail> process(TrailQueryResult batch) {
+        List<OSMNode> benches = batch.getBenches();
+        if (benchIndex == null || benches.size() != indexedBenches) {
+            // Batches carry every bench seen so far, so a new count means new benches, at the end
+            if (benchIndex != null && !trails.isEmpty()) {
+                countNewBenches(benches.subList(indexedBenches, benches.size()));
+            }
+            benchIndex = new BenchIndex(benches, TrailProcessor.BENCH_MATCH_DISTANCE);
+            indexedBenches = benches.size();
+        }
+
+        List<Trail> converted = new ArrayList<>();
+        for (OSMWay way : batch.getWays()) {
+            Trail trail = TrailProcessor.toTrail(way, benchIndex, ++processedWays);
+            if (trail != null) {
+                if (ranker != null) {
+                    ranker.add(trail, way);
+                } else {
+                    trail.setDistanceFromUser(GeoMath.distanceToNearestNode(way, latitude, longitude));
+                }
+                converted.add(trail);
+                trails.add(trail);
+                ways.add(way);
+            }
+        }
+        Collections.sort(converted, BY_DISTANCE);
+        return converted;
+    }
+
+    private void countNewBenches(List<OSMNode> added) {
+        BenchIndex index = new BenchIndex(added, TrailProcessor.BENCH_MATCH_DISTANCE);
+        for (int i = 0; i < trails.size(); i++) {
+            int near = index.countNear(ways.get(i), TrailProcessor.BENCH_MATCH_DISTANCE);
+            if (near == 0) {
+                continue;
+            }
+            // Trails already returned may have been handed out; change a copy instead
+            Trail updated = new Trail(trails.get(i));
+            updated.setBenchCount(updated.getBenchCount() + near);
+            trails.set(i, updated);
+            if (ranker != null) {
+                ranker.replace(updated);
+            }
+        }
+    }
+
+    /**
+     * Every trail converted so far, nearest first; in conversion order when a ranker measures them.
+     */
+    public List<Trail> getTrails() {
+        List<Trail> sorted = new ArrayList<>(trails);
+        Collections.sort(sorted, BY_DISTANCE);
+        return sorted;
+    }
+
+    /**
+     * Inserts a trail into a list already ordered by {@link #BY_DISTANCE}, after any trails
+     * at the same distance, and returns its position.
+     */
+    public static int insertByDistance(List<Trail> sorted, Trail trail) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BY_DISTANCE.compare(sorted.get(mid), trail) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        sorted.add(low, trail);
+        return low;
+    }
+}
@@ -0,0 +1,58 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.models.Trail;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State of one trail search as seen by the screens observing it: the trails found so far,
+ * nearest first, and whether the search is still running, done or failed.
+ *
+ * Instances are immutable; each new batch produces a new one.
+ */
+public final class TrailLoad {
+
+    public enum Status {
+        LOADING,
+        LOADED,
+        FAILED
+    }
+
+    private final Status status;
+    private final List<Trail> trails;
+    private final Exception error;
+
+    private TrailLoad(Status status, List<Trail> trails, Exception error) {
+        this.status = status;
+        this.trails = Collections.unmodifiableList(trails);
+        this.error = error;
+    }
+
+    static TrailLoad loading(List<Trail> trails) {
+        return new TrailLoad(Status.LOADING, trails, null);
+    }
+
+    static TrailLoad loaded(List<Trail> trails) {
+        return new TrailLoad(Status.LOADED, trails, null);
+    }
+
+    static TrailLoad failed(List<Trail> trails, Exception error) {
+        return new TrailLoad(Status.FAILED, trails, error);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public List<Trail> getTrails() {
+        return trails;
+    }
+
+    /**
+     * Why the search failed, or null.
+     */
+    public Exception getError() {
+        return error;
+    }
+}
@@ -0,0 +1,155 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.geo.BenchIndex;
+import com.amilcarf.draft_hike.geo.GeoMath;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns parsed OSM ways and benches into Trail list items.
+ *
+ * Pure Java so the whole ingest pipeline can run (and be benchmarked) outside Android.
+ */
+public final class TrailProcessor {
+
+    // Benches within this many meters of a trail count as on it
+    public static final double BENCH_MATCH_DISTANCE = 50;
+    public static final int MAX_TRAILS = 10;
+
+    private TrailProcessor() {
+    }
+
+    public static List<Trail> processOSMDataToTrails(List<OSMWay> osmTrails, List<OSMNode> osmBenches) {
+        return processOSMDataToTrails(osmTrails, osmBenches, MAX_TRAILS);
+    }
+
+    public static List<Trail> processOSMDataToTrails(List<OSMWay> osmTrails, List<OSMNode> osmBenches,
+                                                     int maxTrails) {
+        List<Trail> trails = new ArrayList<>();
+
+        // Index benches once so each trail only looks at benches near its own segments
+        BenchIndex benchIndex = new BenchIndex(
+                osmBenches != null ? osmBenches : Collections.<OSMNode>emptyList(), BENCH_MATCH_DISTANCE);
+
+        for (int i = 0; i < Math.min(osmTrails.size(), maxTrails); i++) {
+            Trail trail = toTrail(osmTrails.get(i), benchIndex, i + 1);
+            if (trail != null) {
+                trails.add(trail);
+            }
+        }
+
+        return trails;
+    }
+
+    /**
+     * Builds the list item for one way, or returns null for a way too short to be a trail.
+     * Unnamed ways are called "Trail &lt;number&gt;".
+     */
+    public static Trail toTrail(OSMWay osmWay, BenchIndex benchIndex, int number) {
+        // Calculate trail length
+        double distanceKm = calculateTrailLength(osmWay);
+        if (distanceKm < 0.1) return null; // Skip very short trails
+
+        // Estimate duration
+        int durationMinutes = (int) ((distanceKm / 5.0) * 60);
+        if (durationMinutes < 1) durationMinutes = 5;
+
+        String duration = durationMinutes + " min";
+
+        // Count benches along this trail
+        int benchCount = benchIndex.countNear(osmWay, BENCH_MATCH_DISTANCE);
+
+        // Get trail name
+        String name = osmWay.getTag("name");
+        if (name == null || name.isEmpty()) {
+            name = "Trail " + number;
+        }
+
+        return new Trail(
+                String.valueOf(osmWay.getId()),
+                name,
+                Math.round(distanceKm * 10.0) / 10.0,
+                duration,
+                benchCount,
+                getDifficultyFromTags(osmWay),
+                "Open",
+                generateTrailDescription(osmWay),
+                false
+        );
+    }
+
+    public static double calculateTrailLength(OSMWay way) {
+        if (way.getNodeCount() < 2) {
+            return 1.0;
+        }
+
+        return GeoMath.wayLength(way) / 1000; // Convert to km
+    }
+
+    public static String getDifficultyFromTags(OSMWay way) {
+        String difficulty = way.getTag("trail:difficulty");
+        if (difficulty != null) {
+            return difficulty;
+        }
+
+        String surface = way.getTag("surface");
+        if ("paved".equals(surface) || "asphalt".equals(surface)) {
+            return "Easy";
+        } else if ("gravel".equals(surface) || "compacted".equals(surface)) {
+            return "Medium";
+        }
+
+        return "Medium";
+    }
+
+    public static String generateTrailDescription(OSMWay way) {
+        StringBuilder description = new StringBuilder();
+
+        String name = way.getTag("name");
+        if (name != null) {
+            description.append(name).append(". ");
+        }
+
+        String surface = way.getTag("surface");
+        if (surface != null) {
+            description.append("Surface: ").append(surface).append(". ");
+        }
+
+        if (description.length() == 0) {
+            description.append("A scenic hiking trail suitable for outdoor enthusiasts.");
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * Returns the trails whose name, description or difficulty contains the query, ignoring case.
+     * An empty query matches everything.
+     *
+     * This is the original linear scan; the list screen uses TrailSearchIndex, and this is
+     * kept as its baseline in tests and benchmarks.
+     */
+    public static List<Trail> filterTrails(List<Trail> allTrails, String query) {
+        List<Trail> filtered = new ArrayList<>();
+
+        if (query.isEmpty()) {
+            filtered.addAll(allTrails);
+        } else {
+            String lowerCaseQuery = query.toLowerCase();
+            for (Trail trail : allTrails) {
+                if (trail.getName().toLowerCase().contains(lowerCaseQuery) ||
+                        trail.getDescription().toLowerCase().contains(lowerCaseQuery) ||
+                        trail.getDifficulty().toLowerCase().contains(lowerCaseQuery)) {
+                    filtered.add(trail);
+                }
+            }
+        }
+
+        return filtered;
+    }
+}
@@ -0,0 +1,364 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.geo.GeoMath;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Picks the k trails nearest to the user, measured to the nearest point of each trail's
+ * polyline rather than its nearest node.
+ *
+ * Trail segments are projected to local meters (equirectangular around the first trail)
+ * and bucketed into a uniform grid. A query visits rings of cells outward from the user
+ * until k trails are known to be nearer than anything in the unvisited cells, so only
+ * trails near the user are measured. Every trail keeps its distance from the last query
+ * position, exact or as a lower bound. When the user then moves d meters, no distance
+ * changes by more than d, and none is less than the distance to the trail's bounding box,
+ * so only trails whose bounds could still place them among the k nearest are measured
+ * again. The k nearest are picked with a bounded heap instead of
+ * sorting every trail.
+ *
+ * Not thread safe.
+ */
+public class TrailRanker {
+
+    private final double cellSize;
+    // Projection reference, taken from the first trail added
+    private double cosLat = Double.NaN;
+
+    private final List<Trail> trails = new ArrayList<>();
+    private final Map<String, Integer> indexById = new HashMap<>();
+    // Per trail: its segments are segments[firstSegment[t]..firstSegment[t + 1])
+    private int[] firstSegment = new int[17];
+    // Distance from the anchor; exact, or a lower bound where exact is false
+    private double[] scores = new double[16];
+    private boolean[] exact = new boolean[16];
+    // Bounding box of each trail in projected meters: min x, min y, max x, max y
+    private double[] boxes = new double[64];
+
+    // Segment end points in projected meters; a single-node trail is one zero-length segment
+    private double[] segments = new double[64];
+    private int segmentCount;
+    private final Map<Long, Bucket> cells = new HashMap<>();
+    private int minCellX = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE;
+    private int minCellY = Integer.MAX_VALUE;
+    private int maxCellY = Integer.MIN_VALUE;
+
+    // Position of the last query, which the scores are relative to
+    private boolean anchored;
+    private double anchorX;
+    private double anchorY;
+    private int lastMeasured;
+
+    public TrailRanker(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds a trail measured against the polyline of its way's nodes. Ways without nodes are
+     * ignored.
+     */
+    public void add(Trail trail, OSMWay way) {
+        int count = way.getNodeCount();
+        if (count == 0) {
+            return;
+        }
+        if (Double.isNaN(cosLat)) {
+            cosLat = GeoMath.cosLatitude(way.getLatitude(0));
+        }
+        int index = trails.size();
+        trails.add(trail);
+        indexById.put(trail.getId(), index);
+        ensureTrailCapacity(index + 1);
+
+        double prevX = projectX(way.getLongitude(0));
+        double prevY = projectY(way.getLatitude(0));
+        int box = index * 4;
+        boxes[box] = boxes[box + 2] = prevX;
+        boxes[box + 1] = boxes[box + 3] = prevY;
+        int segmentsAdded = Math.max(1, count - 1);
+        for (int s = 0; s < segmentsAdded; s++) {
+            int next = Math.min(s + 1, count - 1);
+            double x = projectX(way.getLongitude(next));
+            double y = projectY(way.getLatitude(next));
+            addSegment(prevX, prevY, x, y);
+            boxes[box] = Math.min(boxes[box], x);
+            boxes[box + 1] = Math.min(boxes[box + 1], y);
+            boxes[box + 2] = Math.max(boxes[box + 2], x);
+            boxes[box + 3] = Math.max(boxes[box + 3], y);
+            prevX = x;
+            prevY = y;
+        }
+        firstSegment[index + 1] = segmentCount;
+
+        if (anchored) {
+            scores[index] = measure(index, anchorX, anchorY);
+            exact[index] = true;
+        } else {
+            scores[index] = 0;
+            exact[index] = false;
+        }
+    }
+
+    /**
+     * Swaps in a new version of an added trail with the same id, e.g. with an updated bench
+     * count; it keeps the polyline it was added with. Unknown trails are ignored.
+     */
+    public void replace(Trail trail) {
+        Integer index = indexById.get(trail.getId());
+        if (index != null) {
+            trails.set(index, trail);
+        }
+    }
+
+    public int size() {
+        return trails.size();
+    }
+
+    /**
+     * Number of trails measured by the last call to {@link #nearest}.
+     */
+    public int getLastMeasured() {
+        return lastMeasured;
+    }
+
+    /**
+     * Returns copies of the k trails nearest to lat/lon, nearest first, with their distance
+     * from the user set.
+     */
+    public List<Trail> nearest(double lat, double lon, int k) {
+        List<Trail> ranked = new ArrayList<>();
+        if (trails.isEmpty() || k <= 0) {
+            return ranked;
+        }
+        double x = projectX(lon);
+        double y = projectY(lat);
+        double moved = anchored ? Math.hypot(x - anchorX, y - anchorY) : Double.POSITIVE_INFINITY;
+        if (moved <= cellSize) {
+            lastMeasured = update(x, y, moved, k);
+        } else {
+            lastMeasured = search(x, y, k);
+        }
+        anchored = true;
+        anchorX = x;
+        anchorY = y;
+
+        // Every trail that can be among the k nearest is exact now
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k + 1, (a, b) -> {
+            int byScore = Double.compare(scores[b], scores[a]);
+            return byScore != 0 ? byScore : Integer.compare(b, a);
+        });
+        for (int t = 0; t < trails.size(); t++) {
+            if (!exact[t]) {
+                continue;
+            }
+            heap.add(t);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        Trail[] nearestFirst = new Trail[heap.size()];
+        for (int i = nearestFirst.length - 1; i >= 0; i--) {
+            int t = heap.poll();
+            Trail trail = new Trail(trails.get(t));
+            trail.setDistanceFromUser(scores[t]);
+            nearestFirst[i] = trail;
+        }
+        ranked.addAll(Arrays.asList(nearestFirst));
+        return ranked;
+    }
+
+    // Measures trails ring by ring outward from x/y until the k nearest are certain
+    private int search(double x, double y, int k) {
+        double[] best = new double[trails.size()];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        List<Integer> touched = new ArrayList<>();
+
+        int cx = cell(x);
+        int cy = cell(y);
+        int lastRing = Math.max(Math.max(cx - minCellX, maxCellX - cx), Math.max(cy - minCellY, maxCellY - cy));
+        double bound = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring <= Math.max(0, lastRing); ring++) {
+            // Only the border of the ring; the inside was visited before
+            for (int gx = Math.max(cx - ring, minCellX); gx <= Math.min(cx + ring, maxCellX); gx++) {
+                if (gx == cx - ring || gx == cx + ring) {
+                    for (int gy = Math.max(cy - ring, minCellY); gy <= Math.min(cy + ring, maxCellY); gy++) {
+                        visit(gx, gy, x, y, best, touched);
+                    }
+                } else {
+                    visit(gx, cy - ring, x, y, best, touched);
+                    visit(gx, cy + ring, x, y, best, touched);
+                }
+            }
+            if (ring >= lastRing) {
+                bound = Double.POSITIVE_INFINITY;
+                break;
+            }
+            // Anything not yet visited is farther than this
+            bound = ring * cellSize;
+            int certain = 0;
+            for (int t : touched) {
+                if (best[t] <= bound) {
+                    certain++;
+                }
+            }
+            if (certain >= k) {
+                break;
+            }
+        }
+
+        for (int t = 0; t < trails.size(); t++) {
+            exact[t] = best[t] <= bound;
+            scores[t] = exact[t] ? best[t] : Math.max(bound, boxDistance(t, x, y));
+        }
+        return touched.size();
+    }
+
+    private void visit(int gx, int gy, double x, double y, double[] best, List<Integer> touched) {
+        Bucket bucket = cells.get(cellKey(gx, gy));
+        if (bucket == null) {
+            return;
+        }
+        for (int i = 0; i < bucket.size; i++) {
+            int t = bucket.trails[i];
+            if (best[t] == Double.POSITIVE_INFINITY) {
+                touched.add(t);
+            }
+            best[t] = Math.min(best[t], segmentDistance(bucket.segments[i], x, y));
+        }
+    }
+
+    // After a move of at most one cell, measures only trails that may now be among the k nearest
+    private int update(double x, double y, double moved, int k) {
+        // The k-th smallest upper bound; trails that cannot come closer than it stay out
+        PriorityQueue<Double> upper = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(b, a));
+        for (int t = 0; t < trails.size(); t++) {
+            if (exact[t]) {
+                upper.add(scores[t] + moved);
+                if (upper.size() > k) {
+                    upper.poll();
+                }
+            }
+        }
+        double limit = upper.size() < k ? Double.POSITIVE_INFINITY : upper.peek();
+
+        int measured = 0;
+        for (int t = 0; t < trails.size(); t++) {
+            double lower = Math.max(scores[t] - moved, boxDistance(t, x, y));
+            if (lower <= limit) {
+                scores[t] = measure(t, x, y);
+                exact[t] = true;
+                measured++;
+            } else {
+                scores[t] = lower;
+                exact[t] = false;
+            }
+        }
+        return measured;
+    }
+
+    private double measure(int t, double x, double y) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int segment = firstSegment[t]; segment < firstSegment[t + 1]; segment++) {
+            nearest = Math.min(nearest, segmentDistance(segment, x, y));
+        }
+        return nearest;
+    }
+
+    private double boxDistance(int t, double x, double y) {
+        int box = t * 4;
+        double dx = Math.max(0, Math.max(boxes[box] - x, x - boxes[box + 2]));
+        double dy = Math.max(0, Math.max(boxes[box + 1] - y, y - boxes[box + 3]));
+        return Math.hypot(dx, dy);
+    }
+
+    private double segmentDistance(int segment, double x, double y) {
+        int at = segment * 4;
+        return GeoMath.distanceToSegment(x, y, segments[at], segments[at + 1], segments[at + 2], segments[at + 3]);
+    }
+
+    private void addSegment(double ax, double ay, double bx, double by) {
+        if ((segmentCount + 1) * 4 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        int segment = segmentCount++;
+        int at = segment * 4;
+        segments[at] = ax;
+        segments[at + 1] = ay;
+        segments[at + 2] = bx;
+        segments[at + 3] = by;
+
+        int trail = trails.size() - 1;
+        int fromX = cell(Math.min(ax, bx));
+        int toX = cell(Math.max(ax, bx));
+        int fromY = cell(Math.min(ay, by));
+        int toY = cell(Math.max(ay, by));
+        for (int gx = fromX; gx <= toX; gx++) {
+            for (int gy = fromY; gy <= toY; gy++) {
+                long key = cellKey(gx, gy);
+                Bucket bucket = cells.get(key);
+                if (bucket == null) {
+                    bucket = new Bucket();
+                    cells.put(key, bucket);
+                }
+                bucket.add(segment, trail);
+            }
+        }
+        minCellX = Math.min(minCellX, fromX);
+        maxCellX = Math.max(maxCellX, toX);
+        minCellY = Math.min(minCellY, fromY);
+        maxCellY = Math.max(maxCellY, toY);
+    }
+
+    private void ensureTrailCapacity(int count) {
+        if (count > scores.length) {
+            int capacity = Math.max(count, scores.length * 2);
+            scores = Arrays.copyOf(scores, capacity);
+            exact = Arrays.copyOf(exact, capacity);
+            boxes = Arrays.copyOf(boxes, capacity * 4);
+            firstSegment = Arrays.copyOf(firstSegment, capacity + 1);
+        }
+        firstSegment[count - 1] = segmentCount;
+    }
+
+    private double projectX(double lon) {
+        return lon * GeoMath.METERS_PER_DEGREE * cosLat;
+    }
+
+    private double projectY(double lat) {
+        return lat * GeoMath.METERS_PER_DEGREE;
+    }
+
+    private int cell(double meters) {
+        return (int) Math.floor(meters / cellSize);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    // Segments in one grid cell, with the trail each belongs to
+    private static final class Bucket {
+        int[] segments = new int[4];
+        int[] trails = new int[4];
+        int size;
+
+        void add(int segment, int trail) {
+            if (size == segments.length) {
+                segments = Arrays.copyOf(segments, size * 2);
+                trails = Arrays.copyOf(trails, size * 2);
+            }
+            segments[size] = segment;
+            trails[size] = trail;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.amilcarf.draft_hike.trails;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.osm.CancellationToken;
+import com.amilcarf.draft_hike.osm.OSMDataFetcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide source of the trails around the user.
+ *
+ * Owns the fetcher and the threads trail searches run on, so a search outlives the screen
+ * that started it: a screen recreated after a rotation asks for the same area again and
+ * gets the search still running, or its result, instead of starting over. Recent areas are
+ * kept in memory as converted trails, and the list of an area holds its LISTED_TRAILS
+ * trails nearest to the user (see TrailRanker), re-ranked when the user asks again from a
+ * little further along. Results are delivered through LiveData, which only
+ * reaches observers that are started, drops them when they are destroyed, and hands a slow
+ * observer only the latest state rather than every batch.
+ *
+ * A search nobody observes any more when another one starts has been superseded, e.g. by a
+ * new location fix, and is cancelled along with its request in flight. Searches that were
+ * cancelled or failed are simply started again by the next request for their area.
+ *
+ * Call from the main thread.
+ */
+public final class TrailRepository {
+
+    private static final String TAG = "TrailRepository";
+
+    private static final int FETCH_THREADS = 2;
+    // Work waiting for a fetch thread; beyond this, new searches fail rather than pile up
+    private static final int MAX_QUEUED_TASKS = 4;
+    // Trails are delivered in batches of this size while the rest are still downloading
+    private static final int TRAIL_BATCH_SIZE = 10;
+    // A search widens until it finds this many trails or reaches MAX_SEARCH_RADIUS_FACTOR * radius
+    private static final int TARGET_TRAILS = 15;
+    private static final double MAX_SEARCH_RADIUS_FACTOR = 4;
+    // The list shows this many trails, nearest first
+    private static final int LISTED_TRAILS = 50;
+    private static final double RANK_CELL_SIZE = 250; // meters
+
+    // Searched areas kept in memory, and how long their trails count as current
+    private static final int REMEMBERED_AREAS = 8;
+    private static final long AREA_TTL = 30 * 60 * 1000L; // 30 minutes
+    // A location within this fraction of the radius from a searched area is the same area
+    private static final double SAME_AREA_FRACTION = 0.5;
+
+    private static TrailRepository instance;
+
+    private final OSMDataFetcher fetcher;
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(FETCH_THREADS, FETCH_THREADS,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_TASKS));
+    private final TrailAreaCache<Area> areas = new TrailAreaCache<>(REMEMBERED_AREAS, SAME_AREA_FRACTION);
+    private final List<Area> running = new ArrayList<>();
+
+    private TrailRepository(Context appContext) {
+        this.fetcher = new OSMDataFetcher(appContext);
+    }
+
+    public static synchronized TrailRepository get(Context context) {
+        if (instance == null) {
+            instance = new TrailRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the search for the trails within radius of lat/lon. A search for the same area
+     * that is still running, or finished within the last 30 minutes, is returned as is;
+     * otherwise a new one starts. With refresh, only a running search is reused. A finished
+     * search is ranked again around lat/lon, which may have moved within the area.
+     */
+    public synchronized LiveData<TrailLoad> loadTrails(double lat, double lon, double radius, boolean refresh) {
+        Area area = areas.get(lat, lon, radius);
+        long now = System.currentTimeMillis();
+        if (area != null && (area.running || (!refresh && now - area.loadedAt < AREA_TTL))) {
+            if (!area.running) {
+                area.load.setValue(TrailLoad.loaded(rank(area.ranker, lat, lon)));
+            }
+            return area.load;
+        }
+        cancelUnwatchedSearches();
+        if (area == null) {
+            area = new Area();
+        }
+        area.running = true;
+        area.token = new CancellationToken();
+        area.ranker = new TrailRanker(RANK_CELL_SIZE);
+        running.add(area);
+        areas.put(lat, lon, radius, area);
+
+        final Area searched = area;
+        try {
+            executor.execute(() -> search(searched, lat, lon, radius));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Too many trail searches waiting", e);
+            finish(area, TrailLoad.failed(new ArrayList<Trail>(), e), false);
+        }
+        return area.load;
+    }
+
+    /**
+     * Cancels the searches that no screen observes, e.g. once the screen that wanted them
+     * has finished.
+     */
+    public synchronized void cancelUnwatchedSearches() {
+        for (Area area : running) {
+            if (!area.load.hasObservers()) {
+                area.token.cancel();
+            }
+        }
+    }
+
+    /**
+     * True when a search for this area is running or remembered, even if no longer current.
+     */
+    public synchronized boolean hasArea(double lat, double lon, double radius) {
+        return areas.get(lat, lon, radius) != null;
+    }
+
+    /**
+     * Reads the trails saved by the last successful search, possibly for another area.
+     * Delivers null when there are none.
+     */
+    public LiveData<List<Trail>> loadSavedTrails() {
+        MutableLiveData<List<Trail>> saved = new MutableLiveData<>();
+        try {
+            executor.execute(() -> saved.postValue(fetcher.loadCachedTrails()));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Too much work waiting to read saved trails", e);
+            saved.setValue(null);
+        }
+        return saved;
+    }
+
+    /**
+     * Writes one changed trail, e.g. a toggled favorite, over its copy among the saved trails.
+     */
+    public void saveTrail(Trail trail) {
+        try {
+            executor.execute(() -> fetcher.cacheTrail(trail));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Too much work waiting to save trail " + trail.getId(), e);
+        }
+    }
+
+    private void search(Area area, double lat, double lon, double radius) {
+        CancellationToken token = area.token;
+        TrailRanker ranker = area.ranker;
+        TrailBatchProcessor processor = new TrailBatchProcessor(lat, lon, ranker);
+        List<Trail> found = new ArrayList<>();
+        area.load.postValue(TrailLoad.loading(new ArrayList<Trail>()));
+        try {
+            // Throws right away for a search cancelled while it waited for a thread
+            fetcher.fetchTrailsProgressively(lat, lon, radius, radius * MAX_SEARCH_RADIUS_FACTOR,
+                    TARGET_TRAILS, TRAIL_BATCH_SIZE, batch -> {
+                        if (token.isCancelled()) {
+                            return; // The stream is being aborted; skip converting what is left
+                        }
+                        synchronized (ranker) {
+                            processor.process(batch);
+                        }
+                        List<Trail> nearest = rank(ranker, lat, lon);
+                        found.clear();
+                        found.addAll(nearest);
+                        area.load.postValue(TrailLoad.loading(nearest));
+                    }, token);
+
+            List<Trail> trails = processor.getTrails();
+            Log.d(TAG, "Found " + trails.size() + " trails");
+            if (!trails.isEmpty()) {
+                fetcher.cacheTrails(trails);
+            }
+            finish(area, TrailLoad.loaded(rank(ranker, lat, lon)), true);
+        } catch (Exception e) {
+            if (token.isCancelled()) {
+                Log.d(TAG, "Trail search superseded");
+            } else {
+                Log.e(TAG, "Error loading trails from OSM", e);
+            }
+            finish(area, TrailLoad.failed(new ArrayList<>(found), e), false);
+        }
+    }
+
+    // Queries move the ranker's anchor, and it is shared with the main thread once finished
+    private static List<Trail> rank(TrailRanker ranker, double lat, double lon) {
+        synchronized (ranker) {
+            return ranker.nearest(lat, lon, LISTED_TRAILS);
+        }
+    }
+
+    private synchronized void finish(Area area, TrailLoad result, boolean succeeded) {
+        area.running = false;
+        running.remove(area);
+        // A failed search is tried again by the next request for the area
+        area.loadedAt = succeeded ? System.currentTimeMillis() : 0;
+        // Posted before a new search for the area can post its first state
+        area.load.postValue(result);
+    }
+
+    private static final class Area {
+        final MutableLiveData<TrailLoad> load = new MutableLiveData<>();
+        boolean running;
+        long loadedAt;
+        CancellationToken token;
+        TrailRanker ranker;
+    }
+}
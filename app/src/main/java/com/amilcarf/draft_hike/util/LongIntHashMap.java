@@ -0,0 +1,130 @@
+package com.amilcarf.draft_hike.util;
+
+/**
+ * Open-addressing hash map from primitive long keys to int values.
+ *
+ * Uses linear probing over parallel arrays, so lookups never box and the whole map is
+ * three allocations regardless of size. Removal is not supported.
+ */
+public final class LongIntHashMap {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+
+    // Key 0 is the empty-slot marker, so its value is kept on the side
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int get(long key) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : NOT_FOUND;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (true) {
+            long existing = keys[slot];
+            if (existing == key) {
+                return values[slot];
+            }
+            if (existing == EMPTY) {
+                return NOT_FOUND;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NOT_FOUND;
+    }
+
+    /**
+     * Stores the value and returns the previous one, or {@link #NOT_FOUND}.
+     */
+    public int put(long key, int value) {
+        if (key == EMPTY) {
+            int previous = hasZeroKey ? zeroValue : NOT_FOUND;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (true) {
+            long existing = keys[slot];
+            if (existing == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (existing == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size >= resizeAt) {
+                    rehash(keys.length * 2);
+                }
+                return NOT_FOUND;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR <= expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // OSM ids are dense and sequential, so scramble them before masking
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,86 @@
+package com.amilcarf.draft_hike.geo;
+
+import com.amilcarf.draft_hike.models.NodeStore;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BenchIndexTest {
+
+    private static final double MAX_DISTANCE = 50;
+
+    @Test
+    public void countNear_countsEachBenchOnce() {
+        OSMWay way = way(new double[][]{{40.7800, -73.9700}, {40.7810, -73.9700}, {40.7810, -73.9690}});
+        List<OSMNode> benches = new ArrayList<>();
+        benches.add(new OSMNode(1, 40.7810, -73.9700)); // on the corner shared by both segments
+        benches.add(new OSMNode(2, 40.7805, -73.9702)); // about 17 m west of the first segment
+        benches.add(new OSMNode(3, 40.7805, -73.9690)); // about 80 m from both segments
+
+        BenchIndex index = new BenchIndex(benches, MAX_DISTANCE);
+
+        assertEquals(2, index.countNear(way, MAX_DISTANCE));
+        // Repeated queries do not see marks from earlier ones
+        assertEquals(2, index.countNear(way, MAX_DISTANCE));
+    }
+
+    @Test
+    public void countNear_matchesBruteForce() {
+        Random random = new Random(11);
+        List<OSMNode> benches = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            benches.add(new OSMNode(i, 40.77 + random.nextDouble() * 0.03, -73.98 + random.nextDouble() * 0.03));
+        }
+        BenchIndex index = new BenchIndex(benches, MAX_DISTANCE);
+
+        for (int w = 0; w < 50; w++) {
+            double lat = 40.77 + random.nextDouble() * 0.03;
+            double lon = -73.98 + random.nextDouble() * 0.03;
+            double[][] points = new double[20][];
+            for (int i = 0; i < points.length; i++) {
+                lat += (random.nextDouble() - 0.5) * 0.002;
+                lon += (random.nextDouble() - 0.5) * 0.002;
+                points[i] = new double[]{lat, lon};
+            }
+            OSMWay way = way(points);
+
+            assertEquals(bruteForce(way, benches), index.countNear(way, MAX_DISTANCE));
+        }
+    }
+
+    private static int bruteForce(OSMWay way, List<OSMNode> benches) {
+        double cosLat = GeoMath.cosLatitude(40.785);
+        double m = GeoMath.METERS_PER_DEGREE;
+        int count = 0;
+        for (OSMNode bench : benches) {
+            for (int i = 0; i + 1 < way.getNodeCount(); i++) {
+                double px = bench.getLongitude() * m * cosLat, py = bench.getLatitude() * m;
+                double ax = way.getLongitude(i) * m * cosLat, ay = way.getLatitude(i) * m;
+                double bx = way.getLongitude(i + 1) * m * cosLat, by = way.getLatitude(i + 1) * m;
+                double dx = bx - ax, dy = by - ay;
+                double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / (dx * dx + dy * dy)));
+                if (Math.hypot(px - ax - t * dx, py - ay - t * dy) <= MAX_DISTANCE) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static OSMWay way(double[][] points) {
+        NodeStore store = new NodeStore();
+        OSMWay way = new OSMWay(1, store);
+        for (int i = 0; i < points.length; i++) {
+            way.addNodeIndex(store.add(i + 1, points[i][0], points[i][1]));
+        }
+        return way;
+    }
+}
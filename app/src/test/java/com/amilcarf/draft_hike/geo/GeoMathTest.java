@@ -0,0 +1,81 @@
+package com.amilcarf.draft_hike.geo;
+
+import com.amilcarf.draft_hike.models.NodeStore;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoMathTest {
+
+    @Test
+    public void wayLength_staysWithinDocumentedBoundOfHaversine() {
+        Random random = new Random(3);
+        double[] latitudes = {0, 30, 45, 60, -45};
+        double[] bounds = {0.0002, 0.0005, 0.0009, 0.0015, 0.0009};
+
+        for (int l = 0; l < latitudes.length; l++) {
+            for (int w = 0; w < 20; w++) {
+                // Random walks that stay within 0.05 degrees of the start latitude
+                OSMWay way = randomWay(random, latitudes[l], 200, 0.05);
+                double exact = haversineLength(way);
+                double fast = GeoMath.wayLength(way);
+
+                assertEquals("lat " + latitudes[l], exact, fast, exact * bounds[l]);
+            }
+        }
+    }
+
+    @Test
+    public void wayLength_isFasterThanHaversine() {
+        OSMWay way = randomWay(new Random(9), 40.78, 5000, 0.05);
+        double sink = 0;
+        for (int i = 0; i < 200; i++) {
+            sink += haversineLength(way) + GeoMath.wayLength(way);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            sink += haversineLength(way);
+        }
+        long haversineNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            sink += GeoMath.wayLength(way);
+        }
+        long fastNanos = System.nanoTime() - start;
+
+        assertTrue(sink > 0);
+        // About 8x on a desktop JVM; the bound leaves room for slow build machines
+        assertTrue(String.format("Fast path took %.3f ms per way, haversine %.3f ms",
+                        fastNanos / 200 / 1e6, haversineNanos / 200 / 1e6),
+                fastNanos * 2 < haversineNanos);
+    }
+
+    private static double haversineLength(OSMWay way) {
+        double total = 0;
+        for (int i = 0; i + 1 < way.getNodeCount(); i++) {
+            total += GeoMath.haversine(way.getLatitude(i), way.getLongitude(i),
+                    way.getLatitude(i + 1), way.getLongitude(i + 1));
+        }
+        return total;
+    }
+
+    private static OSMWay randomWay(Random random, double startLat, int nodes, double maxLatOffset) {
+        NodeStore store = new NodeStore();
+        OSMWay way = new OSMWay(1, store);
+        double lat = startLat;
+        double lon = 10;
+        for (int i = 0; i < nodes; i++) {
+            lat = Math.max(startLat - maxLatOffset, Math.min(startLat + maxLatOffset,
+                    lat + (random.nextDouble() - 0.5) * 0.002));
+            lon += (random.nextDouble() - 0.5) * 0.002;
+            way.addNodeIndex(store.add(i + 1, lat, lon));
+        }
+        return way;
+    }
+}
@@ -0,0 +1,215 @@
+package com.amilcarf.draft_hike.map;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.osm.CancellationToken;
+import com.amilcarf.draft_hike.tiles.Tile;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ViewportLoaderTest {
+
+    private static final int ZOOM = 15;
+    private static final Tile ORIGIN = Tile.containing(46.5, 7.5, ZOOM);
+
+    private final ArrayDeque<Runnable> fetches = new ArrayDeque<>();
+    private final List<List<Tile>> requested = new ArrayList<>();
+    private final List<CancellationToken> tokens = new ArrayList<>();
+    private final RecordingListener listener = new RecordingListener();
+
+    // Every tile holds one bench whose id encodes the tile
+    private final ViewportLoader.TileSource source = (tiles, token) -> {
+        requested.add(tiles);
+        tokens.add(token);
+        Map<Tile, List<OSMNode>> result = new HashMap<>();
+        for (Tile tile : tiles) {
+            result.put(tile, Collections.singletonList(new OSMNode(benchId(tile),
+                    (tile.getNorth() + tile.getSouth()) / 2, (tile.getWest() + tile.getEast()) / 2)));
+        }
+        return result;
+    };
+
+    private final ViewportLoader loader = new ViewportLoader(source, fetches::add, Runnable::run, listener,
+            ZOOM, 2, 16, 1);
+
+    @Test
+    public void viewport_loadsMissingTilesNearestFirstWithBoundedConcurrency() {
+        show(0, 0, 3, 3);
+
+        assertEquals(2, loader.getRunningRequestCount());
+        assertEquals(1, loader.getQueuedRequestCount());
+        runFetches();
+
+        assertEquals(3, requested.size());
+        // The center tile goes out with the first request
+        assertTrue(requested.get(0).contains(tile(1, 1)));
+        assertEquals(9, loader.getLoadedTileCount());
+        assertEquals(9, listener.lastBenches().size());
+
+        // The same viewport again fetches nothing
+        show(0, 0, 3, 3);
+        assertTrue(fetches.isEmpty());
+        assertEquals(3, requested.size());
+    }
+
+    @Test
+    public void panning_cancelsSupersededRequestsAndEvictsFarTiles() {
+        show(0, 0, 2, 2);
+        runFetches();
+        assertEquals(4, loader.getLoadedTileCount());
+
+        // A request started for a viewport that is panned away before it completes
+        show(10, 10, 2, 2);
+        assertEquals(1, fetches.size());
+        show(20, 20, 2, 2);
+
+        assertTrue(tokensAfterRun(1).get(0).isCancelled());
+        runFetches();
+        // The first viewport is beyond the keep ring, and the superseded tiles were never stored
+        assertEquals(4, loader.getLoadedTileCount());
+        for (OSMNode bench : listener.lastBenches()) {
+            assertTrue(bench.getId() >= benchId(tile(20, 20)));
+        }
+
+        // Panning one tile east only fetches the new column; the column left behind is kept
+        int before = requested.size();
+        show(21, 20, 2, 2);
+        runFetches();
+        assertEquals(before + 1, requested.size());
+        assertEquals(2, requested.get(requested.size() - 1).size());
+        assertEquals(6, loader.getLoadedTileCount());
+    }
+
+    @Test
+    public void viewport_tooLargeIsReportedOnceAndLoadsNothing() {
+        show(0, 0, 5, 5);
+        show(0, 0, 6, 6);
+
+        assertEquals(1, listener.tooLarge);
+        assertTrue(fetches.isEmpty());
+
+        show(0, 0, 2, 2);
+        show(0, 0, 5, 5);
+        assertEquals(2, listener.tooLarge);
+    }
+
+    @Test
+    public void dispose_cancelsRunningRequestsAndDropsTheirResults() {
+        show(0, 0, 2, 2);
+        loader.dispose();
+        runFetches();
+
+        assertTrue(tokens.get(0).isCancelled());
+        assertEquals(0, loader.getLoadedTileCount());
+        assertNull(listener.lastBenches());
+    }
+
+    @Test
+    public void loadFailure_isReportedAndLaterViewportsRetry() {
+        ViewportLoader failing = new ViewportLoader((tiles, token) -> {
+            throw new IOException("offline");
+        }, fetches::add, Runnable::run, listener, ZOOM, 2, 16, 1);
+
+        failing.onViewportChanged(south(0, 1), west(0), north(0), east(0, 1));
+        runFetches();
+
+        assertEquals(1, listener.failures);
+        assertEquals(0, failing.getRunningRequestCount());
+        failing.onViewportChanged(south(0, 1), west(0), north(0), east(0, 1));
+        assertEquals(1, fetches.size());
+    }
+
+    @Test
+    public void unexpectedLoadError_isReportedAndLaterViewportsRetry() {
+        ViewportLoader failing = new ViewportLoader((tiles, token) -> {
+            throw new IllegalStateException("Unexpected response");
+        }, fetches::add, Runnable::run, listener, ZOOM, 2, 16, 1);
+
+        failing.onViewportChanged(south(0, 1), west(0), north(0), east(0, 1));
+        runFetches();
+
+        assertEquals(1, listener.failures);
+        assertEquals(0, failing.getRunningRequestCount());
+        failing.onViewportChanged(south(0, 1), west(0), north(0), east(0, 1));
+        assertEquals(1, fetches.size());
+    }
+
+    private void show(int dx, int dy, int width, int height) {
+        loader.onViewportChanged(south(dy, height), west(dx), north(dy), east(dx, width));
+    }
+
+    // Runs the pending fetches, including the ones their completion starts
+    private void runFetches() {
+        while (!fetches.isEmpty()) {
+            fetches.poll().run();
+        }
+    }
+
+    // Runs count pending fetches and returns the tokens they were given
+    private List<CancellationToken> tokensAfterRun(int count) {
+        int from = tokens.size();
+        for (int i = 0; i < count; i++) {
+            fetches.poll().run();
+        }
+        return tokens.subList(from, tokens.size());
+    }
+
+    // Bounds slightly inside the tile block, so neighbours are not included
+    private static double north(int dy) {
+        return tile(0, dy).getNorth() - 1e-6;
+    }
+
+    private static double south(int dy, int height) {
+        return tile(0, dy + height - 1).getSouth() + 1e-6;
+    }
+
+    private static double west(int dx) {
+        return tile(dx, 0).getWest() + 1e-6;
+    }
+
+    private static double east(int dx, int width) {
+        return tile(dx + width - 1, 0).getEast() - 1e-6;
+    }
+
+    private static Tile tile(int dx, int dy) {
+        return new Tile(ZOOM, ORIGIN.getX() + dx, ORIGIN.getY() + dy);
+    }
+
+    private static long benchId(Tile tile) {
+        return (tile.getY() - ORIGIN.getY()) * 1000L + (tile.getX() - ORIGIN.getX());
+    }
+
+    private static class RecordingListener implements ViewportLoader.Listener {
+        final List<List<OSMNode>> published = new ArrayList<>();
+        int tooLarge;
+        int failures;
+
+        @Override
+        public void onBenches(List<OSMNode> benches) {
+            published.add(benches);
+        }
+
+        @Override
+        public void onViewportTooLarge() {
+            tooLarge++;
+        }
+
+        @Override
+        public void onLoadFailed(IOException e) {
+            failures++;
+        }
+
+        List<OSMNode> lastBenches() {
+            return published.isEmpty() ? null : published.get(published.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.amilcarf.draft_hike.models;
+
+import com.amilcarf.draft_hike.util.LongIntHashMap;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NodeStoreTest {
+
+    @Test
+    public void add_deduplicatesIdsAndPacksE7Coordinates() {
+        NodeStore store = new NodeStore(2);
+
+        int first = store.add(4200000001L, 40.7829123, -73.9654321);
+        int second = store.add(4200000002L, -33.8688197, 151.2092955);
+        int again = store.add(4200000001L, 0.0, 0.0);
+
+        assertEquals(first, again);
+        assertEquals(2, store.size());
+        assertEquals(407829123, store.getLatitudeE7(first));
+        assertEquals(-739654321, store.getLongitudeE7(first));
+        assertEquals(151.2092955, store.getLongitude(second), 1e-7);
+        assertEquals(second, store.indexOf(4200000002L));
+        assertEquals(LongIntHashMap.NOT_FOUND, store.indexOf(99L));
+    }
+
+    @Test
+    public void longIntHashMap_growsAndKeepsAllKeys() {
+        LongIntHashMap map = new LongIntHashMap();
+        for (int i = 0; i < 100_000; i++) {
+            map.put(4_000_000_000L + i * 7L, i);
+        }
+        map.put(0L, 42);
+
+        assertEquals(100_001, map.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(i, map.get(4_000_000_000L + i * 7L));
+        }
+        assertEquals(42, map.get(0L));
+        assertEquals(LongIntHashMap.NOT_FOUND, map.get(5L));
+    }
+
+    @Test
+    public void wayNodes_isViewOverSharedStore() {
+        NodeStore store = new NodeStore();
+        OSMWay way = new OSMWay(1L, store);
+        way.addNodeIndex(store.add(10L, 1.0, 2.0));
+        way.addNodeIndex(store.add(11L, 1.5, 2.5));
+
+        List<OSMNode> nodes = way.getNodes();
+
+        assertEquals(2, nodes.size());
+        assertEquals(11L, nodes.get(1).getId());
+        assertEquals(1.5, nodes.get(1).getLatitude(), 1e-9);
+        assertEquals(2.5, way.getLongitude(1), 1e-9);
+        assertTrue(nodes.get(0).getTags().isEmpty());
+    }
+
+    @Test
+    public void withGeometry_ownsWrappedStoreAndIndexesLazily() {
+        NodeStore geometry = NodeStore.wrap(new long[]{10L, 11L, 10L},
+                new int[]{10000000, 15000000, 10000000}, new int[]{20000000, 25000000, 20000000}, 3);
+        OSMWay way = OSMWay.withGeometry(1L, geometry);
+
+        assertEquals(3, way.getNodeCount());
+        assertEquals(1, way.getNodeIndex(1));
+        assertEquals(1.5, way.getLatitude(1), 1e-9);
+        assertEquals(10L, way.getNodes().get(2).getId());
+        // A closed way repeats its first node; lookups find the first occurrence
+        assertEquals(0, geometry.indexOf(10L));
+
+        way.addNode(new OSMNode(12L, 3.0, 4.0));
+
+        assertEquals(4, way.getNodeCount());
+        assertEquals(4.0, way.getLongitude(3), 1e-9);
+        assertEquals(2.5, way.getLongitude(1), 1e-9);
+    }
+}
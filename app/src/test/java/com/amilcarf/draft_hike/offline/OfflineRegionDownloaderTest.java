@@ -0,0 +1,196 @@
+package com.amilcarf.draft_hike.offline;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.osm.CancellationToken;
+import com.amilcarf.draft_hike.tiles.OfflineTileStore;
+import com.amilcarf.draft_hike.tiles.Tile;
+import com.amilcarf.draft_hike.tiles.TileData;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OfflineRegionDownloaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final OfflineRegion region = OfflineRegion.around(46.5, 7.5, 2000);
+    private final List<Tile> tiles = region.tiles(15);
+    private final List<OfflineRegionDownloader.Progress> reported = new ArrayList<>();
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void download_storesEveryLayerWithBoundedConcurrency() throws Exception {
+        OfflineTileStore trails = new OfflineTileStore(folder.newFolder("trails"));
+        OfflineTileStore benches = new OfflineTileStore(folder.newFolder("benches"));
+        FakeSource trailSource = new FakeSource();
+        FakeSource benchSource = new FakeSource();
+        OfflineRegionDownloader downloader = new OfflineRegionDownloader(executor, 2, 4, 0);
+
+        OfflineRegionDownloader.Progress result = downloader.download(tiles, Arrays.asList(
+                new OfflineRegionDownloader.Layer(trails, trailSource),
+                new OfflineRegionDownloader.Layer(benches, benchSource)), reported::add, new CancellationToken());
+
+        assertTrue(result.isComplete());
+        assertEquals(tiles.size() * 2, result.getTilesStored());
+        assertEquals(trails.getSizeBytes() + benches.getSizeBytes(), result.getBytes());
+        assertTrue(Math.max(trailSource.maxRunning.get(), benchSource.maxRunning.get()) <= 2);
+        assertTrue(trailSource.calls.get() <= (tiles.size() + 3) / 4);
+
+        // Stored tiles read back without the source, also from a new store over the same files
+        Tile tile = tiles.get(tiles.size() / 2);
+        assertEquals(tile.getX(), trails.get(tile).getWays().get(0).getId());
+        OfflineTileStore reopened = new OfflineTileStore(new File(folder.getRoot(), "benches"));
+        assertEquals(tiles.size(), reopened.size());
+        assertEquals(tile.getY(), reopened.get(tile).getBenches().get(0).getId());
+
+        assertEquals(0, reported.get(0).getTilesStored());
+        assertEquals(1.0, reported.get(reported.size() - 1).getFraction(), 0);
+    }
+
+    @Test
+    public void download_retriesFailedGroupsAndResumesOnlyMissingTiles() throws Exception {
+        OfflineTileStore store = new OfflineTileStore(folder.newFolder("trails"));
+        FakeSource source = new FakeSource();
+        // One group fails every attempt, another only its first
+        source.failAlways.add(tiles.get(0));
+        source.failOnce.add(tiles.get(tiles.size() - 1));
+        OfflineRegionDownloader downloader = new OfflineRegionDownloader(executor, 2, 4, 0);
+        List<OfflineRegionDownloader.Layer> layers =
+                Collections.singletonList(new OfflineRegionDownloader.Layer(store, source));
+
+        OfflineRegionDownloader.Progress first = downloader.download(tiles, layers, reported::add,
+                new CancellationToken());
+
+        assertFalse(first.isComplete());
+        int failedGroup = Math.min(4, tiles.size());
+        assertEquals(failedGroup, first.getTilesFailed());
+        assertTrue(store.contains(tiles.get(tiles.size() - 1)));
+        assertFalse(store.contains(tiles.get(0)));
+
+        // Running it again only asks for the tiles still missing
+        source.failAlways.clear();
+        source.requested.clear();
+        OfflineRegionDownloader.Progress second = downloader.download(tiles, layers, reported::add,
+                new CancellationToken());
+
+        assertTrue(second.isComplete());
+        assertEquals(tiles.size() - failedGroup, second.getTilesSkipped());
+        assertEquals(new HashSet<>(tiles.subList(0, failedGroup)), new HashSet<>(source.requested));
+    }
+
+    @Test
+    public void download_countsAGroupThatThrowsAsFailed() throws Exception {
+        OfflineTileStore store = new OfflineTileStore(folder.newFolder("trails"));
+        FakeSource source = new FakeSource();
+        source.malformed.add(tiles.get(0));
+        OfflineRegionDownloader downloader = new OfflineRegionDownloader(executor, 2, 4, 0);
+
+        OfflineRegionDownloader.Progress result = downloader.download(tiles,
+                Collections.singletonList(new OfflineRegionDownloader.Layer(store, source)), reported::add,
+                new CancellationToken());
+
+        int failedGroup = Math.min(4, tiles.size());
+        assertFalse(result.isComplete());
+        assertEquals(failedGroup, result.getTilesFailed());
+        assertEquals(tiles.size() - failedGroup, store.size());
+        // Not retried
+        assertEquals((tiles.size() + 3) / 4, source.calls.get());
+    }
+
+    @Test
+    public void download_stopsWhenCanceled() throws Exception {
+        OfflineTileStore store = new OfflineTileStore(folder.newFolder("trails"));
+        final CancellationToken token = new CancellationToken();
+        FakeSource source = new FakeSource();
+        OfflineRegionDownloader downloader = new OfflineRegionDownloader(executor, 1, 1, 0);
+
+        try {
+            downloader.download(tiles, Collections.singletonList(new OfflineRegionDownloader.Layer(store, source)),
+                    progress -> {
+                        if (progress.getTilesStored() == 3) {
+                            token.cancel();
+                        }
+                    }, token);
+            fail("Expected the download to be canceled");
+        } catch (IOException expected) {
+            // Tiles stored before the cancel are kept for the next run
+        }
+
+        assertEquals(3, store.size());
+        assertEquals(3, source.calls.get());
+    }
+
+    // Returns one way and one bench per tile, identified by the tile's x and y
+    private static class FakeSource implements OfflineRegionDownloader.TileSource {
+        final Set<Tile> failAlways = Collections.synchronizedSet(new HashSet<Tile>());
+        final Set<Tile> failOnce = Collections.synchronizedSet(new HashSet<Tile>());
+        final Set<Tile> malformed = Collections.synchronizedSet(new HashSet<Tile>());
+        final List<Tile> requested = Collections.synchronizedList(new ArrayList<Tile>());
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public Map<Tile, TileData> fetch(List<Tile> tiles, CancellationToken token) throws IOException {
+            calls.incrementAndGet();
+            requested.addAll(tiles);
+            int now = running.incrementAndGet();
+            try {
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                Thread.sleep(5);
+                for (Tile tile : tiles) {
+                    if (failAlways.contains(tile) || failOnce.remove(tile)) {
+                        throw new IOException("HTTP 429");
+                    }
+                    if (malformed.contains(tile)) {
+                        throw new IllegalStateException("Unexpected response");
+                    }
+                }
+
+                Map<Tile, TileData> data = new HashMap<>();
+                for (Tile tile : tiles) {
+                    OSMWay way = new OSMWay(tile.getX());
+                    way.addNode(new OSMNode(1, tile.getSouth(), tile.getWest()));
+                    way.addNode(new OSMNode(2, tile.getNorth(), tile.getEast()));
+                    List<OSMWay> ways = new ArrayList<>();
+                    ways.add(way);
+                    List<OSMNode> benches = new ArrayList<>();
+                    benches.add(new OSMNode(tile.getY(), tile.getSouth(), tile.getWest()));
+                    data.put(tile, new TileData(ways, benches, 0));
+                }
+                return data;
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.amilcarf.draft_hike.osm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class OverpassClientTest {
+
+    private static final OverpassClient.ResponseParser<String> TEXT = OverpassClientTest::readText;
+
+    private final OkHttpClient http = new OkHttpClient.Builder()
+            .readTimeout(5, TimeUnit.SECONDS)
+            .build();
+    private MockWebServer primary;
+    private MockWebServer mirror;
+
+    @Before
+    public void setUp() throws IOException {
+        primary = new MockWebServer();
+        mirror = new MockWebServer();
+        primary.start();
+        mirror.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        primary.shutdown();
+        mirror.shutdown();
+    }
+
+    @Test
+    public void execute_retriesOverloadedMirrorHonoringRetryAfter() throws Exception {
+        primary.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        primary.enqueue(new MockResponse().setBody("ok"));
+        OverpassClient client = client(url(primary));
+
+        long start = System.nanoTime();
+        String body = client.execute("[out:json];node(1);out;", TEXT, new CancellationToken());
+
+        assertEquals("ok", body);
+        assertEquals(2, primary.getRequestCount());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000));
+        // The query goes out URL-encoded, as Overpass expects
+        assertTrue(primary.takeRequest().getPath().startsWith("/?data=%5Bout%3Ajson%5D"));
+    }
+
+    @Test
+    public void execute_failsOverToAnotherMirrorAndRanksItFirst() throws Exception {
+        primary.enqueue(new MockResponse().setResponseCode(504).setBody("Gateway Timeout"));
+        mirror.enqueue(new MockResponse().setBody("first"));
+        mirror.enqueue(new MockResponse().setBody("second"));
+        OverpassClient client = client(url(primary), url(mirror));
+
+        assertEquals("first", client.execute("q", TEXT, new CancellationToken()));
+        assertEquals("second", client.execute("q", TEXT, new CancellationToken()));
+
+        assertEquals(1, primary.getRequestCount());
+        assertTrue(client.getErrorRate(url(primary)) > client.getErrorRate(url(mirror)));
+    }
+
+    @Test
+    public void execute_doesNotRetryBadQueries() throws Exception {
+        primary.enqueue(new MockResponse().setResponseCode(400).setBody("parse error: line 1"));
+        mirror.enqueue(new MockResponse().setBody("unused"));
+        OverpassClient client = client(url(primary), url(mirror));
+
+        try {
+            client.execute("q", TEXT, new CancellationToken());
+            fail("Expected the bad request to fail");
+        } catch (IOException e) {
+            assertEquals("HTTP 400: parse error: line 1", e.getMessage());
+        }
+        assertEquals(1, primary.getRequestCount());
+        assertEquals(0, mirror.getRequestCount());
+    }
+
+    @Test
+    public void execute_givesUpAfterMaxAttempts() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            primary.enqueue(new MockResponse().setResponseCode(503));
+        }
+        OverpassClient client = client(url(primary));
+        client.setMaxAttempts(3);
+
+        try {
+            client.execute("q", TEXT, new CancellationToken());
+            fail("Expected the overloaded mirror to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("HTTP 503"));
+        }
+        assertEquals(3, primary.getRequestCount());
+    }
+
+    @Test
+    public void execute_hedgesSlowRequestsToTheNextMirror() throws Exception {
+        primary.enqueue(new MockResponse().setBody("slow").setHeadersDelay(2, TimeUnit.SECONDS));
+        mirror.enqueue(new MockResponse().setBody("fast"));
+        OverpassClient client = client(url(primary), url(mirror));
+        client.setHedgeDelay(100);
+
+        long start = System.nanoTime();
+        String body = client.execute("q", TEXT, new CancellationToken());
+
+        assertEquals("fast", body);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+        assertEquals(1, primary.getRequestCount());
+        assertEquals(1, mirror.getRequestCount());
+    }
+
+    @Test
+    public void execute_prefersTheMirrorWithLowerLatency() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            primary.enqueue(new MockResponse().setBody("slow").setHeadersDelay(200, TimeUnit.MILLISECONDS));
+            mirror.enqueue(new MockResponse().setBody("fast"));
+        }
+        OverpassClient client = client(url(primary), url(mirror));
+
+        // The first two requests measure each mirror once
+        client.execute("q", TEXT, new CancellationToken());
+        client.execute("q", TEXT, new CancellationToken());
+        assertEquals("fast", client.execute("q", TEXT, new CancellationToken()));
+        assertEquals("fast", client.execute("q", TEXT, new CancellationToken()));
+
+        assertEquals(1, primary.getRequestCount());
+        assertTrue(client.getLatencyMillis(url(primary)) >= 200);
+        assertTrue(client.getLatencyMillis(url(primary)) > client.getLatencyMillis(url(mirror)));
+    }
+
+    @Test
+    public void execute_cancelAbortsTheRequestInFlight() throws Exception {
+        primary.enqueue(new MockResponse().setBody("late").setHeadersDelay(3, TimeUnit.SECONDS));
+        final OverpassClient client = client(url(primary));
+        final CancellationToken token = new CancellationToken();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> result = executor.submit(() -> client.execute("q", TEXT, token));
+            primary.takeRequest(2, TimeUnit.SECONDS);
+
+            long start = System.nanoTime();
+            token.cancel();
+            try {
+                result.get(2, TimeUnit.SECONDS);
+                fail("Expected the request to be canceled");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+            assertEquals(1, primary.getRequestCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private OverpassClient client(String... urls) {
+        OverpassClient client = new OverpassClient(http, Arrays.asList(urls));
+        client.setBackoff(10, 50);
+        return client;
+    }
+
+    private static String url(MockWebServer server) {
+        return server.url("/").toString();
+    }
+
+    private static String readText(InputStream body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read; (read = body.read(buffer)) != -1; ) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
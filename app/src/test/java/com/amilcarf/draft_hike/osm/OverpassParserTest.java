@@ -0,0 +1,331 @@
+package com.amilcarf.draft_hike.osm;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.trails.TrailProcessor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the streaming Overpass parser with the legacy org.json parser on recorded responses.
+ */
+public class OverpassParserTest {
+
+    private static final String TRAILS_FIXTURE = "/overpass/trails_central_park.json";
+    private static final String BENCHES_FIXTURE = "/overpass/benches_central_park.json";
+    private static final int MAX_WAYS = 30;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void parseWays_matchesLegacyParser() throws Exception {
+        byte[] fixture = readFixture(TRAILS_FIXTURE);
+
+        List<OSMWay> legacy = LegacyOverpassParser.parseWaysFromJson(
+                new String(fixture, StandardCharsets.UTF_8), MAX_WAYS);
+        List<OSMWay> streamed = OverpassParser.parseWays(new ByteArrayInputStream(fixture), MAX_WAYS);
+
+        assertEquals(MAX_WAYS, streamed.size());
+        assertEquals(legacy.size(), streamed.size());
+        for (int i = 0; i < legacy.size(); i++) {
+            OSMWay expected = legacy.get(i);
+            OSMWay actual = streamed.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTags(), actual.getTags());
+            assertEquals(expected.getNodes().size(), actual.getNodes().size());
+            for (int j = 0; j < expected.getNodes().size(); j++) {
+                assertEquals(expected.getNodes().get(j).getId(), actual.getNodes().get(j).getId());
+                assertEquals(expected.getNodes().get(j).getLatitude(), actual.getNodes().get(j).getLatitude(), 1e-9);
+                assertEquals(expected.getNodes().get(j).getLongitude(), actual.getNodes().get(j).getLongitude(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void parseWays_skipsWaysWithFewerThanTwoNodes() throws Exception {
+        String json = "{\"version\":0.6,\"elements\":["
+                + "{\"type\":\"way\",\"id\":1,\"nodes\":[10]},"
+                + "{\"type\":\"way\",\"id\":2,\"nodes\":[10,11],\"tags\":{\"highway\":\"path\"}},"
+                + "{\"type\":\"way\",\"id\":3,\"nodes\":[12,99]},"
+                + "{\"type\":\"node\",\"id\":10,\"lat\":1.0,\"lon\":2.0},"
+                + "{\"type\":\"node\",\"id\":11,\"lat\":1.5,\"lon\":2.5},"
+                + "{\"type\":\"node\",\"id\":12,\"lat\":3.0,\"lon\":4.0}"
+                + "]}";
+
+        List<OSMWay> ways = OverpassParser.parseWays(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), OverpassParser.NO_LIMIT);
+
+        assertEquals(1, ways.size());
+        assertEquals(2, ways.get(0).getId());
+        assertEquals("path", ways.get(0).getTag("highway"));
+    }
+
+    @Test
+    public void parseTrailsAndBenches_splitsUnionResponse() throws Exception {
+        String json = "{\"elements\":["
+                + "{\"type\":\"way\",\"id\":2,\"nodes\":[10,11],\"tags\":{\"highway\":\"path\"}},"
+                + "{\"type\":\"node\",\"id\":10,\"lat\":1.0,\"lon\":2.0},"
+                + "{\"type\":\"node\",\"id\":11,\"lat\":1.5,\"lon\":2.5},"
+                + "{\"type\":\"node\",\"id\":11,\"lat\":1.5,\"lon\":2.5,\"tags\":{\"amenity\":\"bench\"}},"
+                + "{\"type\":\"node\",\"id\":20,\"lat\":1.2,\"lon\":2.2,"
+                + "\"tags\":{\"amenity\":\"bench\",\"backrest\":\"yes\"}}"
+                + "]}";
+
+        TrailQueryResult result = OverpassParser.parseTrailsAndBenches(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), MAX_WAYS);
+
+        assertEquals(1, result.getWays().size());
+        assertEquals(2, result.getWays().get(0).getNodeCount());
+        assertEquals(2, result.getBenches().size());
+        assertEquals(11, result.getBenches().get(0).getId());
+        assertEquals("yes", result.getBenches().get(1).getTag("backrest"));
+    }
+
+    @Test
+    public void parse_failsOnResponseCutShortWithRemark() throws Exception {
+        String timedOut = "{\"version\":0.6,\"elements\":["
+                + "{\"type\":\"way\",\"id\":2,\"nodes\":[10,11],\"tags\":{\"highway\":\"path\"}},"
+                + "{\"type\":\"node\",\"id\":10,\"lat\":1.0,\"lon\":2.0},"
+                + "{\"type\":\"node\",\"id\":11,\"lat\":1.5,\"lon\":2.5}"
+                + "],\"remark\":\"runtime error: Query timed out in \\\"query\\\" at line 1 after 26 seconds.\"}";
+        String failed = "{\"version\":0.6,\"remark\":\"runtime error: out of memory\",\"elements\":[]}";
+
+        try {
+            OverpassParser.parseTrailsAndBenches(
+                    new ByteArrayInputStream(timedOut.getBytes(StandardCharsets.UTF_8)), MAX_WAYS);
+            fail("Expected a timed-out response to fail");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("timed out"));
+        }
+        try {
+            OverpassParser.parseNodes(new ByteArrayInputStream(failed.getBytes(StandardCharsets.UTF_8)));
+            fail("Expected a failed response to fail");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("out of memory"));
+        }
+    }
+
+    @Test
+    public void parseTrailsAndBenches_publishesCompleteWaysInBatches() throws Exception {
+        // Benches and way nodes first, as the tile query orders them
+        String json = "{\"elements\":["
+                + "{\"type\":\"node\",\"id\":20,\"lat\":1.2,\"lon\":2.2,\"tags\":{\"amenity\":\"bench\"}},"
+                + "{\"type\":\"node\",\"id\":10,\"lat\":1.0,\"lon\":2.0},"
+                + "{\"type\":\"node\",\"id\":11,\"lat\":1.5,\"lon\":2.5},"
+                + "{\"type\":\"way\",\"id\":1,\"nodes\":[10,11]},"
+                + "{\"type\":\"way\",\"id\":2,\"nodes\":[11,10]},"
+                + "{\"type\":\"way\",\"id\":3,\"nodes\":[10,12]},"
+                + "{\"type\":\"way\",\"id\":4,\"nodes\":[10,11]},"
+                + "{\"type\":\"node\",\"id\":12,\"lat\":3.0,\"lon\":4.0}"
+                + "]}";
+        final List<List<OSMWay>> batches = new ArrayList<>();
+        final List<Integer> benchCounts = new ArrayList<>();
+
+        TrailQueryResult result = OverpassParser.parseTrailsAndBenches(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), OverpassParser.NO_LIMIT, 2,
+                (ways, benches) -> {
+                    batches.add(ways);
+                    benchCounts.add(benches.size());
+                });
+
+        assertEquals(4, result.getWays().size());
+        assertEquals(2, batches.size());
+        assertEquals(1, batches.get(0).get(0).getId());
+        assertEquals(2, batches.get(0).get(1).getId());
+        // Way 3 arrived before its last node, so it is held back until the stream ends
+        assertEquals(4, batches.get(1).get(0).getId());
+        assertEquals(3, batches.get(1).get(1).getId());
+        assertEquals(Arrays.asList(1, 1), benchCounts);
+    }
+
+    @Test
+    public void parseWays_inlineGeometryMatchesNodeRecursion() throws Exception {
+        byte[] fixture = readFixture(TRAILS_FIXTURE);
+        byte[] geometry = toInlineGeometry(fixture);
+
+        for (int maxWays : new int[]{MAX_WAYS, OverpassParser.NO_LIMIT}) {
+            List<OSMWay> recursed = OverpassParser.parseWays(new ByteArrayInputStream(fixture), maxWays);
+            List<OSMWay> inline = OverpassParser.parseWays(new ByteArrayInputStream(geometry), maxWays);
+
+            assertEquals(recursed.size(), inline.size());
+            for (int i = 0; i < recursed.size(); i++) {
+                OSMWay expected = recursed.get(i);
+                OSMWay actual = inline.get(i);
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getTags(), actual.getTags());
+                assertEquals(expected.getNodeCount(), actual.getNodeCount());
+                for (int j = 0; j < expected.getNodeCount(); j++) {
+                    assertEquals(expected.getNodes().get(j).getId(), actual.getNodes().get(j).getId());
+                    assertEquals(expected.getLatitude(j), actual.getLatitude(j), 0);
+                    assertEquals(expected.getLongitude(j), actual.getLongitude(j), 0);
+                }
+            }
+
+            List<Trail> expectedTrails = TrailProcessor.processOSMDataToTrails(recursed, null, maxWays);
+            List<Trail> actualTrails = TrailProcessor.processOSMDataToTrails(inline, null, maxWays);
+            assertEquals(expectedTrails.size(), actualTrails.size());
+            for (int i = 0; i < expectedTrails.size(); i++) {
+                assertTrue(expectedTrails.get(i).hasSameDetails(actualTrails.get(i)));
+            }
+        }
+        assertTrue(geometry.length < fixture.length);
+    }
+
+    @Test
+    public void parseTrailsAndBenches_inlineGeometryPublishesWaysAsTheyArrive() throws Exception {
+        String json = "{\"elements\":["
+                + "{\"type\":\"node\",\"id\":20,\"lat\":1.2,\"lon\":2.2,\"tags\":{\"amenity\":\"bench\"}},"
+                + "{\"type\":\"way\",\"id\":1,\"bounds\":{\"minlat\":1.0},\"nodes\":[10,11],"
+                + "\"geometry\":[{\"lat\":1.0,\"lon\":2.0},{\"lat\":1.5,\"lon\":2.5}]},"
+                + "{\"type\":\"way\",\"id\":2,\"nodes\":[10,12,11],"
+                + "\"geometry\":[{\"lat\":1.0,\"lon\":2.0},null,{\"lat\":1.5,\"lon\":2.5}],"
+                + "\"tags\":{\"highway\":\"path\"}},"
+                + "{\"type\":\"way\",\"id\":3,\"nodes\":[10,12],"
+                + "\"geometry\":[{\"lat\":1.0,\"lon\":2.0},null]},"
+                + "{\"type\":\"way\",\"id\":4,\"nodes\":[11,10],"
+                + "\"geometry\":[{\"lat\":1.5,\"lon\":2.5},{\"lat\":1.0,\"lon\":2.0}]}"
+                + "]}";
+        final List<List<OSMWay>> batches = new ArrayList<>();
+
+        TrailQueryResult result = OverpassParser.parseTrailsAndBenches(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), OverpassParser.NO_LIMIT, 2,
+                (ways, benches) -> batches.add(ways));
+
+        // Way 3 keeps a single coordinate and is dropped like a way with one node
+        assertEquals(3, result.getWays().size());
+        assertEquals(1, result.getBenches().size());
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).get(1).getId());
+        assertEquals(4, batches.get(1).get(0).getId());
+
+        OSMWay way = result.getWays().get(1);
+        assertEquals("path", way.getTag("highway"));
+        assertEquals(2, way.getNodeCount());
+        assertEquals(11L, way.getNodes().get(1).getId());
+        assertEquals(2.5, way.getLongitude(1), 1e-9);
+    }
+
+    @Test
+    public void parseNodes_matchesLegacyParser() throws Exception {
+        byte[] fixture = readFixture(BENCHES_FIXTURE);
+
+        List<OSMNode> legacy = LegacyOverpassParser.parseNodesFromJson(new String(fixture, StandardCharsets.UTF_8));
+        List<OSMNode> streamed = OverpassParser.parseNodes(new ByteArrayInputStream(fixture));
+
+        assertEquals(legacy.size(), streamed.size());
+        for (int i = 0; i < legacy.size(); i++) {
+            assertEquals(legacy.get(i).getId(), streamed.get(i).getId());
+            assertEquals(legacy.get(i).getLatitude(), streamed.get(i).getLatitude(), 1e-9);
+            assertEquals(legacy.get(i).getTags(), streamed.get(i).getTags());
+        }
+    }
+
+    @Test
+    public void parseWays_allocatesLessThanLegacyParser() throws Exception {
+        byte[] fixture = readFixture(TRAILS_FIXTURE);
+
+        // Warm up both paths so the measurement is not dominated by class loading and JIT
+        for (int i = 0; i < ROUNDS; i++) {
+            parseLegacy(fixture);
+            parseStreaming(fixture);
+        }
+
+        long legacyBytes = 0;
+        long streamingBytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long bytes = allocatedBytes();
+            parseLegacy(fixture);
+            legacyBytes += allocatedBytes() - bytes;
+
+            bytes = allocatedBytes();
+            parseStreaming(fixture);
+            streamingBytes += allocatedBytes() - bytes;
+        }
+
+        // Per-thread allocation counts every byte a parse allocates, garbage included; a
+        // heap's peak or retained size cannot be sampled mid-parse from a unit test
+        if (legacyBytes > 0) {
+            // About a third on the recorded response; half leaves room for JVM differences
+            assertTrue(String.format("Streaming parser allocated %d KB per parse, the DOM parser %d KB",
+                            streamingBytes / ROUNDS / 1024, legacyBytes / ROUNDS / 1024),
+                    streamingBytes < legacyBytes / 2);
+        }
+    }
+
+    // Mirrors the old path: buffer the body as a String, then build the org.json tree
+    private static List<OSMWay> parseLegacy(byte[] body) throws Exception {
+        return LegacyOverpassParser.parseWaysFromJson(new String(body, StandardCharsets.UTF_8), MAX_WAYS);
+    }
+
+    private static List<OSMWay> parseStreaming(byte[] body) throws IOException {
+        return OverpassParser.parseWays(new ByteArrayInputStream(body), MAX_WAYS);
+    }
+
+    // Rewrites an "out body; >; out skel" response as "out body geom" would return it
+    private static byte[] toInlineGeometry(byte[] body) {
+        JSONArray elements = new JSONObject(new String(body, StandardCharsets.UTF_8)).getJSONArray("elements");
+        Map<Long, JSONObject> nodes = new HashMap<>();
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject element = elements.getJSONObject(i);
+            if ("node".equals(element.getString("type"))) {
+                nodes.put(element.getLong("id"), element);
+            }
+        }
+
+        JSONArray ways = new JSONArray();
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject element = elements.getJSONObject(i);
+            if (!"way".equals(element.getString("type"))) {
+                continue;
+            }
+            JSONArray refs = element.optJSONArray("nodes");
+            JSONArray geometry = new JSONArray();
+            for (int j = 0; refs != null && j < refs.length(); j++) {
+                JSONObject node = nodes.get(refs.getLong(j));
+                geometry.put(node == null ? JSONObject.NULL
+                        : new JSONObject().put("lat", node.getDouble("lat")).put("lon", node.getDouble("lon")));
+            }
+            ways.put(element.put("geometry", geometry));
+        }
+        return new JSONObject().put("elements", ways).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Returns 0 when the JVM cannot report per-thread allocations
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    static byte[] readFixture(String name) throws IOException {
+        try (InputStream in = OverpassParserTest.class.getResourceAsStream(name)) {
+            assertNotNull("Missing fixture " + name, in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.amilcarf.draft_hike.osm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ProgressiveSearchTest {
+
+    @Test
+    public void nextRadius_growsByTheDensitySeenSoFar() {
+        // 4 of 16 trails found: the area must be 4 times larger, so the radius doubles
+        assertEquals(2000, ProgressiveSearch.nextRadius(1000, 4, 16, 10_000), 1e-6);
+        // 9 of 16: a ring a third as wide is enough
+        assertEquals(4000 / 3.0, ProgressiveSearch.nextRadius(1000, 9, 16, 10_000), 1e-6);
+    }
+
+    @Test
+    public void nextRadius_staysWithinTheGrowthBounds() {
+        // Nothing found yet, or very sparse: no more than double
+        assertEquals(2000, ProgressiveSearch.nextRadius(1000, 0, 16, 10_000), 1e-6);
+        assertEquals(2000, ProgressiveSearch.nextRadius(1000, 1, 100, 10_000), 1e-6);
+        // Nearly there: still a ring worth fetching
+        assertEquals(1250, ProgressiveSearch.nextRadius(1000, 15, 16, 10_000), 1e-6);
+    }
+
+    @Test
+    public void nextRadius_neverExceedsTheMaximum() {
+        assertEquals(1500, ProgressiveSearch.nextRadius(1000, 0, 16, 1500), 1e-6);
+    }
+}
@@ -0,0 +1,180 @@
+package com.amilcarf.draft_hike.osm;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private long now = 1_000_000;
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute_concurrentCallersShareOneCall() throws Exception {
+        final SingleFlight flights = new SingleFlight(0, 4);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final SingleFlight.Call<List<String>> call = () -> {
+            runs.incrementAndGet();
+            await(release);
+            List<String> result = new ArrayList<>();
+            result.add("way");
+            return result;
+        };
+
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(executor.submit(() -> flights.execute("q", call, new CancellationToken())));
+        }
+        waitUntil(() -> flights.getShared() == 4);
+        release.countDown();
+
+        List<String> first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<List<String>> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+        assertEquals(1, flights.getCalls());
+
+        // Without a memo the next caller runs the call again
+        flights.execute("q", call, new CancellationToken());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void execute_remembersResultsForTheMemoTime() throws Exception {
+        SingleFlight flights = new SingleFlight(30_000, 2, () -> now);
+        AtomicInteger runs = new AtomicInteger();
+        SingleFlight.Call<Integer> call = runs::incrementAndGet;
+
+        assertEquals(1, (int) flights.execute("a", call, new CancellationToken()));
+        now += 29_000;
+        assertEquals(1, (int) flights.execute("a", call, new CancellationToken()));
+        assertEquals(2, (int) flights.execute("b", call, new CancellationToken()));
+        assertEquals(1, flights.getMemoHits());
+
+        now += 1_000;
+        assertEquals(3, (int) flights.execute("a", call, new CancellationToken()));
+        // Only the latest results are kept
+        flights.execute("c", call, new CancellationToken());
+        flights.execute("d", call, new CancellationToken());
+        assertEquals(6, (int) flights.execute("b", call, new CancellationToken()));
+    }
+
+    @Test
+    public void execute_failuresReachEveryWaiterAndAreNotRemembered() throws Exception {
+        final SingleFlight flights = new SingleFlight(30_000, 4, () -> now);
+        final CountDownLatch release = new CountDownLatch(1);
+        final SingleFlight.Call<String> failing = () -> {
+            await(release);
+            throw new IOException("HTTP 429");
+        };
+
+        Future<String> leader = executor.submit(() -> flights.execute("q", failing, new CancellationToken()));
+        waitUntil(() -> flights.getCalls() == 1);
+        Future<String> waiter = executor.submit(() -> flights.execute("q", failing, new CancellationToken()));
+        waitUntil(() -> flights.getShared() == 1);
+        release.countDown();
+
+        assertFailsWith("HTTP 429", leader);
+        assertFailsWith("HTTP 429", waiter);
+        assertEquals("ok", flights.execute("q", () -> "ok", new CancellationToken()));
+    }
+
+    @Test
+    public void execute_waitersRunTheCallThemselvesWhenTheLeaderIsCancelled() throws Exception {
+        final SingleFlight flights = new SingleFlight(0, 4);
+        final CancellationToken leaderToken = new CancellationToken();
+        final CountDownLatch aborted = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+
+        Future<String> leader = executor.submit(() -> flights.execute("q", () -> {
+            runs.incrementAndGet();
+            leaderToken.addOnCancel(aborted::countDown);
+            await(aborted);
+            throw new IOException("Overpass query canceled");
+        }, leaderToken));
+        waitUntil(() -> runs.get() == 1);
+        Future<String> waiter = executor.submit(() -> flights.execute("q", () -> {
+            runs.incrementAndGet();
+            return "own";
+        }, new CancellationToken()));
+        waitUntil(() -> flights.getShared() == 1);
+
+        leaderToken.cancel();
+
+        assertFailsWith("Overpass query canceled", leader);
+        assertEquals("own", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void execute_cancelledWaiterStopsWithoutAffectingTheCall() throws Exception {
+        final SingleFlight flights = new SingleFlight(0, 4);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CancellationToken waiterToken = new CancellationToken();
+        final SingleFlight.Call<String> call = () -> {
+            await(release);
+            return "result";
+        };
+
+        Future<String> leader = executor.submit(() -> flights.execute("q", call, new CancellationToken()));
+        waitUntil(() -> flights.getCalls() == 1);
+        Future<String> waiter = executor.submit(() -> flights.execute("q", call, waiterToken));
+        waitUntil(() -> flights.getShared() == 1);
+
+        waiterToken.cancel();
+        assertFailsWith("Overpass query canceled", waiter);
+        assertFalse(leader.isDone());
+
+        release.countDown();
+        assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.holds()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void assertFailsWith(String message, Future<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected " + message);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals(message, e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.amilcarf.draft_hike.osm;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WayBatchPublisherTest {
+
+    private static final double LAT = 40.78;
+    private static final double LON = -73.965;
+
+    @Test
+    public void publish_filtersDedupesAndOrdersNearestFirst() {
+        final List<TrailQueryResult> batches = new ArrayList<>();
+        WayBatchPublisher publisher = new WayBatchPublisher(LAT, LON, 1000, batches::add);
+
+        OSMWay far = way(1, 0.006);     // ~670 m north
+        OSMWay near = way(2, 0.001);    // ~110 m north
+        OSMWay outside = way(3, 0.02);  // ~2.2 km north
+        OSMNode bench = new OSMNode(10, LAT + 0.001, LON);
+        OSMNode farBench = new OSMNode(11, LAT + 0.05, LON);
+
+        publisher.publish(Arrays.asList(far, near, outside), Arrays.asList(bench, farBench));
+        // A way seen again, e.g. from a neighboring tile, is not published twice
+        publisher.publish(Arrays.asList(near), Collections.<OSMNode>emptyList());
+        publisher.publish(Arrays.asList(way(4, 0.003)), Collections.<OSMNode>emptyList());
+
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).getWays().get(0).getId());
+        assertEquals(1, batches.get(0).getWays().get(1).getId());
+        assertEquals(2, batches.get(0).getWays().size());
+        assertEquals(1, batches.get(0).getBenches().size());
+        assertEquals(4, batches.get(1).getWays().get(0).getId());
+        // Later batches still carry the benches published earlier
+        assertEquals(1, batches.get(1).getBenches().size());
+        assertEquals(3, publisher.getPublishedWays());
+    }
+
+    @Test
+    public void setRadius_publishesWaysAndBenchesThatFallInsideLater() {
+        final List<TrailQueryResult> batches = new ArrayList<>();
+        WayBatchPublisher publisher = new WayBatchPublisher(LAT, LON, 1000, batches::add);
+        OSMWay outside = way(3, 0.02);  // ~2.2 km north
+        OSMNode farBench = new OSMNode(11, LAT + 0.02, LON);
+
+        publisher.publish(Arrays.asList(way(1, 0.001), outside), Arrays.asList(farBench));
+        publisher.setRadius(3000);
+        // The next ring brings the same way and bench again along with new ones
+        publisher.publish(Arrays.asList(outside, way(5, 0.025)), Arrays.asList(farBench));
+
+        assertEquals(2, batches.size());
+        assertEquals(0, batches.get(0).getBenches().size());
+        assertEquals(3, batches.get(1).getWays().get(0).getId());
+        assertEquals(5, batches.get(1).getWays().get(1).getId());
+        assertEquals(1, batches.get(1).getBenches().size());
+        assertEquals(3, publisher.getPublishedWays());
+    }
+
+    @Test
+    public void publish_sendsBenchesThatComeWithoutNewWays() {
+        final List<TrailQueryResult> batches = new ArrayList<>();
+        WayBatchPublisher publisher = new WayBatchPublisher(LAT, LON, 1000, batches::add);
+        OSMWay near = way(1, 0.001);
+        OSMNode bench = new OSMNode(10, LAT + 0.015, LON);
+
+        publisher.publish(Arrays.asList(near), Collections.<OSMNode>emptyList());
+        publisher.setRadius(3000);
+        // The wider ring only adds a bench
+        publisher.publish(Arrays.asList(near), Arrays.asList(bench));
+        // Nothing new at all is not a batch
+        publisher.publish(Arrays.asList(near), Arrays.asList(bench));
+
+        assertEquals(2, batches.size());
+        assertTrue(batches.get(1).getWays().isEmpty());
+        assertEquals(Arrays.asList(bench), batches.get(1).getBenches());
+        assertEquals(1, publisher.getPublishedWays());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRadius_rejectsShrinking() {
+        new WayBatchPublisher(LAT, LON, 1000, batch -> { }).setRadius(500);
+    }
+
+    // A short north-south way starting offset degrees north of the center
+    private static OSMWay way(long id, double offset) {
+        OSMWay way = new OSMWay(id);
+        way.addNode(new OSMNode(id * 100, LAT + offset, LON));
+        way.addNode(new OSMNode(id * 100 + 1, LAT + offset + 0.002, LON));
+        return way;
+    }
+}
@@ -0,0 +1,99 @@
+package com.amilcarf.draft_hike.search;
+
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.trails.TrailProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrailSearchIndexTest {
+
+    private static final String[] WORDS = {"Lake", "Ridge", "Forest", "River", "Meadow", "Pine", "Oak",
+            "Summit", "Valley", "Creek", "Loop", "Surface:", "gravel.", "dirt."};
+    private static final String[] DIFFICULTIES = {"Easy", "Medium", "Hard"};
+
+    @Test
+    public void search_singleTermMatchesLinearFilter() {
+        List<Trail> trails = generateTrails(500);
+        TrailSearchIndex index = TrailSearchIndex.build(trails);
+
+        for (String query : Arrays.asList("l", "la", "lak", "LAKE", "ake", "e", "rid", "surface:", "el.",
+                "hard", "med", "xyz", "")) {
+            List<Trail> expected = TrailProcessor.filterTrails(trails, query);
+            assertEquals("query \"" + query + "\"", ids(expected), ids(index.search(query).getTrails()));
+        }
+    }
+
+    @Test
+    public void search_requiresEveryTermInAnyOrder() {
+        TrailSearchIndex index = TrailSearchIndex.build(Arrays.asList(
+                trail("1", "Lake Ridge Trail", "Easy"),
+                trail("2", "Ridge Loop", "Hard"),
+                trail("3", "Lakeside", "Medium")));
+
+        assertEquals(Arrays.asList("1"), ids(index.search("ridge lake").getTrails()));
+        assertEquals(Arrays.asList("1", "3"), ids(index.search("  lak ").getTrails()));
+        assertEquals(Arrays.asList("2"), ids(index.search("ri hard").getTrails()));
+        assertEquals(3, index.search("").size());
+    }
+
+    @Test
+    public void search_foldsAccentsAndCase() {
+        TrailSearchIndex index = TrailSearchIndex.build(Arrays.asList(
+                trail("1", "Sentier du Pr\u00e9", "Facile"),
+                trail("2", "\u00c9tang Loop", "Easy")));
+
+        assertEquals(Arrays.asList("1"), ids(index.search("pre").getTrails()));
+        assertEquals(Arrays.asList("1"), ids(index.search("PR\u00c9").getTrails()));
+        assertEquals(Arrays.asList("2"), ids(index.search("etang").getTrails()));
+    }
+
+    @Test
+    public void search_narrowingMatchesSearchFromScratch() {
+        List<Trail> trails = generateTrails(500);
+        TrailSearchIndex index = TrailSearchIndex.build(trails);
+
+        String typed = "lake ridge";
+        SearchResult previous = null;
+        for (int end = 1; end <= typed.length(); end++) {
+            String query = typed.substring(0, end);
+            SearchResult narrowed = index.search(query, previous);
+            assertEquals("query \"" + query + "\"", ids(index.search(query).getTrails()), ids(narrowed.getTrails()));
+            previous = narrowed;
+        }
+
+        // Deleting a character must not narrow from the longer query
+        SearchResult shorter = index.search("lak", index.search("lake"));
+        assertEquals(ids(index.search("lak").getTrails()), ids(shorter.getTrails()));
+    }
+
+    private static List<Trail> generateTrails(int count) {
+        Random random = new Random(7);
+        List<Trail> trails = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = WORDS[random.nextInt(11)] + " " + WORDS[random.nextInt(11)] + " Trail";
+            String description = name + ". " + WORDS[11] + " " + WORDS[12 + random.nextInt(2)] + " ";
+            trails.add(new Trail(String.valueOf(i), name, 1, "10 min", 0,
+                    DIFFICULTIES[random.nextInt(3)], "Open", description, false));
+        }
+        return trails;
+    }
+
+    private static Trail trail(String id, String name, String difficulty) {
+        return new Trail(id, name, 1, "10 min", 0, difficulty, "Open", name + ".", false);
+    }
+
+    private static List<String> ids(List<Trail> trails) {
+        List<String> ids = new ArrayList<>();
+        for (Trail trail : trails) {
+            ids.add(trail.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,74 @@
+package com.amilcarf.draft_hike.search;
+
+import com.amilcarf.draft_hike.models.Trail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class TrailSearcherTest {
+
+    // Runs tasks only when asked, to control interleaving
+    private static final class QueuedExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private final QueuedExecutor background = new QueuedExecutor();
+    private final QueuedExecutor main = new QueuedExecutor();
+    private final List<String> delivered = new ArrayList<>();
+    private final TrailSearcher searcher = new TrailSearcher(background, main,
+            (query, trails) -> delivered.add(query + "=" + trails.size()));
+
+    @Test
+    public void search_deliversOnlyTheLatestQuery() {
+        searcher.setTrails(trails("Lake Loop", "Ridge Trail", "Lakeside"));
+        searcher.search("l");
+        searcher.search("la");
+        searcher.search("lak");
+
+        background.runAll();
+        main.runAll();
+
+        assertEquals(Arrays.asList("lak=2"), delivered);
+    }
+
+    @Test
+    public void setTrails_dropsResultsForTheOldDataset() {
+        searcher.setTrails(trails("Lake Loop"));
+        searcher.search("lake");
+        background.runAll();
+
+        searcher.setTrails(trails("Lake Loop", "Lake Ridge"));
+        main.runAll();
+        assertTrue(delivered.isEmpty());
+
+        searcher.search("lake");
+        background.runAll();
+        main.runAll();
+        assertEquals(Arrays.asList("lake=2"), delivered);
+    }
+
+    private static List<Trail> trails(String... names) {
+        List<Trail> trails = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            trails.add(new Trail(String.valueOf(i), names[i], 1, "10 min", 0, "Easy", "Open", "", false));
+        }
+        return trails;
+    }
+}
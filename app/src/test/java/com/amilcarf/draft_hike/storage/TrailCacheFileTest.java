@@ -0,0 +1,164 @@
+package com.amilcarf.draft_hike.storage;
+
+import com.amilcarf.draft_hike.models.Trail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TrailCacheFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaceAll_roundTripsTrails() throws Exception {
+        File file = folder.newFile("trails.bin");
+        List<Trail> trails = sampleTrails(3);
+        trails.get(1).setDescription(null);
+        trails.get(2).setName("Sentier du Lac \u00e9t\u00e9");
+
+        new TrailCacheFile(file).replaceAll(trails);
+        List<Trail> loaded = new TrailCacheFile(file).readAll();
+
+        assertEquals(3, loaded.size());
+        for (int i = 0; i < trails.size(); i++) {
+            assertSameTrail(trails.get(i), loaded.get(i));
+        }
+    }
+
+    @Test
+    public void replaceAll_truncatesOverlongTextBetweenCharacters() throws Exception {
+        File file = folder.newFile("trails.bin");
+        StringBuilder description = new StringBuilder("a");
+        for (int i = 0; i < 40000; i++) {
+            description.append('\u00e9');
+        }
+        List<Trail> trails = sampleTrails(1);
+        trails.get(0).setDescription(description.toString());
+
+        new TrailCacheFile(file).replaceAll(trails);
+        String loaded = new TrailCacheFile(file).readAll().get(0).getDescription();
+
+        // Two bytes per accented letter; the last one that fits whole is kept
+        assertEquals(description.substring(0, 1 + (0xFFFE - 1) / 2), loaded);
+    }
+
+    @Test
+    public void put_appendsOneRecordWithoutRewriting() throws Exception {
+        File file = folder.newFile("trails.bin");
+        TrailCacheFile cache = new TrailCacheFile(file);
+        List<Trail> trails = sampleTrails(50);
+        cache.replaceAll(trails);
+        long initialLength = file.length();
+
+        // Unchanged trails are not written again
+        cache.replaceAll(trails);
+        assertEquals(initialLength, file.length());
+
+        Trail updated = trails.get(10);
+        updated.setFavorite(true);
+        cache.put(updated);
+
+        assertTrue(file.length() > initialLength);
+        assertTrue(file.length() - initialLength < initialLength / 10);
+        List<Trail> loaded = new TrailCacheFile(file).readAll();
+        assertEquals(50, loaded.size());
+        assertTrue(loaded.get(10).isFavorite());
+    }
+
+    @Test
+    public void replaceAll_dropsTrailsNoLongerPresent() throws Exception {
+        File file = folder.newFile("trails.bin");
+        TrailCacheFile cache = new TrailCacheFile(file);
+        cache.replaceAll(sampleTrails(5));
+
+        cache.replaceAll(sampleTrails(2));
+
+        assertEquals(2, new TrailCacheFile(file).readAll().size());
+    }
+
+    @Test
+    public void readAll_stopsAtCorruptRecord() throws Exception {
+        File file = folder.newFile("trails.bin");
+        new TrailCacheFile(file).replaceAll(sampleTrails(3));
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(length - 5);
+            raf.write(0x7F);
+        }
+
+        TrailCacheFile reopened = new TrailCacheFile(file);
+        assertEquals(2, reopened.readAll().size());
+
+        // The next write replaces the damaged tail
+        reopened.put(sampleTrails(3).get(2));
+        assertEquals(3, new TrailCacheFile(file).readAll().size());
+    }
+
+    @Test
+    public void repeatedUpdates_compactTheFile() throws Exception {
+        File file = folder.newFile("trails.bin");
+        TrailCacheFile cache = new TrailCacheFile(file);
+        List<Trail> trails = sampleTrails(10);
+        cache.replaceAll(trails);
+        long initialLength = file.length();
+
+        for (int i = 0; i < 200; i++) {
+            Trail trail = trails.get(i % 10);
+            trail.setBenchCount(i);
+            cache.put(trail);
+        }
+
+        assertTrue(file.length() < initialLength * 12);
+        List<Trail> loaded = new TrailCacheFile(file).readAll();
+        assertEquals(10, loaded.size());
+        assertEquals(199, loaded.get(9).getBenchCount());
+    }
+
+    @Test
+    public void readAll_loadsThousandsOfTrailsQuickly() throws Exception {
+        File file = folder.newFile("trails.bin");
+        new TrailCacheFile(file).replaceAll(sampleTrails(5000));
+        new TrailCacheFile(file).readAll();
+
+        long start = System.nanoTime();
+        List<Trail> loaded = new TrailCacheFile(file).readAll();
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(5000, loaded.size());
+        // Tens of ms on a desktop JVM; the bound leaves room for slow build machines
+        assertTrue("Cold load took " + elapsed / 1000000 + " ms",
+                elapsed < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    private static List<Trail> sampleTrails(int count) {
+        List<Trail> trails = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            trails.add(new Trail(String.valueOf(100000000L + i), "Trail " + i, 0.5 + i % 40 / 10.0,
+                    (10 + i % 90) + " min", i % 9, i % 3 == 0 ? "Easy" : "Medium", "Open",
+                    "Surface: gravel. A scenic hiking trail number " + i + ".", i % 7 == 0));
+        }
+        return trails;
+    }
+
+    private static void assertSameTrail(Trail expected, Trail actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getDistance(), actual.getDistance(), 0);
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getBenchCount(), actual.getBenchCount());
+        assertEquals(expected.getDifficulty(), actual.getDifficulty());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.isFavorite(), actual.isFavorite());
+    }
+}
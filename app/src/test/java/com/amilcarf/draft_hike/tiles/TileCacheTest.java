@@ -0,0 +1,115 @@
+package com.amilcarf.draft_hike.tiles;
+
+import com.amilcarf.draft_hike.models.NodeStore;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.osm.TrailQueryResult;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TileCacheTest {
+
+    private static final long TTL = 60_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now = 1_000_000;
+
+    @Test
+    public void get_servesFromMemoryThenDisk() throws Exception {
+        File dir = folder.newFolder("tiles");
+        Tile tile = Tile.containing(40.7829, -73.9654, 15);
+        TileCache cache = new TileCache(dir, 4, 16, TTL, () -> now);
+
+        assertNull(cache.get(tile));
+        cache.put(tile, sampleData(now));
+        assertNotNull(cache.get(tile));
+
+        // A fresh cache over the same directory only has the disk tier
+        TileCache reopened = new TileCache(dir, 4, 16, TTL, () -> now);
+        TileData fromDisk = reopened.get(tile);
+
+        assertNotNull(fromDisk);
+        assertEquals(1, reopened.getDiskHits());
+        OSMWay way = fromDisk.getWays().get(0);
+        assertEquals(7L, way.getId());
+        assertEquals("path", way.getTag("highway"));
+        assertEquals(3, way.getNodeCount());
+        assertEquals(-73.9650, way.getLongitude(2), 1e-7);
+        assertEquals("yes", fromDisk.getBenches().get(0).getTag("backrest"));
+
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void get_treatsExpiredTilesAsMisses() throws Exception {
+        Tile tile = Tile.containing(40.7829, -73.9654, 15);
+        TileCache cache = new TileCache(folder.newFolder("tiles"), 4, 16, TTL, () -> now);
+        cache.put(tile, sampleData(now));
+
+        now += TTL + 1;
+        cache.clearMemory();
+
+        assertNull(cache.get(tile));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void coveringRadius_isStableForSmallMoves() {
+        List<Tile> before = Tile.coveringRadius(40.7829, -73.9654, 3000, 15);
+        List<Tile> after = Tile.coveringRadius(40.7833, -73.9650, 3000, 15);
+
+        int shared = 0;
+        for (Tile tile : after) {
+            if (before.contains(tile)) {
+                shared++;
+            }
+        }
+        assertTrue(before.contains(Tile.containing(40.7829, -73.9654, 15)));
+        assertTrue("Moving 50 m should reuse nearly every tile", shared >= after.size() - 4);
+    }
+
+    @Test
+    public void splitAndMerge_roundTripsWaysAcrossTiles() {
+        List<Tile> tiles = Tile.covering(40.780, -73.970, 40.786, -73.960, 15);
+        TileData data = sampleData(now);
+        TrailQueryResult response = new TrailQueryResult(data.getWays(), data.getBenches());
+
+        Map<Tile, TileData> byTile = TileQueries.split(tiles, response, now);
+        TrailQueryResult merged = TileQueries.merge(tiles, byTile, 40.7829, -73.9654, 3000, 30);
+
+        assertEquals(1, merged.getWays().size());
+        assertEquals(1, merged.getBenches().size());
+        assertTrue(TileQueries.rowBoxes(tiles).size() <= tiles.size());
+    }
+
+    private static TileData sampleData(long fetchedAt) {
+        NodeStore store = new NodeStore();
+        OSMWay way = new OSMWay(7L, store);
+        way.addTag("highway", "path");
+        way.addNodeIndex(store.add(1L, 40.7829, -73.9654));
+        way.addNodeIndex(store.add(2L, 40.7831, -73.9652));
+        way.addNodeIndex(store.add(3L, 40.7833, -73.9650));
+
+        OSMNode bench = new OSMNode(9L, 40.7830, -73.9653);
+        bench.addTag("amenity", "bench");
+        bench.addTag("backrest", "yes");
+
+        List<OSMWay> ways = new ArrayList<>();
+        ways.add(way);
+        return new TileData(ways, Collections.singletonList(bench), fetchedAt);
+    }
+}
@@ -0,0 +1,42 @@
+package com.amilcarf.draft_hike.trails;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrailAreaCacheTest {
+
+    private static final double LAT = 40.78;
+    private static final double LON = -73.965;
+
+    @Test
+    public void get_matchesNearbyCentersOfTheSameRadius() {
+        TrailAreaCache<String> cache = new TrailAreaCache<>(4, 0.5);
+        cache.put(LAT, LON, 3000, "park");
+
+        // ~1.1 km away: within half the radius
+        assertEquals("park", cache.get(LAT + 0.01, LON, 3000));
+        // ~2.2 km away, or another radius: a different area
+        assertNull(cache.get(LAT + 0.02, LON, 3000));
+        assertNull(cache.get(LAT, LON, 6000));
+    }
+
+    @Test
+    public void put_replacesTheMatchingAreaAndEvictsTheLeastRecentlyUsed() {
+        TrailAreaCache<String> cache = new TrailAreaCache<>(2, 0.5);
+        cache.put(LAT, LON, 3000, "old");
+        cache.put(LAT + 0.001, LON, 3000, "new");
+        assertEquals(1, cache.size());
+        assertEquals("new", cache.get(LAT, LON, 3000));
+
+        cache.put(LAT + 1, LON, 3000, "north");
+        // Using the first area keeps it over the second
+        cache.get(LAT, LON, 3000);
+        cache.put(LAT - 1, LON, 3000, "south");
+
+        assertEquals(2, cache.size());
+        assertEquals("new", cache.get(LAT, LON, 3000));
+        assertNull(cache.get(LAT + 1, LON, 3000));
+        assertEquals("south", cache.get(LAT - 1, LON, 3000));
+    }
+}
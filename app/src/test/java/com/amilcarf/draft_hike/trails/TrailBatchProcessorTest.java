@@ -0,0 +1,96 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.osm.TrailQueryResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TrailBatchProcessorTest {
+
+    private static final double LAT = 40.78;
+    private static final double LON = -73.965;
+
+    @Test
+    public void process_numbersAcrossBatchesAndSortsByDistance() {
+        TrailBatchProcessor processor = new TrailBatchProcessor(LAT, LON);
+        List<OSMNode> benches = Collections.singletonList(new OSMNode(10, LAT + 0.015, LON + 0.0002));
+
+        List<Trail> first = processor.process(new TrailQueryResult(
+                Arrays.asList(way(1, 0.010), way(2, 0.001)), benches));
+        List<Trail> second = processor.process(new TrailQueryResult(
+                Collections.singletonList(way(3, 0.005)), benches));
+
+        assertEquals("2", first.get(0).getId());
+        assertEquals("Trail 2", first.get(0).getName());
+        assertEquals(111, first.get(0).getDistanceFromUser(), 1);
+        assertEquals(1, first.get(1).getBenchCount());
+        assertEquals("Trail 3", second.get(0).getName());
+
+        List<Trail> all = processor.getTrails();
+        assertEquals(Arrays.asList("2", "3", "1"), ids(all));
+    }
+
+    @Test
+    public void process_countsLaterBenchesOnEarlierTrails() {
+        TrailBatchProcessor processor = new TrailBatchProcessor(LAT, LON);
+        OSMNode first = new OSMNode(10, LAT + 0.0015, LON + 0.0002);
+        OSMNode second = new OSMNode(11, LAT + 0.0055, LON - 0.0002);
+
+        Trail early = processor.process(new TrailQueryResult(
+                Collections.singletonList(way(1, 0.001)), Collections.singletonList(first))).get(0);
+        processor.process(new TrailQueryResult(
+                Collections.singletonList(way(2, 0.050)), Arrays.asList(first, second)));
+
+        List<Trail> all = processor.getTrails();
+        assertEquals("1", all.get(0).getId());
+        assertEquals(2, all.get(0).getBenchCount());
+        assertEquals(0, all.get(1).getBenchCount());
+        // The trail handed out earlier is left as it was
+        assertEquals(1, early.getBenchCount());
+        assertNotSame(early, all.get(0));
+    }
+
+    @Test
+    public void insertByDistance_keepsOrderAndPutsUnknownLast() {
+        List<Trail> sorted = new ArrayList<>();
+        Trail unknown = trail("cached", Double.NaN);
+
+        assertEquals(0, TrailBatchProcessor.insertByDistance(sorted, trail("b", 200)));
+        assertEquals(1, TrailBatchProcessor.insertByDistance(sorted, unknown));
+        assertEquals(0, TrailBatchProcessor.insertByDistance(sorted, trail("a", 100)));
+        assertEquals(2, TrailBatchProcessor.insertByDistance(sorted, trail("b2", 200)));
+
+        assertEquals(Arrays.asList("a", "b", "b2", "cached"), ids(sorted));
+    }
+
+    private static Trail trail(String id, double distanceFromUser) {
+        Trail trail = new Trail(id, id, 1, "10 min", 0, "Easy", "Open", "", false);
+        trail.setDistanceFromUser(distanceFromUser);
+        return trail;
+    }
+
+    private static List<String> ids(List<Trail> trails) {
+        List<String> ids = new ArrayList<>();
+        for (Trail trail : trails) {
+            ids.add(trail.getId());
+        }
+        return ids;
+    }
+
+    // A ~1.1 km north-south way starting offset degrees north of the center
+    private static OSMWay way(long id, double offset) {
+        OSMWay way = new OSMWay(id);
+        way.addNode(new OSMNode(id * 100, LAT + offset, LON));
+        way.addNode(new OSMNode(id * 100 + 1, LAT + offset + 0.01, LON));
+        return way;
+    }
+}
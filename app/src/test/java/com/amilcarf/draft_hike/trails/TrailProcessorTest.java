@@ -0,0 +1,65 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TrailProcessorTest {
+
+    @Test
+    public void processOSMDataToTrails_buildsTrailsAndSkipsShortOnes() {
+        // ~1.1 km north-south, with a bench beside it and one far away
+        OSMWay longWay = way(1, 40.780, 40.790);
+        longWay.addTag("surface", "gravel");
+        OSMWay shortWay = way(2, 40.780, 40.7801);
+        shortWay.addTag("name", "Stub");
+        List<OSMNode> benches = Arrays.asList(
+                new OSMNode(10, 40.785, -73.9652), new OSMNode(11, 40.700, -73.9650));
+
+        List<Trail> trails = TrailProcessor.processOSMDataToTrails(Arrays.asList(longWay, shortWay), benches);
+
+        assertEquals(1, trails.size());
+        Trail trail = trails.get(0);
+        assertEquals("1", trail.getId());
+        assertEquals("Trail 1", trail.getName());
+        assertEquals(1.1, trail.getDistance(), 1e-9);
+        assertEquals(1, trail.getBenchCount());
+        assertEquals("Medium", trail.getDifficulty());
+        assertEquals("Surface: gravel. ", trail.getDescription());
+    }
+
+    @Test
+    public void processOSMDataToTrails_respectsLimit() {
+        List<OSMWay> ways = Arrays.asList(way(1, 40.78, 40.79), way(2, 40.78, 40.79), way(3, 40.78, 40.79));
+
+        assertEquals(2, TrailProcessor.processOSMDataToTrails(ways, null, 2).size());
+    }
+
+    @Test
+    public void filterTrails_matchesNameDescriptionAndDifficultyIgnoringCase() {
+        List<Trail> trails = Arrays.asList(
+                new Trail("1", "Lake Loop", 2, "20 min", 0, "Easy", "Open", "Flat", false),
+                new Trail("2", "Ridge", 4, "50 min", 0, "Hard", "Open", "Lake views", false),
+                new Trail("3", "Forest", 3, "40 min", 0, "Medium", "Open", "Shade", false));
+
+        assertEquals(2, TrailProcessor.filterTrails(trails, "LAKE").size());
+        assertEquals("2", TrailProcessor.filterTrails(trails, "hard").get(0).getId());
+        assertEquals(3, TrailProcessor.filterTrails(trails, "").size());
+        assertEquals(Collections.<Trail>emptyList(), TrailProcessor.filterTrails(trails, "desert"));
+    }
+
+    private static OSMWay way(long id, double fromLat, double toLat) {
+        OSMWay way = new OSMWay(id);
+        way.addNode(new OSMNode(id * 100, fromLat, -73.965));
+        way.addNode(new OSMNode(id * 100 + 1, toLat, -73.965));
+        return way;
+    }
+}
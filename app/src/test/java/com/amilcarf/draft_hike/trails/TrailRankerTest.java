@@ -0,0 +1,185 @@
+package com.amilcarf.draft_hike.trails;
+
+import com.amilcarf.draft_hike.geo.GeoMath;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrailRankerTest {
+
+    private static final double LAT = 46.5;
+    private static final double LON = 7.5;
+    // About 100 m north or east
+    private static final double NORTH = 100 / GeoMath.METERS_PER_DEGREE;
+    private static final double EAST = NORTH / GeoMath.cosLatitude(LAT);
+
+    @Test
+    public void nearest_measuresToTheNearestPointOfEachTrail() {
+        TrailRanker ranker = new TrailRanker(250);
+        // A long east-west trail passing 100 m north, whose nodes are all 1 km away
+        ranker.add(trail("long"), way(LAT + NORTH, LON - 10 * EAST, LAT + NORTH, LON + 10 * EAST));
+        // A short trail whose first node is 300 m east
+        ranker.add(trail("short"), way(LAT, LON + 3 * EAST, LAT, LON + 4 * EAST));
+
+        List<Trail> ranked = ranker.nearest(LAT, LON, 5);
+
+        assertEquals("long", ranked.get(0).getId());
+        assertEquals(100, ranked.get(0).getDistanceFromUser(), 0.5);
+        assertEquals("short", ranked.get(1).getId());
+        assertEquals(300, ranked.get(1).getDistanceFromUser(), 0.5);
+    }
+
+    @Test
+    public void nearest_returnsTheKNearestOnlyMeasuringTrailsNearby() {
+        List<Trail> trails = new ArrayList<>();
+        List<OSMWay> ways = new ArrayList<>();
+        randomTrails(new Random(7), 400, trails, ways);
+        TrailRanker ranker = ranker(trails, ways);
+
+        List<Trail> ranked = ranker.nearest(LAT, LON, 10);
+
+        assertEquals(10, ranked.size());
+        List<Double> expected = bruteForce(ways, LAT, LON);
+        for (int i = 0; i < ranked.size(); i++) {
+            assertEquals(expected.get(i), ranked.get(i).getDistanceFromUser(), 0.5);
+        }
+        assertTrue(ranker.getLastMeasured() < trails.size() / 10);
+    }
+
+    @Test
+    public void nearest_afterASmallMoveMatchesAFreshRanking() {
+        List<Trail> trails = new ArrayList<>();
+        List<OSMWay> ways = new ArrayList<>();
+        randomTrails(new Random(8), 400, trails, ways);
+        TrailRanker moving = ranker(trails, ways);
+        moving.nearest(LAT, LON, 10);
+
+        double lat = LAT;
+        double lon = LON;
+        for (int step = 0; step < 20; step++) {
+            // Walking about 30 m at a time
+            lat += 0.3 * NORTH;
+            lon += 0.1 * EAST;
+            List<Trail> incremental = moving.nearest(lat, lon, 10);
+            List<Trail> fresh = ranker(trails, ways).nearest(lat, lon, 10);
+
+            assertEquals(ids(fresh), ids(incremental));
+            for (int i = 0; i < fresh.size(); i++) {
+                assertEquals(fresh.get(i).getDistanceFromUser(), incremental.get(i).getDistanceFromUser(), 1e-9);
+            }
+            assertTrue(moving.getLastMeasured() < trails.size() / 10);
+        }
+    }
+
+    @Test
+    public void nearest_ranksTrailsAddedAfterAQuery() {
+        TrailRanker ranker = new TrailRanker(250);
+        ranker.add(trail("far"), way(LAT + 20 * NORTH, LON, LAT + 21 * NORTH, LON));
+        assertEquals("far", ranker.nearest(LAT, LON, 1).get(0).getId());
+
+        ranker.add(trail("near"), way(LAT + NORTH, LON, LAT + 2 * NORTH, LON));
+
+        List<Trail> ranked = ranker.nearest(LAT, LON, 1);
+        assertEquals(1, ranked.size());
+        assertEquals("near", ranked.get(0).getId());
+    }
+
+    @Test
+    public void nearest_leavesTheAddedTrailsUnchanged() {
+        TrailRanker ranker = new TrailRanker(250);
+        Trail original = trail("a");
+        ranker.add(original, way(LAT + NORTH, LON, LAT + 2 * NORTH, LON));
+
+        Trail ranked = ranker.nearest(LAT, LON, 1).get(0);
+
+        assertNotSame(original, ranked);
+        assertTrue(Double.isNaN(original.getDistanceFromUser()));
+    }
+
+    @Test
+    public void replace_swapsTheTrailButKeepsItsPolyline() {
+        TrailRanker ranker = new TrailRanker(250);
+        ranker.add(trail("a"), way(LAT + NORTH, LON, LAT + 2 * NORTH, LON));
+        Trail updated = trail("a");
+        updated.setBenchCount(3);
+
+        ranker.replace(updated);
+        ranker.replace(trail("unknown"));
+
+        List<Trail> ranked = ranker.nearest(LAT, LON, 5);
+        assertEquals(1, ranked.size());
+        assertEquals(3, ranked.get(0).getBenchCount());
+        assertEquals(100, ranked.get(0).getDistanceFromUser(), 0.5);
+    }
+
+    private static TrailRanker ranker(List<Trail> trails, List<OSMWay> ways) {
+        TrailRanker ranker = new TrailRanker(250);
+        for (int i = 0; i < trails.size(); i++) {
+            ranker.add(trails.get(i), ways.get(i));
+        }
+        return ranker;
+    }
+
+    // Short random walks spread over about 10 x 10 km around the center
+    private static void randomTrails(Random random, int count, List<Trail> trails, List<OSMWay> ways) {
+        for (int i = 0; i < count; i++) {
+            int points = 2 + random.nextInt(20);
+            OSMWay way = new OSMWay(i);
+            double pLat = LAT + (random.nextDouble() - 0.5) * 100 * NORTH;
+            double pLon = LON + (random.nextDouble() - 0.5) * 100 * EAST;
+            for (int p = 0; p < points; p++) {
+                way.addNode(new OSMNode(p, pLat, pLon));
+                pLat += (random.nextDouble() - 0.5) * NORTH;
+                pLon += (random.nextDouble() - 0.5) * EAST;
+            }
+            trails.add(trail(String.valueOf(i)));
+            ways.add(way);
+        }
+    }
+
+    // Every trail's distance, sorted, measured independently of the ranker
+    private static List<Double> bruteForce(List<OSMWay> ways, double lat, double lon) {
+        List<Double> distances = new ArrayList<>();
+        double xScale = GeoMath.METERS_PER_DEGREE * GeoMath.cosLatitude(LAT);
+        for (OSMWay way : ways) {
+            double nearest = Double.POSITIVE_INFINITY;
+            for (int i = 0; i + 1 < way.getNodeCount(); i++) {
+                nearest = Math.min(nearest, GeoMath.distanceToSegment(0, 0,
+                        (way.getLongitude(i) - lon) * xScale, (way.getLatitude(i) - lat) * GeoMath.METERS_PER_DEGREE,
+                        (way.getLongitude(i + 1) - lon) * xScale,
+                        (way.getLatitude(i + 1) - lat) * GeoMath.METERS_PER_DEGREE));
+            }
+            distances.add(nearest);
+        }
+        Collections.sort(distances);
+        return distances;
+    }
+
+    private static OSMWay way(double lat1, double lon1, double lat2, double lon2) {
+        OSMWay way = new OSMWay(1);
+        way.addNode(new OSMNode(1, lat1, lon1));
+        way.addNode(new OSMNode(2, lat2, lon2));
+        return way;
+    }
+
+    private static Trail trail(String id) {
+        return new Trail(id, "Trail " + id, 1.0, "20 min", 0, "Easy", "Open", "", false);
+    }
+
+    private static List<String> ids(List<Trail> trails) {
+        List<String> ids = new ArrayList<>();
+        for (Trail trail : trails) {
+            ids.add(trail.getId());
+        }
+        return ids;
+    }
+}
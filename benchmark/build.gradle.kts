@@ -0,0 +1,52 @@
+// JVM-only JMH benchmarks for the OSM ingest -> Trail pipeline.
+// Run with: ./gradlew :benchmark:jmh  (add -Pjmh.includes=OverpassParse to pick a class)
+plugins {
+    `java-library`
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Compile the Android-free packages straight from the app sources so the benchmarks always
+// measure the current code. OSMDataFetcher and TrailRepository need Android and
+// OverpassClient needs OkHttp, so they stay out.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/amilcarf/draft_hike/geo/**",
+                "com/amilcarf/draft_hike/models/**",
+                "com/amilcarf/draft_hike/osm/**",
+                "com/amilcarf/draft_hike/search/**",
+                "com/amilcarf/draft_hike/storage/**",
+                "com/amilcarf/draft_hike/tiles/**",
+                "com/amilcarf/draft_hike/trails/**",
+                "com/amilcarf/draft_hike/util/**"
+            )
+            exclude("com/amilcarf/draft_hike/osm/OSMDataFetcher.java")
+            exclude("com/amilcarf/draft_hike/osm/OverpassClient.java")
+            exclude("com/amilcarf/draft_hike/trails/TrailRepository.java")
+        }
+    }
+}
+
+dependencies {
+    implementation("com.google.code.gson:gson:2.10.1")
+    // Part of the Android platform, but needed on a plain JVM for the legacy parser
+    implementation("org.json:json:20231013")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // The 1M-element responses are ~100 MB of JSON and the legacy parser holds a DOM of them
+    jvmArgs.addAll("-Xms4g", "-Xmx4g")
+    (project.findProperty("jmh.includes") as String?)?.let { includes.add(it) }
+}
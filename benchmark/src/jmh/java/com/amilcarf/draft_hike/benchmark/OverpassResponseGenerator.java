@@ -0,0 +1,227 @@
+package com.amilcarf.draft_hike.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthesizes Overpass API JSON responses shaped like the ones the app receives.
+ *
+ * Trails are random walks of 5 to 60 nodes with ~15 m steps around a center point, and
+ * about a fifth of them start at the end node of the previous one, as trail networks share
+ * junctions. Ways come first, followed by their nodes and then the benches ("out body; >;
+ * out skel qt" order). Roughly 2% of the elements are benches scattered over the same
+ * area. Output is deterministic for a given seed and element count.
+ *
+ * The inline-geometry variant describes the same trails and benches the way the "out body
+ * geom" tile query returns them: benches first, then ways with their coordinates.
+ */
+public final class OverpassResponseGenerator {
+
+    // Central Park, New York
+    public static final double CENTER_LAT = 40.7812;
+    public static final double CENTER_LON = -73.9665;
+
+    private static final double STEP_DEGREES = 0.000135; // ~15 m
+    private static final double SPREAD_DEGREES = 0.05;
+    private static final String[] HIGHWAYS = {"path", "footway", "track", "bridleway"};
+    private static final String[] SURFACES = {"dirt", "gravel", "paved", "asphalt", "compacted", "ground"};
+    private static final String[] NAME_WORDS = {"Ridge", "Lake", "Forest", "River", "Meadow", "Pine",
+            "Oak", "Summit", "Valley", "Creek", "Bridle", "Loop"};
+
+    private final Random random;
+
+    public OverpassResponseGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Returns a trails-with-benches response with about {@code elementCount} elements.
+     */
+    public byte[] trailsResponse(int elementCount) {
+        return trailsResponse(elementCount, false);
+    }
+
+    /**
+     * Returns the same response as {@link #trailsResponse(int)} for the same seed, but with
+     * way geometry inline and no separate node elements.
+     */
+    public byte[] trailsGeometryResponse(int elementCount) {
+        return trailsResponse(elementCount, true);
+    }
+
+    private byte[] trailsResponse(int elementCount, boolean inlineGeometry) {
+        int benchCount = Math.max(1, elementCount / 50);
+        // One way element per ~20 node elements, matching the average trail length
+        int maxWays = Math.max(1, (elementCount - benchCount) / 20);
+        int nodeBudget = Math.max(2, elementCount - benchCount - maxWays);
+
+        // Way refs and node coordinates are generated up front since nodes follow ways
+        long[][] wayRefs = new long[maxWays][];
+        double[] lats = new double[nodeBudget];
+        double[] lons = new double[nodeBudget];
+        int nodeCount = 0;
+        int wayCount = 0;
+
+        while (wayCount < maxWays && nodeCount < nodeBudget) {
+            int length = 5 + random.nextInt(56);
+            long[] refs = new long[length];
+            double lat;
+            double lon;
+            int start = 0;
+            if (nodeCount > 0 && random.nextInt(5) == 0) {
+                // Start at a junction with the previous trail
+                refs[0] = nodeId(nodeCount - 1);
+                lat = lats[nodeCount - 1];
+                lon = lons[nodeCount - 1];
+                start = 1;
+            } else {
+                lat = CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+                lon = CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            }
+            double heading = random.nextDouble() * 2 * Math.PI;
+            int i = start;
+            for (; i < length && nodeCount < nodeBudget; i++) {
+                heading += (random.nextDouble() - 0.5) * 0.6;
+                lat += Math.sin(heading) * STEP_DEGREES;
+                lon += Math.cos(heading) * STEP_DEGREES * 1.32; // 1 / cos(40.8 deg)
+                lats[nodeCount] = lat;
+                lons[nodeCount] = lon;
+                refs[i] = nodeId(nodeCount++);
+            }
+            if (i < 2) {
+                break;
+            }
+            if (i < length) {
+                long[] trimmed = new long[i];
+                System.arraycopy(refs, 0, trimmed, 0, i);
+                refs = trimmed;
+            }
+            wayRefs[wayCount++] = refs;
+        }
+
+        // Both variants draw tags and benches in the same order, so they describe the same data
+        StringBuilder ways = new StringBuilder(elementCount * 64);
+        for (int w = 0; w < wayCount; w++) {
+            separator(ways, w == 0);
+            appendWay(ways, 1_000_000L + w, wayRefs[w], inlineGeometry ? lats : null, lons);
+        }
+        StringBuilder benches = new StringBuilder(benchCount * 128);
+        for (int b = 0; b < benchCount; b++) {
+            separator(benches, b == 0);
+            appendBench(benches, 9_000_000_000L + b);
+        }
+
+        StringBuilder json = new StringBuilder(ways.length() + benches.length() + nodeCount * 64 + 256);
+        json.append("{\"version\":0.6,\"generator\":\"Overpass API 0.7.62\",")
+                .append("\"osm3s\":{\"timestamp_osm_base\":\"2025-01-01T00:00:00Z\"},\"elements\":[");
+        if (inlineGeometry) {
+            json.append(benches);
+            if (ways.length() > 0) {
+                json.append(',').append(ways);
+            }
+        } else {
+            // Every response has at least one way, since the node budget allows two nodes
+            json.append(ways);
+            for (int n = 0; n < nodeCount; n++) {
+                json.append(',');
+                appendNode(json, nodeId(n), lats[n], lons[n]);
+            }
+            json.append(',').append(benches);
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a benches-only response with {@code benchCount} tagged nodes.
+     */
+    public byte[] benchesResponse(int benchCount) {
+        StringBuilder json = new StringBuilder(benchCount * 160);
+        json.append("{\"version\":0.6,\"generator\":\"Overpass API 0.7.62\",\"elements\":[");
+        for (int b = 0; b < benchCount; b++) {
+            separator(json, b == 0);
+            appendBench(json, 9_000_000_000L + b);
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // With lats set, the way also carries its coordinates as "out geom" does
+    private void appendWay(StringBuilder json, long id, long[] refs, double[] lats, double[] lons) {
+        json.append("{\"type\":\"way\",\"id\":").append(id).append(",\"nodes\":[");
+        for (int i = 0; i < refs.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(refs[i]);
+        }
+        json.append(']');
+        if (lats != null) {
+            json.append(",\"geometry\":[");
+            for (int i = 0; i < refs.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                int node = nodeIndex(refs[i]);
+                json.append("{\"lat\":").append(coordinate(lats[node]))
+                        .append(",\"lon\":").append(coordinate(lons[node])).append('}');
+            }
+            json.append(']');
+        }
+        json.append(",\"tags\":{\"highway\":\"").append(HIGHWAYS[random.nextInt(HIGHWAYS.length)]).append('"');
+        if (random.nextInt(3) > 0) {
+            json.append(",\"surface\":\"").append(SURFACES[random.nextInt(SURFACES.length)]).append('"');
+        }
+        if (random.nextInt(2) == 0) {
+            json.append(",\"name\":\"").append(NAME_WORDS[random.nextInt(NAME_WORDS.length)]).append(' ')
+                    .append(NAME_WORDS[random.nextInt(NAME_WORDS.length)]).append(" Trail\"");
+        }
+        if (random.nextInt(10) == 0) {
+            json.append(",\"trail:difficulty\":\"Hard\"");
+        }
+        json.append("}}");
+    }
+
+    private static void appendNode(StringBuilder json, long id, double lat, double lon) {
+        json.append("{\"type\":\"node\",\"id\":").append(id)
+                .append(",\"lat\":").append(coordinate(lat))
+                .append(",\"lon\":").append(coordinate(lon)).append('}');
+    }
+
+    private void appendBench(StringBuilder json, long id) {
+        double lat = CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+        double lon = CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+        json.append("{\"type\":\"node\",\"id\":").append(id)
+                .append(",\"lat\":").append(coordinate(lat))
+                .append(",\"lon\":").append(coordinate(lon))
+                .append(",\"tags\":{\"amenity\":\"bench\"");
+        if (random.nextBoolean()) {
+            json.append(",\"backrest\":\"").append(random.nextBoolean() ? "yes" : "no").append('"');
+        }
+        if (random.nextInt(4) == 0) {
+            json.append(",\"material\":\"wood\"");
+        }
+        json.append("}}");
+    }
+
+    private static boolean separator(StringBuilder json, boolean first) {
+        if (!first) {
+            json.append(',');
+        }
+        return false;
+    }
+
+    // OSM publishes coordinates with seven decimals
+    private static String coordinate(double degrees) {
+        return String.format(Locale.ROOT, "%.7f", degrees);
+    }
+
+    private static long nodeId(int index) {
+        return 40_000_000L + index;
+    }
+
+    private static int nodeIndex(long id) {
+        return (int) (id - 40_000_000L);
+    }
+}
@@ -0,0 +1,85 @@
+package com.amilcarf.draft_hike.benchmark;
+
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.osm.OverpassParser;
+import com.amilcarf.draft_hike.osm.TrailQueryResult;
+import com.amilcarf.draft_hike.storage.TrailCacheFile;
+import com.amilcarf.draft_hike.trails.TrailProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading the trails cache file. Saves start from an empty file each time so they
+ * measure a full write rather than the unchanged-record shortcut.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrailCacheBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int elements;
+
+    private File dir;
+    private File saveFile;
+    private File loadFile;
+    private List<Trail> trails;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] body = new OverpassResponseGenerator(42).trailsResponse(elements);
+        TrailQueryResult parsed = OverpassParser.parseTrailsAndBenches(
+                new ByteArrayInputStream(body), OverpassParser.NO_LIMIT);
+        trails = TrailProcessor.processOSMDataToTrails(parsed.getWays(), parsed.getBenches(), Integer.MAX_VALUE);
+
+        dir = Files.createTempDirectory("trail-cache-bench").toFile();
+        saveFile = new File(dir, "save.bin");
+        loadFile = new File(dir, "load.bin");
+        new TrailCacheFile(loadFile).replaceAll(trails);
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteSaveFile() {
+        saveFile.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public TrailCacheFile save() throws IOException {
+        TrailCacheFile cache = new TrailCacheFile(saveFile);
+        cache.replaceAll(trails);
+        return cache;
+    }
+
+    @Benchmark
+    public List<Trail> load() throws IOException {
+        // A new instance per call, as on a cold app start
+        return new TrailCacheFile(loadFile).readAll();
+    }
+}
@@ -0,0 +1,89 @@
+package com.amilcarf.draft_hike.benchmark;
+
+import com.amilcarf.draft_hike.models.OSMWay;
+import com.amilcarf.draft_hike.models.Trail;
+import com.amilcarf.draft_hike.osm.OverpassParser;
+import com.amilcarf.draft_hike.osm.TrailQueryResult;
+import com.amilcarf.draft_hike.search.SearchResult;
+import com.amilcarf.draft_hike.search.TrailSearchIndex;
+import com.amilcarf.draft_hike.trails.TrailProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The steps after parsing: trail lengths, bench matching and Trail construction, and search
+ * (the linear filter against the index, from scratch and narrowing from the previous query).
+ * Every way in the response is processed so the cost scales with its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrailPipelineBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int elements;
+
+    @Param({"trail", "lake ridge", "hard"})
+    public String query;
+
+    private TrailQueryResult parsed;
+    private List<Trail> trails;
+    private TrailSearchIndex searchIndex;
+    private SearchResult previousResult;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] body = new OverpassResponseGenerator(42).trailsResponse(elements);
+        parsed = OverpassParser.parseTrailsAndBenches(new ByteArrayInputStream(body), OverpassParser.NO_LIMIT);
+        trails = TrailProcessor.processOSMDataToTrails(parsed.getWays(), parsed.getBenches(), Integer.MAX_VALUE);
+        searchIndex = TrailSearchIndex.build(trails);
+        // The query minus its last character, as if the user just typed that character
+        previousResult = searchIndex.search(query.substring(0, query.length() - 1));
+    }
+
+    @Benchmark
+    public double calculateTrailLength() {
+        double total = 0;
+        for (OSMWay way : parsed.getWays()) {
+            total += TrailProcessor.calculateTrailLength(way);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public List<Trail> processOSMDataToTrails() {
+        return TrailProcessor.processOSMDataToTrails(parsed.getWays(), parsed.getBenches(), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<Trail> filterTrails() {
+        return TrailProcessor.filterTrails(trails, query);
+    }
+
+    @Benchmark
+    public TrailSearchIndex buildSearchIndex() {
+        return TrailSearchIndex.build(trails);
+    }
+
+    @Benchmark
+    public SearchResult searchIndex() {
+        return searchIndex.search(query);
+    }
+
+    @Benchmark
+    public SearchResult searchIndexNarrowing() {
+        return searchIndex.search(query, previousResult);
+    }
+}
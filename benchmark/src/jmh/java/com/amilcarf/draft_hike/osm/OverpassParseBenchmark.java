@@ -0,0 +1,88 @@
+package com.amilcarf.draft_hike.osm;
+
+import com.amilcarf.draft_hike.benchmark.OverpassResponseGenerator;
+import com.amilcarf.draft_hike.models.OSMNode;
+import com.amilcarf.draft_hike.models.OSMWay;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Legacy org.json parsing against the streaming parser on generated responses.
+ *
+ * Lives in the osm package because the legacy parser is package-private. The legacy
+ * benchmarks include decoding the body into a String, as the old fetch path did. The
+ * inline-geometry benchmarks parse the same trails from an "out body geom" response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OverpassParseBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int elements;
+
+    // 30 is what the app asks for; pass -p maxWays=2147483647 to materialize every way
+    @Param({"30"})
+    public int maxWays;
+
+    private byte[] trailsBody;
+    private byte[] geometryBody;
+    private byte[] benchesBody;
+
+    @Setup
+    public void setUp() {
+        OverpassResponseGenerator generator = new OverpassResponseGenerator(42);
+        trailsBody = generator.trailsResponse(elements);
+        geometryBody = new OverpassResponseGenerator(42).trailsGeometryResponse(elements);
+        benchesBody = generator.benchesResponse(Math.max(1, elements / 50));
+    }
+
+    @Benchmark
+    public List<OSMWay> parseWaysFromJson() throws JSONException {
+        return LegacyOverpassParser.parseWaysFromJson(new String(trailsBody, StandardCharsets.UTF_8), maxWays);
+    }
+
+    @Benchmark
+    public List<OSMWay> parseWaysStreaming() throws IOException {
+        return OverpassParser.parseWays(new ByteArrayInputStream(trailsBody), maxWays);
+    }
+
+    @Benchmark
+    public TrailQueryResult parseTrailsAndBenchesStreaming() throws IOException {
+        return OverpassParser.parseTrailsAndBenches(new ByteArrayInputStream(trailsBody), maxWays);
+    }
+
+    @Benchmark
+    public List<OSMWay> parseWaysInlineGeometry() throws IOException {
+        return OverpassParser.parseWays(new ByteArrayInputStream(geometryBody), maxWays);
+    }
+
+    @Benchmark
+    public TrailQueryResult parseTrailsAndBenchesInlineGeometry() throws IOException {
+        return OverpassParser.parseTrailsAndBenches(new ByteArrayInputStream(geometryBody), maxWays);
+    }
+
+    @Benchmark
+    public List<OSMNode> parseNodesFromJson() throws JSONException {
+        return LegacyOverpassParser.parseNodesFromJson(new String(benchesBody, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public List<OSMNode> parseNodesStreaming() throws IOException {
+        return OverpassParser.parseNodes(new ByteArrayInputStream(benchesBody));
+    }
+}